@@ -0,0 +1,60 @@
+#!/bin/bash
+#    Licensed to the Apache Software Foundation (ASF) under one or more
+#    contributor license agreements.  See the NOTICE file distributed with
+#    this work for additional information regarding copyright ownership.
+#    The ASF licenses this file to You under the Apache License, Version 2.0
+#    (the "License"); you may not use this file except in compliance with
+#    the License.  You may obtain a copy of the License at
+#
+#        http://www.apache.org/licenses/LICENSE-2.0
+#
+#    Unless required by applicable law or agreed to in writing, software
+#    distributed under the License is distributed on an "AS IS" BASIS,
+#    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+#    See the License for the specific language governing permissions and
+#    limitations under the License.
+
+
+# Compares the startup time of the collector as a fat jar, as an application jar with its
+# libraries, and as the same started from a class-data sharing archive. Every variant is
+# started a number of times with bamboo.exitAfterStartup, and the average time from launch
+# to exit is reported. Run it from the project directory after `mvn package -Pcds`:
+#   docker/startup-benchmark.sh path/to/application.properties [runs]
+
+set -e
+
+CONFIG=$(cd "$(dirname "${1:?usage: $0 application.properties [runs]}")" && pwd)/$(basename "$1")
+RUNS=${2:-5}
+CDS_DIR=target/cds
+CLASSPATH_FILE=$CDS_DIR/classpath
+
+if [ ! -f "$CLASSPATH_FILE" ]; then
+  echo "ERROR: $CLASSPATH_FILE not found, run mvn package -Pcds first"
+  exit 1
+fi
+
+# the archive only works with the JVM that dumped it, so it is dumped with this one
+if [ ! -f "$CDS_DIR/app.jsa" ]; then
+  (cd "$CDS_DIR" && java -Xshare:dump -XX:SharedClassListFile=classes.lst \
+    -XX:SharedArchiveFile=app.jsa -cp "$(cat classpath)" > /dev/null)
+fi
+
+benchmark() {
+  local name=$1
+  local dir=$2
+  shift 2
+  local total=0
+  for run in $(seq "$RUNS"); do
+    local start=$(date +%s%N)
+    (cd "$dir" && java "$@" --spring.config.location="$CONFIG" \
+      --bamboo.exitAfterStartup=true > /dev/null)
+    total=$((total + ($(date +%s%N) - start) / 1000000))
+  done
+  echo "$name: $((total / RUNS))ms on average over $RUNS runs"
+}
+
+benchmark "fat jar" target -jar bamboo-build-collector.jar
+benchmark "application jar" "$CDS_DIR" -Xshare:off -cp "$(cat $CLASSPATH_FILE)" \
+  com.capitalone.dashboard.Application
+benchmark "class-data sharing" "$CDS_DIR" -XX:SharedArchiveFile=app.jsa \
+  -cp "$(cat $CLASSPATH_FILE)" com.capitalone.dashboard.Application
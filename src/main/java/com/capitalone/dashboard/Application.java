@@ -17,15 +17,46 @@
 
 package com.capitalone.dashboard;
 
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.springframework.boot.SpringApplication;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
+import org.springframework.boot.context.event.ApplicationEnvironmentPreparedEvent;
+import org.springframework.context.ApplicationListener;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.lang.management.ManagementFactory;
 
 /**
  * Application configuration and bootstrap.
  */
 @SpringBootApplication
 public class Application {
+  private static final Logger LOG = LoggerFactory.getLogger(Application.class);
+
+  /**
+   * Starts the collector. Its HTTP endpoints are not authenticated, so the web server only
+   * starts with bamboo.endpointsEnabled. With bamboo.exitAfterStartup it stops once started,
+   * after logging how long the JVM took to get there, to list the classes loaded at startup for
+   * class-data sharing and to benchmark startup.
+   *
+   * @param args the command line arguments.
+   */
   public static void main(String[] args) {
-    SpringApplication.run(Application.class, args);
+    SpringApplication application = new SpringApplication(Application.class);
+    // not spring.main.web-environment, which the Spring Cloud bootstrap context would bind too
+    application.addListeners(new ApplicationListener<ApplicationEnvironmentPreparedEvent>() {
+      @Override
+      public void onApplicationEvent(ApplicationEnvironmentPreparedEvent event) {
+        event.getSpringApplication().setWebEnvironment(event.getEnvironment()
+            .getProperty("bamboo.endpointsEnabled", Boolean.class, false));
+      }
+    });
+    ConfigurableApplicationContext context = application.run(args);
+    if (context.getEnvironment().getProperty("bamboo.exitAfterStartup", Boolean.class, false)) {
+      LOG.info("Collector started in " + ManagementFactory.getRuntimeMXBean().getUptime()
+          + "ms, exiting");
+      System.exit(SpringApplication.exit(context));
+    }
   }
 }
@@ -17,9 +17,14 @@
 
 package com.capitalone.dashboard.collector;
 
+import com.google.common.util.concurrent.RateLimiter;
+
 import com.capitalone.dashboard.model.BambooJob;
 import com.capitalone.dashboard.model.Build;
+import com.capitalone.dashboard.util.Supplier;
 
+import java.util.Collection;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
 
@@ -39,11 +44,63 @@ public interface BambooClient {
   Map<BambooJob, Set<Build>> getInstanceJobs(String instanceUrl);
 
   /**
-   * Fetch full populated build information for a build.
+   * Finds all of the configured jobs for a given instance, but only lists the builds
+   * of known, enabled jobs whose plan or branches have built since their builds were
+   * last collected. Every other job is returned with an empty set of builds.
+   *
+   * @param instanceUrl the URL for the Bamboo instance.
+   * @param knownJobs   the jobs already stored for the collector.
+   * @return a summary of the new builds for each job on the instance.
+   */
+  Map<BambooJob, Set<Build>> getInstanceJobs(String instanceUrl, Collection<BambooJob> knownJobs);
+
+  /**
+   * Fetch full populated build information for a build. A build that is still running is
+   * returned with a {@link com.capitalone.dashboard.model.BuildStatus#InProgress} status,
+   * its number, url and start time only.
    *
    * @param buildUrl    the url of the build.
    * @param instanceUrl the URL for the Bamboo instance.
    * @return a Build instance or null.
    */
   Build getBuildDetails(String buildUrl, String instanceUrl);
+
+  /**
+   * Lists a page of the builds of a plan after a given build, oldest first, to walk its whole
+   * history. At a minimum, the number and url of each Build will be populated.
+   *
+   * @param instanceUrl the URL for the Bamboo instance.
+   * @param planKey     the key of the plan.
+   * @param after       the number of the newest build already walked, 0 for none.
+   * @param count       the number of results in the page.
+   * @return the builds of the page oldest first, empty once the newest result is walked, or
+   *     null if the results could not be parsed.
+   */
+  List<Build> getOldestBuilds(String instanceUrl, String planKey, long after, int count);
+
+  /**
+   * Makes the requests of an action at a capped rate. Every request the client makes on the
+   * calling thread while the action runs, each retry included, first takes a permit.
+   *
+   * @param rateLimiter the limiter the permits are taken from.
+   * @param action      the action making the requests.
+   * @param <T>         the type of the result of the action.
+   * @return the result of the action.
+   */
+  <T> T withRateLimiter(RateLimiter rateLimiter, Supplier<T> action);
+
+  /**
+   * Refills the retries of failed requests allowed in a collection cycle.
+   */
+  void resetRetryBudget();
+
+  /**
+   * Builds the url of a build, the same way as the builds listed for a job.
+   *
+   * @param instanceUrl the URL for the Bamboo instance.
+   * @param planKey     the key of the plan or branch.
+   * @param buildNumber the number of the build.
+   * @return the url of the build.
+   */
+  String getBuildUrl(String instanceUrl, String planKey, String buildNumber);
 }
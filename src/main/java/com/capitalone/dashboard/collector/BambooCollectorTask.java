@@ -20,13 +20,19 @@ package com.capitalone.dashboard.collector;
 
 import com.google.common.collect.Lists;
 
+import com.capitalone.dashboard.collector.jfr.CollectorEvents;
 import com.capitalone.dashboard.model.BambooCollector;
+import com.capitalone.dashboard.model.BambooFailedBuild;
 import com.capitalone.dashboard.model.BambooJob;
+import com.capitalone.dashboard.model.BambooPendingBuild;
 import com.capitalone.dashboard.model.Build;
+import com.capitalone.dashboard.model.BuildStatus;
 import com.capitalone.dashboard.model.CollectorItem;
 import com.capitalone.dashboard.model.CollectorType;
 import com.capitalone.dashboard.repository.BambooCollectorRepository;
+import com.capitalone.dashboard.repository.BambooFailedBuildRepository;
 import com.capitalone.dashboard.repository.BambooJobRepository;
+import com.capitalone.dashboard.repository.BambooPendingBuildRepository;
 import com.capitalone.dashboard.repository.BaseCollectorRepository;
 import com.capitalone.dashboard.repository.BuildRepository;
 import com.capitalone.dashboard.repository.ComponentRepository;
@@ -40,8 +46,11 @@ import org.springframework.stereotype.Component;
 import org.springframework.util.CollectionUtils;
 import org.springframework.web.client.RestClientException;
 
+import java.util.ArrayDeque;
 import java.util.ArrayList;
 import java.util.Comparator;
+import java.util.Deque;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
@@ -54,6 +63,7 @@ import java.util.Set;
 public class BambooCollectorTask extends CollectorTask<BambooCollector> {
   @SuppressWarnings("PMD.UnusedPrivateField")
   private static final Logger LOG = LoggerFactory.getLogger(BambooCollectorTask.class);
+  private static final String ALL_SERVERS = "*";
 
 
   private final BambooCollectorRepository bambooCollectorRepository;
@@ -62,6 +72,16 @@ public class BambooCollectorTask extends CollectorTask<BambooCollector> {
   private final BambooClient bambooClient;
   private final BambooSettings bambooSettings;
   private final ComponentRepository dbComponentRepository;
+  private final BambooPendingBuildRepository bambooPendingBuildRepository;
+  private final BambooFailedBuildRepository bambooFailedBuildRepository;
+  private final ClusterCoordinator clusterCoordinator;
+  private final PlanQuarantine planQuarantine;
+  private final CycleTrace cycleTrace;
+  private final CollectionFreshness collectionFreshness;
+  private final StateSnapshot stateSnapshot;
+  private final DashboardEnablement dashboardEnablement;
+  private final CommitStore commitStore;
+  private final JobLocks jobLocks;
 
   /**
    * Autowired constructor for spring dependency-injection.
@@ -73,6 +93,16 @@ public class BambooCollectorTask extends CollectorTask<BambooCollector> {
    * @param bambooClient              autowired.
    * @param bambooSettings            autowired.
    * @param dbComponentRepository     autowired.
+   * @param bambooPendingBuildRepository autowired.
+   * @param bambooFailedBuildRepository  autowired.
+   * @param clusterCoordinator           autowired.
+   * @param planQuarantine               autowired.
+   * @param cycleTrace                   autowired.
+   * @param collectionFreshness          autowired.
+   * @param stateSnapshot                autowired.
+   * @param dashboardEnablement          autowired.
+   * @param commitStore                  autowired.
+   * @param jobLocks                     autowired.
    */
   @Autowired
   public BambooCollectorTask(TaskScheduler taskScheduler,
@@ -80,7 +110,17 @@ public class BambooCollectorTask extends CollectorTask<BambooCollector> {
                              BambooJobRepository bambooJobRepository,
                              BuildRepository buildRepository, BambooClient bambooClient,
                              BambooSettings bambooSettings,
-                             ComponentRepository dbComponentRepository) {
+                             ComponentRepository dbComponentRepository,
+                             BambooPendingBuildRepository bambooPendingBuildRepository,
+                             BambooFailedBuildRepository bambooFailedBuildRepository,
+                             ClusterCoordinator clusterCoordinator,
+                             PlanQuarantine planQuarantine,
+                             CycleTrace cycleTrace,
+                             CollectionFreshness collectionFreshness,
+                             StateSnapshot stateSnapshot,
+                             DashboardEnablement dashboardEnablement,
+                             CommitStore commitStore,
+                             JobLocks jobLocks) {
     super(taskScheduler, "Bamboo");
     this.bambooCollectorRepository = bambooCollectorRepository;
     this.bambooJobRepository = bambooJobRepository;
@@ -88,6 +128,16 @@ public class BambooCollectorTask extends CollectorTask<BambooCollector> {
     this.bambooClient = bambooClient;
     this.bambooSettings = bambooSettings;
     this.dbComponentRepository = dbComponentRepository;
+    this.bambooPendingBuildRepository = bambooPendingBuildRepository;
+    this.bambooFailedBuildRepository = bambooFailedBuildRepository;
+    this.clusterCoordinator = clusterCoordinator;
+    this.planQuarantine = planQuarantine;
+    this.cycleTrace = cycleTrace;
+    this.collectionFreshness = collectionFreshness;
+    this.stateSnapshot = stateSnapshot;
+    this.dashboardEnablement = dashboardEnablement;
+    this.commitStore = commitStore;
+    this.jobLocks = jobLocks;
   }
 
   @Override
@@ -107,7 +157,30 @@ public class BambooCollectorTask extends CollectorTask<BambooCollector> {
 
   @Override
   public void collect(BambooCollector collector) {
+    Object cycleEvent = CollectorEvents.beginCollectionCycle();
+    cycleTrace.begin();
+    int jobCount = 0;
+    try {
+      jobCount = collectServers(collector);
+    } finally {
+      // a failed cycle still keeps what it collected and closes its trace
+      stateSnapshot.save();
+      commitStore.endCycle();
+      CollectorEvents.endCollectionCycle(cycleEvent, collector.getBuildServers().size(), jobCount);
+      cycleTrace.end();
+    }
+  }
+
+  /**
+   * Collects the jobs and builds of every server of the collector.
+   *
+   * @param collector the {@link BambooCollector}.
+   * @return the number of jobs known before the collection.
+   */
+  private int collectServers(BambooCollector collector) {
     long start = System.currentTimeMillis();
+    stateSnapshot.restoreOnce();
+    bambooClient.resetRetryBudget();
     Set<ObjectId> udId = new HashSet<>();
     udId.add(collector.getId());
     List<BambooJob> existingJobs = bambooJobRepository.findByCollectorIdIn(udId);
@@ -115,17 +188,56 @@ public class BambooCollectorTask extends CollectorTask<BambooCollector> {
     List<String> activeServers = new ArrayList<>();
     activeServers.addAll(collector.getBuildServers());
 
-    clean(collector, existingJobs);
+    // when clustered, only the leader keeps the jobs up to date, and every
+    // replica only collects the builds of the jobs in the shards it leases
+    boolean clustered = clusterCoordinator.isClustered();
+    if (clustered) {
+      clusterCoordinator.rebalance();
+    }
+    boolean leader = !clustered || clusterCoordinator.isLeader();
+    List<BambooJob> ownedJobs = clustered ? clusterCoordinator.owned(existingJobs) : existingJobs;
+
+    if (leader) {
+      cycleTrace.enter("phase", "clean", null);
+      Object phaseEvent = CollectorEvents.beginServerPhase();
+      if (dashboardEnablement.isEnabled()) {
+        dashboardEnablement.sync(collector.getId(), existingJobs);
+      } else {
+        clean(collector, existingJobs);
+      }
+      cycleTrace.exit("phase");
+      CollectorEvents.endServerPhase(phaseEvent, ALL_SERVERS, "clean", existingJobs.size());
+    }
+
+    int budget = bambooSettings.getBuildDetailsBudget() > 0
+        ? bambooSettings.getBuildDetailsBudget() : Integer.MAX_VALUE;
 
     for (String instanceUrl : collector.getBuildServers()) {
       logBanner(instanceUrl);
+      Object phaseEvent = CollectorEvents.beginServerPhase();
+      cycleTrace.enter("server", instanceUrl, null);
+      cycleTrace.enter("phase", "discovery", null);
       try {
         Map<BambooJob, Set<Build>> buildsByJob = bambooClient
-            .getInstanceJobs(instanceUrl);
+            .getInstanceJobs(instanceUrl, ownedJobs);
         log("Fetched jobs", start);
+        CollectorEvents.endServerPhase(phaseEvent, instanceUrl, "discovery", buildsByJob.size());
         activeJobs.addAll(buildsByJob.keySet());
-        addNewJobs(buildsByJob.keySet(), existingJobs, collector);
-        addNewBuilds(enabledJobs(collector, instanceUrl), buildsByJob);
+        if (leader) {
+          phaseEvent = CollectorEvents.beginServerPhase();
+          cycleTrace.enter("phase", "jobs", null);
+          addNewJobs(buildsByJob.keySet(), existingJobs, collector);
+          CollectorEvents.endServerPhase(phaseEvent, instanceUrl, "jobs", buildsByJob.size());
+        }
+        phaseEvent = CollectorEvents.beginServerPhase();
+        cycleTrace.enter("phase", "builds", null);
+        List<BambooJob> enabledJobs = enabledJobs(collector, instanceUrl);
+        List<BambooJob> polledJobs =
+            clustered ? clusterCoordinator.owned(enabledJobs) : enabledJobs;
+        int requested = addNewBuilds(polledJobs, buildsByJob, budget);
+        budget -= requested;
+        collectionFreshness.recordServerPolled(instanceUrl, polledJobs);
+        CollectorEvents.endServerPhase(phaseEvent, instanceUrl, "builds", requested);
         log("Finished", start);
       } catch (RestClientException rce) {
         activeServers.remove(instanceUrl);
@@ -133,10 +245,21 @@ public class BambooCollectorTask extends CollectorTask<BambooCollector> {
         // we will not delete this job  and wait for
         // rest exceptions to clear up at a later run.
         log("Error getting jobs for: " + instanceUrl, start);
+        CollectorEvents.endServerPhase(phaseEvent, instanceUrl, "failed", 0);
       }
     }
+    cycleTrace.exit("server");
     // Delete jobs that will be no longer collected because servers have moved etc.
-    deleteUnwantedJobs(activeJobs, existingJobs, activeServers, collector);
+    if (leader) {
+      cycleTrace.enter("phase", "delete", null);
+      Object phaseEvent = CollectorEvents.beginServerPhase();
+      deleteUnwantedJobs(activeJobs, existingJobs, activeServers, collector, start);
+      cycleTrace.exit("phase");
+      CollectorEvents.endServerPhase(phaseEvent, ALL_SERVERS, "delete", existingJobs.size());
+    }
+    log("Quarantined builds", start, (int) bambooFailedBuildRepository.countByQuarantinedTrue());
+    log("Quarantined plans", start, planQuarantine.size());
+    return existingJobs.size();
   }
 
   /**
@@ -182,20 +305,30 @@ public class BambooCollectorTask extends CollectorTask<BambooCollector> {
   }
 
   /**
-   * Delete orphaned job collector items.
+   * Delete orphaned job collector items. A job missing from its server is only marked missing
+   * until it has been missing for longer than the grace allows, and is revived once it shows
+   * up again, so that a partial discovery does not delete and recreate jobs.
    *
    * @param activeJobs a {@link List} of {@link BambooJob}.
    * @param existingJobs a {@link List} of {@link BambooJob}.
    * @param activeServers a {@link List} of {@link String}.
    * @param collector a {@link BambooCollector}.
+   * @param start the start of the collection.
    */
   private void deleteUnwantedJobs(
       List<BambooJob> activeJobs,
       List<BambooJob> existingJobs,
       List<String> activeServers,
-      BambooCollector collector) {
+      BambooCollector collector,
+      long start) {
 
+    Set<BambooJob> activeJobSet = new HashSet<>(activeJobs);
     List<BambooJob> deleteJobList = new ArrayList<>();
+    List<BambooJob> missingJobList = new ArrayList<>();
+    int tombstoned = 0;
+    int revived = 0;
+    int purged = 0;
+    long now = System.currentTimeMillis();
     for (BambooJob job : existingJobs) {
       if (job.isPushed()) {
         continue; // build servers that push jobs will not be in active servers list by design
@@ -215,49 +348,291 @@ public class BambooCollectorTask extends CollectorTask<BambooCollector> {
 
       // this is to handle jobs that have been deleted
       // from build servers. Will get 404 if we don't delete them.
-      if (activeServers.contains(job.getInstanceUrl()) && !activeJobs.contains(job)) {
+      if (!activeServers.contains(job.getInstanceUrl())) {
+        continue;
+      }
+      if (activeJobSet.contains(job)) {
+        if (job.getMissingSince() != 0) {
+          job.setMissingSince(0);
+          job.setMissingCycles(0);
+          missingJobList.add(job);
+          revived++;
+        }
+      } else if (withinDeleteGrace(job, now)) {
+        if (job.getMissingCycles() == 1) {
+          tombstoned++;
+        }
+        missingJobList.add(job);
+      } else {
         deleteJobList.add(job);
+        purged++;
       }
 
     }
+    if (!CollectionUtils.isEmpty(missingJobList)) {
+      bambooJobRepository.save(missingJobList);
+    }
     if (!CollectionUtils.isEmpty(deleteJobList)) {
       bambooJobRepository.delete(deleteJobList);
     }
+    if (tombstoned + revived + purged > 0) {
+      log("Missing jobs", start, tombstoned);
+      log("Revived jobs", start, revived);
+      log("Purged jobs", start, purged);
+    }
+  }
+
+  /**
+   * Marks a job missing from its server for one more collection.
+   *
+   * @param job the missing {@link BambooJob}.
+   * @param now the current time.
+   * @return true if the job is kept for now, false if it is to be deleted.
+   */
+  private boolean withinDeleteGrace(BambooJob job, long now) {
+    if (job.getMissingSince() == 0) {
+      job.setMissingSince(now);
+    }
+    job.setMissingCycles(job.getMissingCycles() + 1);
+    int graceCycles = bambooSettings.getDeleteGraceCycles();
+    long gracePeriod = bambooSettings.getDeleteGracePeriod();
+    if (graceCycles <= 0 && gracePeriod <= 0) {
+      return false;
+    }
+    return (graceCycles <= 0 || job.getMissingCycles() <= graceCycles)
+        && (gracePeriod <= 0 || now - job.getMissingSince() < gracePeriod);
   }
 
   /**
-   * Iterates over the enabled build jobs and adds new builds to the database.
+   * Iterates over the enabled build jobs and adds new builds to the database. The details of
+   * at most as many builds as the budget allows are requested, and the rest are left for the
+   * next cycle.
    *
    * @param enabledJobs list of enabled {@link BambooJob}s.
    * @param buildsByJob maps a {@link BambooJob} to a set of {@link Build}s.
+   * @param budget      the number of builds whose details can still be requested.
+   * @return the number of builds whose details were requested.
    */
-  private void addNewBuilds(List<BambooJob> enabledJobs,
-                            Map<BambooJob, Set<Build>> buildsByJob) {
-    long start = System.currentTimeMillis();
-    int count = 0;
+  private int addNewBuilds(List<BambooJob> enabledJobs,
+                           Map<BambooJob, Set<Build>> buildsByJob, int budget) {
+    final long start = System.currentTimeMillis();
+    Map<BambooJob, BambooJob> discoveredJobs = new HashMap<>();
+    for (BambooJob discovered : buildsByJob.keySet()) {
+      discoveredJobs.put(discovered, discovered);
+    }
 
+    List<JobBuilds> jobBuilds = new ArrayList<>();
     for (BambooJob job : enabledJobs) {
       if (job.isPushed()) {
         LOG.info("Job Pushed already: " + job.getJobName());
         continue;
       }
-      // process new builds in the order of their build numbers - this has
-      // implication to handling of commits in BuildEventListener
+      // the new builds of a job are saved in the order of their build numbers, so that
+      // BuildEventListener sees the builds of a job in the order they ran
       ArrayList<Build> builds = Lists.newArrayList(nullSafe(buildsByJob.get(job)));
       builds.sort(Comparator.comparingInt((Build build) -> Integer.valueOf(build.getNumber())));
+      JobBuilds next = new JobBuilds(job, pendingBuilds(job, builds), failedBuilds(job, builds));
       for (Build buildSummary : builds) {
+        String number = buildSummary.getNumber();
         if (isNewBuild(job, buildSummary)) {
-          Build build = bambooClient.getBuildDetails(buildSummary
-              .getBuildUrl(), job.getInstanceUrl());
-          if (build != null) {
-            build.setCollectorItemId(job.getId());
-            buildRepository.save(build);
-            count++;
+          BambooFailedBuild failed = next.failedBuilds.get(number);
+          if (failed == null || !failed.isQuarantined()) {
+            next.builds.add(buildSummary);
+          }
+          // a quarantined build is given up on, it does not hold back the high-water marks
+        } else {
+          if (next.pendingBuilds.containsKey(number)) {
+            bambooPendingBuildRepository.delete(next.pendingBuilds.get(number));
+          }
+          if (next.failedBuilds.containsKey(number)) {
+            bambooFailedBuildRepository.delete(next.failedBuilds.get(number));
           }
         }
       }
+      next.behind = next.builds.size();
+      jobBuilds.add(next);
+    }
+
+    // take one build of each job in turn, so that a job with a long backlog does not hold up
+    // the others
+    Deque<JobBuilds> turns = new ArrayDeque<>();
+    for (JobBuilds next : jobBuilds) {
+      if (!next.builds.isEmpty()) {
+        turns.add(next);
+      }
+    }
+    int count = 0;
+    int requested = 0;
+    while (!turns.isEmpty() && requested < budget) {
+      JobBuilds next = turns.poll();
+      Build buildSummary = next.builds.poll();
+      if (!isDue(buildSummary, next.pendingBuilds, next.failedBuilds)) {
+        next.complete = false;
+      } else {
+        requested++;
+        cycleTrace.enter("build", next.job.getJobName() + " #" + buildSummary.getNumber(),
+            next.job.getJobName());
+        if (collectBuild(next.job, buildSummary, next.pendingBuilds, next.failedBuilds)) {
+          count++;
+          next.behind--;
+        } else {
+          next.complete = false;
+        }
+        cycleTrace.exit("build");
+      }
+      if (!next.builds.isEmpty()) {
+        turns.add(next);
+      }
+    }
+    // the builds left over are collected in a later cycle
+    int deferred = 0;
+    for (JobBuilds next : turns) {
+      deferred += next.builds.size();
+      next.complete = false;
+    }
+
+    for (JobBuilds next : jobBuilds) {
+      BambooJob job = next.job;
+      // only move the high-water marks once every listed build is stored,
+      // otherwise the plan is listed again next time
+      BambooJob discovered = discoveredJobs.get(job);
+      boolean marksMoved = next.complete && discovered != null
+          && job.updateCollectedBuildNumbers(discovered.getDiscoveredBuildNumbers());
+      if (marksMoved || next.averageBuildDuration != job.getAverageBuildDuration()) {
+        bambooJobRepository.save(job);
+      }
+      collectionFreshness.recordJobPolled(job, next.behind);
     }
     log("New builds", start, count);
+    if (deferred > 0) {
+      log("Deferred builds", start, deferred);
+    }
+    return requested;
+  }
+
+  /**
+   * Checks whether the details of a build are to be requested now. Running builds wait until
+   * they are expected to be finished, and failing builds until they are to be retried.
+   *
+   * @param buildSummary  the {@link Build} listed for the job.
+   * @param pendingBuilds the running builds of the job, keyed by build number.
+   * @param failedBuilds  the failing builds of the job, keyed by build number.
+   * @return true if the details of the build are to be requested.
+   */
+  private boolean isDue(Build buildSummary, Map<String, BambooPendingBuild> pendingBuilds,
+                        Map<String, BambooFailedBuild> failedBuilds) {
+    long now = System.currentTimeMillis();
+    BambooPendingBuild pending = pendingBuilds.get(buildSummary.getNumber());
+    BambooFailedBuild failed = failedBuilds.get(buildSummary.getNumber());
+    return (pending == null || pending.isDue(now)) && (failed == null || failed.isDue(now));
+  }
+
+  /**
+   * Fetches and stores the details of a new build. A build that is still running is tracked
+   * as pending, and its details are not requested again until it is expected to be finished.
+   * A build whose details cannot be fetched is requested again after a growing wait.
+   *
+   * @param job           the {@link BambooJob} of the build.
+   * @param buildSummary  the {@link Build} listed for the job.
+   * @param pendingBuilds the running builds of the job, keyed by build number.
+   * @param failedBuilds  the failing builds of the job, keyed by build number.
+   * @return true if the build was stored.
+   */
+  private boolean collectBuild(BambooJob job, Build buildSummary,
+                               Map<String, BambooPendingBuild> pendingBuilds,
+                               Map<String, BambooFailedBuild> failedBuilds) {
+    long now = System.currentTimeMillis();
+    BambooPendingBuild pending = pendingBuilds.get(buildSummary.getNumber());
+    BambooFailedBuild failed = failedBuilds.get(buildSummary.getNumber());
+    Build build = bambooClient.getBuildDetails(buildSummary.getBuildUrl(), job.getInstanceUrl());
+    if (build == null) {
+      trackFailedBuild(job, buildSummary, failed, now);
+      return false;
+    }
+    if (failed != null) {
+      bambooFailedBuildRepository.delete(failed);
+    }
+    if (BuildStatus.InProgress.equals(build.getBuildStatus())) {
+      trackPendingBuild(job, build, pending, now);
+      return false;
+    }
+    build.setCollectorItemId(job.getId());
+    cycleTrace.enter("save", null, null);
+    boolean saved;
+    synchronized (jobLocks.get(job)) {
+      // the notification queue or the backfill may have stored it meanwhile
+      saved = isNewBuild(job, buildSummary);
+      if (saved) {
+        buildRepository.save(build);
+      }
+    }
+    cycleTrace.exit("save");
+    if (saved) {
+      job.addBuildDuration(build.getDuration());
+    }
+    if (pending != null) {
+      bambooPendingBuildRepository.delete(pending);
+    }
+    return true;
+  }
+
+  private void trackPendingBuild(BambooJob job, Build build, BambooPendingBuild pending,
+                                 long now) {
+    BambooPendingBuild pendingBuild = pending;
+    if (pendingBuild == null) {
+      pendingBuild = new BambooPendingBuild();
+      pendingBuild.setCollectorItemId(job.getId());
+      pendingBuild.setNumber(build.getNumber());
+      pendingBuild.setBuildUrl(build.getBuildUrl());
+      pendingBuild.setStartTime(build.getStartTime() > 0 ? build.getStartTime() : now);
+    }
+    pendingBuild.setExpectedDuration(job.getAverageBuildDuration());
+    pendingBuild.scheduleNextPoll(now, bambooSettings.getPendingBuildMinPollInterval(),
+        bambooSettings.getPendingBuildMaxPollInterval());
+    bambooPendingBuildRepository.save(pendingBuild);
+  }
+
+  private void trackFailedBuild(BambooJob job, Build buildSummary, BambooFailedBuild failed,
+                                long now) {
+    BambooFailedBuild failedBuild = failed;
+    if (failedBuild == null) {
+      failedBuild = new BambooFailedBuild();
+      failedBuild.setCollectorItemId(job.getId());
+      failedBuild.setNumber(buildSummary.getNumber());
+      failedBuild.setBuildUrl(buildSummary.getBuildUrl());
+    }
+    failedBuild.recordFailure(now, bambooSettings.getFailedBuildMinRetryInterval(),
+        bambooSettings.getFailedBuildMaxRetryInterval(),
+        bambooSettings.getFailedBuildQuarantineThreshold());
+    if (failedBuild.isQuarantined()) {
+      LOG.warn("Quarantined build " + failedBuild.getBuildUrl() + " after "
+          + failedBuild.getFailures() + " failures");
+    }
+    bambooFailedBuildRepository.save(failedBuild);
+  }
+
+  private Map<String, BambooFailedBuild> failedBuilds(BambooJob job, List<Build> builds) {
+    Map<String, BambooFailedBuild> failedBuilds = new HashMap<>();
+    if (builds.isEmpty()) {
+      return failedBuilds;
+    }
+    for (BambooFailedBuild failed : bambooFailedBuildRepository
+        .findByCollectorItemId(job.getId())) {
+      failedBuilds.put(failed.getNumber(), failed);
+    }
+    return failedBuilds;
+  }
+
+  private Map<String, BambooPendingBuild> pendingBuilds(BambooJob job, List<Build> builds) {
+    Map<String, BambooPendingBuild> pendingBuilds = new HashMap<>();
+    if (builds.isEmpty()) {
+      return pendingBuilds;
+    }
+    for (BambooPendingBuild pending : bambooPendingBuildRepository
+        .findByCollectorItemId(job.getId())) {
+      pendingBuilds.put(pending.getNumber(), pending);
+    }
+    return pendingBuilds;
   }
 
   private Set<Build> nullSafe(Set<Build> builds) {
@@ -275,15 +650,16 @@ public class BambooCollectorTask extends CollectorTask<BambooCollector> {
       Set<BambooJob> jobs,
       List<BambooJob> existingJobs,
       BambooCollector collector) {
-    long start = System.currentTimeMillis();
+    final long start = System.currentTimeMillis();
     int count = 0;
 
+    Map<BambooJob, BambooJob> existingByJob = new HashMap<>();
+    for (BambooJob existing : existingJobs) {
+      existingByJob.putIfAbsent(existing, existing);
+    }
     List<BambooJob> newJobs = new ArrayList<>();
     for (BambooJob job : jobs) {
-      BambooJob existing = null;
-      if (!CollectionUtils.isEmpty(existingJobs) && (existingJobs.contains(job))) {
-        existing = existingJobs.get(existingJobs.indexOf(job));
-      }
+      BambooJob existing = existingByJob.get(job);
 
       String niceName = getNiceName(job, collector);
       if (existing == null) {
@@ -342,4 +718,26 @@ public class BambooCollectorTask extends CollectorTask<BambooCollector> {
     return buildRepository.findByCollectorItemIdAndNumber(job.getId(),
         build.getNumber()) == null;
   }
+
+  /**
+   * The new builds of a job still to be collected in a cycle, in the order of their build
+   * numbers.
+   */
+  private static final class JobBuilds {
+    private final BambooJob job;
+    private final Map<String, BambooPendingBuild> pendingBuilds;
+    private final Map<String, BambooFailedBuild> failedBuilds;
+    private final Deque<Build> builds = new ArrayDeque<>();
+    private final long averageBuildDuration;
+    private boolean complete = true;
+    private int behind;
+
+    JobBuilds(BambooJob job, Map<String, BambooPendingBuild> pendingBuilds,
+              Map<String, BambooFailedBuild> failedBuilds) {
+      this.job = job;
+      this.pendingBuilds = pendingBuilds;
+      this.failedBuilds = failedBuilds;
+      this.averageBuildDuration = job.getAverageBuildDuration();
+    }
+  }
 }
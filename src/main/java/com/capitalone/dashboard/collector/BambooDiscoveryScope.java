@@ -0,0 +1,136 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.capitalone.dashboard.collector;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.regex.Pattern;
+
+/**
+ * Limits which plans and branches of a Bamboo server are discovered.
+ */
+public class BambooDiscoveryScope {
+  private List<String> projectKeys = new ArrayList<>();
+  private List<String> includePlans = new ArrayList<>();
+  private List<String> excludePlans = new ArrayList<>();
+  private boolean includeBranches = true;
+  private int maxBranches;
+
+  private List<Pattern> includePatterns;
+  private List<Pattern> excludePatterns;
+
+  /**
+   * Keys of the projects to discover plans in. Empty discovers the plans of every project.
+   *
+   * @return the project keys.
+   */
+  public List<String> getProjectKeys() {
+    return projectKeys;
+  }
+
+  public void setProjectKeys(List<String> projectKeys) {
+    this.projectKeys = projectKeys;
+  }
+
+  /**
+   * Regular expressions a plan key has to match to be discovered. Empty matches every plan.
+   *
+   * @return the include expressions.
+   */
+  public List<String> getIncludePlans() {
+    return includePlans;
+  }
+
+  public void setIncludePlans(List<String> includePlans) {
+    this.includePlans = includePlans;
+    this.includePatterns = null;
+  }
+
+  /**
+   * Regular expressions of plan keys that are never discovered.
+   *
+   * @return the exclude expressions.
+   */
+  public List<String> getExcludePlans() {
+    return excludePlans;
+  }
+
+  public void setExcludePlans(List<String> excludePlans) {
+    this.excludePlans = excludePlans;
+    this.excludePatterns = null;
+  }
+
+  public boolean isIncludeBranches() {
+    return includeBranches;
+  }
+
+  public void setIncludeBranches(boolean includeBranches) {
+    this.includeBranches = includeBranches;
+  }
+
+  /**
+   * Largest number of branches listed per plan, 0 for no limit.
+   *
+   * @return the largest number of branches per plan.
+   */
+  public int getMaxBranches() {
+    return maxBranches;
+  }
+
+  public void setMaxBranches(int maxBranches) {
+    this.maxBranches = maxBranches;
+  }
+
+  /**
+   * Checks a plan key against the include and exclude expressions.
+   *
+   * @param planKey the key of the plan.
+   * @return true if the plan is in scope.
+   */
+  public boolean includesPlan(String planKey) {
+    if (includePatterns == null) {
+      includePatterns = compile(includePlans);
+    }
+    if (excludePatterns == null) {
+      excludePatterns = compile(excludePlans);
+    }
+    if (!includePatterns.isEmpty() && !matchesAny(includePatterns, planKey)) {
+      return false;
+    }
+    return !matchesAny(excludePatterns, planKey);
+  }
+
+  private static List<Pattern> compile(List<String> expressions) {
+    List<Pattern> patterns = new ArrayList<>();
+    if (expressions != null) {
+      for (String expression : expressions) {
+        patterns.add(Pattern.compile(expression));
+      }
+    }
+    return patterns;
+  }
+
+  private static boolean matchesAny(List<Pattern> patterns, String planKey) {
+    for (Pattern pattern : patterns) {
+      if (pattern.matcher(planKey).matches()) {
+        return true;
+      }
+    }
+    return false;
+  }
+}
@@ -0,0 +1,174 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.capitalone.dashboard.collector;
+
+import org.json.simple.JSONArray;
+import org.json.simple.JSONObject;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Keeps the plans of every instance and the branches of every plan between collections, as
+ * they change far less often than builds. Entries are listed again from Bamboo once they are
+ * older than the refresh interval, or after being invalidated.
+ */
+@Component
+public class BambooMetadataCache {
+  private final BambooSettings settings;
+  private final Map<String, Entry<List<JSONObject>>> plans = new ConcurrentHashMap<>();
+  private final Map<String, Entry<List<?>>> branches = new ConcurrentHashMap<>();
+
+  /**
+   * Autowired constructor for spring dependency-injection.
+   *
+   * @param settings autowired.
+   */
+  @Autowired
+  public BambooMetadataCache(BambooSettings settings) {
+    this.settings = settings;
+  }
+
+  /**
+   * The plans in scope of an instance.
+   *
+   * @param instanceUrl the URL for the Bamboo instance.
+   * @return the plans, or null if they are to be listed again.
+   */
+  public List<JSONObject> getPlans(String instanceUrl) {
+    return get(plans, instanceUrl);
+  }
+
+  public void putPlans(String instanceUrl, List<JSONObject> instancePlans) {
+    put(plans, instanceUrl, instancePlans);
+  }
+
+  /**
+   * The branches of a plan.
+   *
+   * @param branchesUrl the URL the branches are listed from.
+   * @return the branches, or null if they are to be listed again.
+   */
+  public List<?> getBranches(String branchesUrl) {
+    return get(branches, branchesUrl);
+  }
+
+  public void putBranches(String branchesUrl, List<?> planBranches) {
+    put(branches, branchesUrl, planBranches);
+  }
+
+  /**
+   * Drops every entry, so that plans and branches are listed again on the next collection.
+   */
+  public void invalidate() {
+    plans.clear();
+    branches.clear();
+  }
+
+  /**
+   * Number of instances and plans whose metadata is cached.
+   *
+   * @return the number of entries.
+   */
+  public int size() {
+    return plans.size() + branches.size();
+  }
+
+  /**
+   * The cached plans and branches with the time they were listed, for the state snapshot.
+   *
+   * @return the plans and branches as JSON.
+   */
+  @SuppressWarnings("unchecked")
+  JSONObject toJson() {
+    JSONObject json = new JSONObject();
+    json.put("plans", toJson(plans));
+    json.put("branches", toJson(branches));
+    return json;
+  }
+
+  @SuppressWarnings("unchecked")
+  private static <T extends List<?>> JSONObject toJson(Map<String, Entry<T>> entries) {
+    JSONObject json = new JSONObject();
+    for (Map.Entry<String, Entry<T>> entry : entries.entrySet()) {
+      JSONObject value = new JSONObject();
+      JSONArray list = new JSONArray();
+      list.addAll(entry.getValue().value);
+      value.put("value", list);
+      value.put("loadedAt", entry.getValue().loadedAt);
+      json.put(entry.getKey(), value);
+    }
+    return json;
+  }
+
+  /**
+   * Caches the plans and branches of a state snapshot, keeping the time they were listed so
+   * that they expire as if the collector had not been restarted.
+   *
+   * @param json    the plans and branches as written by {@link #toJson()}.
+   * @param servers the servers collected from, whose plans are restored.
+   */
+  @SuppressWarnings("unchecked")
+  void restore(JSONObject json, List<String> servers) {
+    JSONObject restoredPlans = (JSONObject) json.get("plans");
+    for (Object instanceUrl : restoredPlans.keySet()) {
+      if (servers.contains(instanceUrl)) {
+        JSONObject entry = (JSONObject) restoredPlans.get(instanceUrl);
+        plans.put(instanceUrl.toString(), new Entry<>((List<JSONObject>) entry.get("value"),
+            ((Number) entry.get("loadedAt")).longValue()));
+      }
+    }
+    JSONObject restoredBranches = (JSONObject) json.get("branches");
+    for (Object branchesUrl : restoredBranches.keySet()) {
+      JSONObject entry = (JSONObject) restoredBranches.get(branchesUrl);
+      branches.put(branchesUrl.toString(), new Entry<>((List<?>) entry.get("value"),
+          ((Number) entry.get("loadedAt")).longValue()));
+    }
+  }
+
+  private <T> T get(Map<String, Entry<T>> entries, String key) {
+    Entry<T> entry = entries.get(key);
+    if (entry == null) {
+      return null;
+    }
+    if (System.currentTimeMillis() - entry.loadedAt >= settings.getMetadataRefreshInterval()) {
+      entries.remove(key);
+      return null;
+    }
+    return entry.value;
+  }
+
+  private <T> void put(Map<String, Entry<T>> entries, String key, T value) {
+    if (settings.getMetadataRefreshInterval() > 0) {
+      entries.put(key, new Entry<>(value, System.currentTimeMillis()));
+    }
+  }
+
+  private static final class Entry<T> {
+    private final T value;
+    private final long loadedAt;
+
+    Entry(T value, long loadedAt) {
+      this.value = value;
+      this.loadedAt = loadedAt;
+    }
+  }
+}
@@ -20,6 +20,7 @@ package com.capitalone.dashboard.collector;
 import org.springframework.boot.context.properties.ConfigurationProperties;
 import org.springframework.stereotype.Component;
 
+import java.util.ArrayList;
 import java.util.List;
 
 /**
@@ -37,6 +38,53 @@ public class BambooSettings {
   private String username;
   private String apiKey;
   private String dockerLocalHostIP; //null if not running in docker on http://localhost
+  private List<BambooDiscoveryScope> scopes = new ArrayList<>();
+  private boolean changeDetection = true;
+  private boolean clusterEnabled;
+  private int clusterShards = 16;
+  private long clusterLeaseTtl = 600000;
+  private BuildDetailsExpansion buildDetailsExpansion = BuildDetailsExpansion.STANDARD;
+  private int planMaxResults;
+  private int branchMaxResults;
+  private int buildWindowDays;
+  private long pendingBuildMinPollInterval = 60000;
+  private long pendingBuildMaxPollInterval = 3600000;
+  private long failedBuildMinRetryInterval = 300000;
+  private long failedBuildMaxRetryInterval = 86400000;
+  private int failedBuildQuarantineThreshold = 10;
+  private long failedPlanMinRetryInterval = 300000;
+  private long failedPlanMaxRetryInterval = 86400000;
+  private int retryAttempts = 2;
+  private long retryMinDelay = 500;
+  private long retryMaxDelay = 10000;
+  private int retryBudget = 100;
+  private int notificationQueueCapacity = 1000;
+  private int buildDetailsBudget;
+  private long metadataRefreshInterval = 3600000;
+  private double backfillRequestsPerSecond = 1;
+  private int backfillPageSize = 25;
+  private long backfillInterval = 60000;
+  private boolean traceEnabled;
+  private String traceFile;
+  private int traceTopN = 10;
+  private String fixtureMode;
+  private String fixtureDirectory = "bamboo-fixtures";
+  private double fixtureLatencyScale = 1;
+  private long freshnessSlo = 3600000;
+  private String snapshotFile;
+  private long enablementRefreshInterval;
+  private long enablementReconcileInterval = 3600000;
+  private int deleteGraceCycles = 3;
+  private long deleteGracePeriod;
+  private boolean ensureIndexes = true;
+  private String queryPlanCheck;
+  private boolean commitStore;
+  private String captureFile;
+  private List<String> captureServers;
+  private List<String> capturePlans;
+  private double captureSamplePercent;
+  private long captureMaxBytes = 104857600;
+  private int captureFileCount = 5;
 
   public String getCron() {
     return cron;
@@ -54,6 +102,639 @@ public class BambooSettings {
     this.saveLog = saveLog;
   }
 
+  /**
+   * Discovery scopes of the servers, by the same index as {@link #getServers()}.
+   *
+   * @return the discovery scopes.
+   */
+  public List<BambooDiscoveryScope> getScopes() {
+    return scopes;
+  }
+
+  public void setScopes(List<BambooDiscoveryScope> scopes) {
+    this.scopes = scopes;
+  }
+
+  /**
+   * Finds the discovery scope of a server.
+   *
+   * @param server the URL of the server.
+   * @return the scope configured for the server, or a scope that includes everything.
+   */
+  public BambooDiscoveryScope getScope(String server) {
+    int index = servers == null ? -1 : servers.indexOf(server);
+    if (index >= 0 && scopes != null && index < scopes.size() && scopes.get(index) != null) {
+      return scopes.get(index);
+    }
+    return new BambooDiscoveryScope();
+  }
+
+  /**
+   * When enabled, only the plans whose newest build moved past the builds already collected
+   * have their results listed each cycle.
+   *
+   * @return true if plan level change detection is enabled.
+   */
+  public boolean isChangeDetection() {
+    return changeDetection;
+  }
+
+  public void setChangeDetection(boolean changeDetection) {
+    this.changeDetection = changeDetection;
+  }
+
+  /**
+   * When enabled, replicas of the collector share the jobs through leases in Mongo.
+   *
+   * @return true if the collector runs as a cluster.
+   */
+  public boolean isClusterEnabled() {
+    return clusterEnabled;
+  }
+
+  public void setClusterEnabled(boolean clusterEnabled) {
+    this.clusterEnabled = clusterEnabled;
+  }
+
+  /**
+   * Number of shards the jobs are split into. Should be well above the number of replicas.
+   *
+   * @return the number of shards.
+   */
+  public int getClusterShards() {
+    return clusterShards;
+  }
+
+  public void setClusterShards(int clusterShards) {
+    this.clusterShards = clusterShards;
+  }
+
+  /**
+   * Time, in milliseconds, a lease is held without a heartbeat. A dead replica's shards move
+   * to the others after this long.
+   *
+   * @return the lease time to live in milliseconds.
+   */
+  public long getClusterLeaseTtl() {
+    return clusterLeaseTtl;
+  }
+
+  public void setClusterLeaseTtl(long clusterLeaseTtl) {
+    this.clusterLeaseTtl = clusterLeaseTtl;
+  }
+
+  /**
+   * How much of a build result is expanded when its details are requested.
+   *
+   * @return the {@link BuildDetailsExpansion}.
+   */
+  public BuildDetailsExpansion getBuildDetailsExpansion() {
+    return buildDetailsExpansion;
+  }
+
+  public void setBuildDetailsExpansion(BuildDetailsExpansion buildDetailsExpansion) {
+    this.buildDetailsExpansion = buildDetailsExpansion;
+  }
+
+  /**
+   * Number of results listed for each plan, 0 for Bamboo's default page.
+   *
+   * @return the number of results listed per plan.
+   */
+  public int getPlanMaxResults() {
+    return planMaxResults;
+  }
+
+  public void setPlanMaxResults(int planMaxResults) {
+    this.planMaxResults = planMaxResults;
+  }
+
+  /**
+   * Number of results listed for each branch, 0 for Bamboo's default page.
+   *
+   * @return the number of results listed per branch.
+   */
+  public int getBranchMaxResults() {
+    return branchMaxResults;
+  }
+
+  public void setBranchMaxResults(int branchMaxResults) {
+    this.branchMaxResults = branchMaxResults;
+  }
+
+  /**
+   * Only builds started in this many last days are collected, and branches whose latest
+   * build is older are skipped. 0 collects builds of any age.
+   *
+   * @return the time window in days.
+   */
+  public int getBuildWindowDays() {
+    return buildWindowDays;
+  }
+
+  public void setBuildWindowDays(int buildWindowDays) {
+    this.buildWindowDays = buildWindowDays;
+  }
+
+  /**
+   * Shortest wait, in milliseconds, before the details of a running build are requested again.
+   *
+   * @return the shortest wait in milliseconds.
+   */
+  public long getPendingBuildMinPollInterval() {
+    return pendingBuildMinPollInterval;
+  }
+
+  public void setPendingBuildMinPollInterval(long pendingBuildMinPollInterval) {
+    this.pendingBuildMinPollInterval = pendingBuildMinPollInterval;
+  }
+
+  /**
+   * Longest wait, in milliseconds, before the details of a running build are requested again.
+   *
+   * @return the longest wait in milliseconds.
+   */
+  public long getPendingBuildMaxPollInterval() {
+    return pendingBuildMaxPollInterval;
+  }
+
+  public void setPendingBuildMaxPollInterval(long pendingBuildMaxPollInterval) {
+    this.pendingBuildMaxPollInterval = pendingBuildMaxPollInterval;
+  }
+
+  /**
+   * Wait, in milliseconds, before the details of a build that failed once are requested again.
+   * The wait doubles with every further failure.
+   *
+   * @return the wait after the first failure in milliseconds.
+   */
+  public long getFailedBuildMinRetryInterval() {
+    return failedBuildMinRetryInterval;
+  }
+
+  public void setFailedBuildMinRetryInterval(long failedBuildMinRetryInterval) {
+    this.failedBuildMinRetryInterval = failedBuildMinRetryInterval;
+  }
+
+  public long getFailedBuildMaxRetryInterval() {
+    return failedBuildMaxRetryInterval;
+  }
+
+  public void setFailedBuildMaxRetryInterval(long failedBuildMaxRetryInterval) {
+    this.failedBuildMaxRetryInterval = failedBuildMaxRetryInterval;
+  }
+
+  /**
+   * Number of failed requests for the details of a build after which it is quarantined and no
+   * longer requested. 0 never quarantines builds.
+   *
+   * @return the number of failures that quarantines a build.
+   */
+  public int getFailedBuildQuarantineThreshold() {
+    return failedBuildQuarantineThreshold;
+  }
+
+  public void setFailedBuildQuarantineThreshold(int failedBuildQuarantineThreshold) {
+    this.failedBuildQuarantineThreshold = failedBuildQuarantineThreshold;
+  }
+
+  /**
+   * Number of builds whose details are requested in a collection cycle, over all servers, taking
+   * one build of each job in turn in build number order. 0 for no limit.
+   *
+   * @return the number of build details requested per cycle.
+   */
+  public int getBuildDetailsBudget() {
+    return buildDetailsBudget;
+  }
+
+  public void setBuildDetailsBudget(int buildDetailsBudget) {
+    this.buildDetailsBudget = buildDetailsBudget;
+  }
+
+  /**
+   * Time, in milliseconds, the plans and branches listed from Bamboo are reused for before
+   * they are listed again. 0 lists them on every collection.
+   *
+   * @return the metadata refresh interval in milliseconds.
+   */
+  public long getMetadataRefreshInterval() {
+    return metadataRefreshInterval;
+  }
+
+  public void setMetadataRefreshInterval(long metadataRefreshInterval) {
+    this.metadataRefreshInterval = metadataRefreshInterval;
+  }
+
+  /**
+   * Number of requests per second made to Bamboo while backfilling the history of jobs, on top
+   * of the collection cycle, counting every request and retry. 0 turns backfilling off.
+   *
+   * @return the requests per second of backfilling.
+   */
+  public double getBackfillRequestsPerSecond() {
+    return backfillRequestsPerSecond;
+  }
+
+  public void setBackfillRequestsPerSecond(double backfillRequestsPerSecond) {
+    this.backfillRequestsPerSecond = backfillRequestsPerSecond;
+  }
+
+  /**
+   * Number of results of a job walked at a time while backfilling.
+   *
+   * @return the page size of backfilling.
+   */
+  public int getBackfillPageSize() {
+    return backfillPageSize;
+  }
+
+  public void setBackfillPageSize(int backfillPageSize) {
+    this.backfillPageSize = backfillPageSize;
+  }
+
+  /**
+   * Time, in milliseconds, between the passes over the jobs being backfilled.
+   *
+   * @return the backfill interval in milliseconds.
+   */
+  public long getBackfillInterval() {
+    return backfillInterval;
+  }
+
+  public void setBackfillInterval(long backfillInterval) {
+    this.backfillInterval = backfillInterval;
+  }
+
+  /**
+   * Number of build notifications waiting to be collected, beyond which notifications are
+   * refused. 0 turns the notification endpoint off.
+   *
+   * @return the capacity of the notification queue.
+   */
+  public int getNotificationQueueCapacity() {
+    return notificationQueueCapacity;
+  }
+
+  public void setNotificationQueueCapacity(int notificationQueueCapacity) {
+    this.notificationQueueCapacity = notificationQueueCapacity;
+  }
+
+  /**
+   * Time, in milliseconds, a plan or branch whose results or branches cannot be listed is
+   * left alone after its first failure. The wait doubles with every failure.
+   *
+   * @return the shortest wait after a plan failure in milliseconds.
+   */
+  public long getFailedPlanMinRetryInterval() {
+    return failedPlanMinRetryInterval;
+  }
+
+  public void setFailedPlanMinRetryInterval(long failedPlanMinRetryInterval) {
+    this.failedPlanMinRetryInterval = failedPlanMinRetryInterval;
+  }
+
+  public long getFailedPlanMaxRetryInterval() {
+    return failedPlanMaxRetryInterval;
+  }
+
+  public void setFailedPlanMaxRetryInterval(long failedPlanMaxRetryInterval) {
+    this.failedPlanMaxRetryInterval = failedPlanMaxRetryInterval;
+  }
+
+  /**
+   * Number of times a request to Bamboo is repeated after a connection failure or an
+   * overloaded response. 0 for no retries.
+   *
+   * @return the number of retries of a request.
+   */
+  public int getRetryAttempts() {
+    return retryAttempts;
+  }
+
+  public void setRetryAttempts(int retryAttempts) {
+    this.retryAttempts = retryAttempts;
+  }
+
+  /**
+   * Upper bound, in milliseconds, of the random wait before the first retry of a request. The
+   * bound doubles with every retry.
+   *
+   * @return the wait bound of the first retry in milliseconds.
+   */
+  public long getRetryMinDelay() {
+    return retryMinDelay;
+  }
+
+  public void setRetryMinDelay(long retryMinDelay) {
+    this.retryMinDelay = retryMinDelay;
+  }
+
+  public long getRetryMaxDelay() {
+    return retryMaxDelay;
+  }
+
+  public void setRetryMaxDelay(long retryMaxDelay) {
+    this.retryMaxDelay = retryMaxDelay;
+  }
+
+  /**
+   * Number of retries allowed over all requests in a collection cycle, so that retries do not
+   * pile onto a struggling server. 0 for no limit.
+   *
+   * @return the number of retries per cycle.
+   */
+  public int getRetryBudget() {
+    return retryBudget;
+  }
+
+  public void setRetryBudget(int retryBudget) {
+    this.retryBudget = retryBudget;
+  }
+
+  /**
+   * Whether each collection cycle is traced as a tree of server, plan, branch, build and save
+   * spans.
+   *
+   * @return true to trace collection cycles.
+   */
+  public boolean isTraceEnabled() {
+    return traceEnabled;
+  }
+
+  public void setTraceEnabled(boolean traceEnabled) {
+    this.traceEnabled = traceEnabled;
+  }
+
+  /**
+   * File the trace of the last cycle is written to. The trace is still served at /trace when
+   * no file is set.
+   *
+   * @return the path of the trace file, or null.
+   */
+  public String getTraceFile() {
+    return traceFile;
+  }
+
+  public void setTraceFile(String traceFile) {
+    this.traceFile = traceFile;
+  }
+
+  /**
+   * Number of the slowest plans and requests listed in the summary of a trace.
+   *
+   * @return the number of plans and requests listed.
+   */
+  public int getTraceTopN() {
+    return traceTopN;
+  }
+
+  public void setTraceTopN(int traceTopN) {
+    this.traceTopN = traceTopN;
+  }
+
+  /**
+   * Either record, to keep every response of Bamboo in the fixture directory, or replay, to
+   * serve the recorded responses instead of requesting Bamboo. Unset for neither.
+   *
+   * @return the fixture mode, or null.
+   */
+  public String getFixtureMode() {
+    return fixtureMode;
+  }
+
+  public void setFixtureMode(String fixtureMode) {
+    this.fixtureMode = fixtureMode;
+  }
+
+  public String getFixtureDirectory() {
+    return fixtureDirectory;
+  }
+
+  public void setFixtureDirectory(String fixtureDirectory) {
+    this.fixtureDirectory = fixtureDirectory;
+  }
+
+  /**
+   * Factor applied to the recorded latency of a response before it is replayed: 1 for the
+   * original latency, 0 to replay without waiting.
+   *
+   * @return the latency factor.
+   */
+  public double getFixtureLatencyScale() {
+    return fixtureLatencyScale;
+  }
+
+  public void setFixtureLatencyScale(double fixtureLatencyScale) {
+    this.fixtureLatencyScale = fixtureLatencyScale;
+  }
+
+  /**
+   * Longest time a server or job may go without a successful poll, or a job may have builds
+   * that are not stored, before the collection is reported as degraded. 0 to never degrade.
+   *
+   * @return the freshness SLO in milliseconds.
+   */
+  public long getFreshnessSlo() {
+    return freshnessSlo;
+  }
+
+  public void setFreshnessSlo(long freshnessSlo) {
+    this.freshnessSlo = freshnessSlo;
+  }
+
+  /**
+   * File the cached plans and branches and the quarantined plans are kept in between
+   * restarts. Unset to start from scratch every time.
+   *
+   * @return the path of the state snapshot, or null.
+   */
+  public String getSnapshotFile() {
+    return snapshotFile;
+  }
+
+  public void setSnapshotFile(String snapshotFile) {
+    this.snapshotFile = snapshotFile;
+  }
+
+  /**
+   * How often the dashboards are polled for the jobs added to or removed from them, which are
+   * then enabled or disabled right away. When 0, every job is checked against every dashboard
+   * at the start of each collection instead.
+   *
+   * @return the interval in milliseconds, or 0.
+   */
+  public long getEnablementRefreshInterval() {
+    return enablementRefreshInterval;
+  }
+
+  public void setEnablementRefreshInterval(long enablementRefreshInterval) {
+    this.enablementRefreshInterval = enablementRefreshInterval;
+  }
+
+  /**
+   * How often every job is checked against the dashboards when they are polled, at the start
+   * of a collection.
+   *
+   * @return the interval in milliseconds.
+   */
+  public long getEnablementReconcileInterval() {
+    return enablementReconcileInterval;
+  }
+
+  public void setEnablementReconcileInterval(long enablementReconcileInterval) {
+    this.enablementReconcileInterval = enablementReconcileInterval;
+  }
+
+  /**
+   * Number of collections in a row a job can be missing from its server before it is deleted.
+   * When both this and the grace period are 0, a missing job is deleted right away.
+   *
+   * @return the number of collections, or 0 to rely on the grace period only.
+   */
+  public int getDeleteGraceCycles() {
+    return deleteGraceCycles;
+  }
+
+  public void setDeleteGraceCycles(int deleteGraceCycles) {
+    this.deleteGraceCycles = deleteGraceCycles;
+  }
+
+  /**
+   * How long a job can be missing from its server before it is deleted, whichever comes first
+   * of this and the grace cycles.
+   *
+   * @return the period in milliseconds, or 0 to rely on the grace cycles only.
+   */
+  public long getDeleteGracePeriod() {
+    return deleteGracePeriod;
+  }
+
+  public void setDeleteGracePeriod(long deleteGracePeriod) {
+    this.deleteGracePeriod = deleteGracePeriod;
+  }
+
+  /**
+   * Whether the indexes of the jobs and builds queried on every collection are created at
+   * startup when missing.
+   *
+   * @return true to create missing indexes.
+   */
+  public boolean isEnsureIndexes() {
+    return ensureIndexes;
+  }
+
+  public void setEnsureIndexes(boolean ensureIndexes) {
+    this.ensureIndexes = ensureIndexes;
+  }
+
+  /**
+   * What to do at startup about a query answered by a collection scan: log it ("log"), or stop
+   * the collector ("fail"). Unset to not explain the queries.
+   *
+   * @return log, fail or null.
+   */
+  public String getQueryPlanCheck() {
+    return queryPlanCheck;
+  }
+
+  public void setQueryPlanCheck(String queryPlanCheck) {
+    this.queryPlanCheck = queryPlanCheck;
+  }
+
+  /**
+   * Whether commits are stored once in their own collection, keyed by repository and revision,
+   * with builds keeping only the url, revision, author, time and number of changes of their
+   * commits.
+   *
+   * @return true to store commits apart from builds.
+   */
+  public boolean isCommitStore() {
+    return commitStore;
+  }
+
+  public void setCommitStore(boolean commitStore) {
+    this.commitStore = commitStore;
+  }
+
+  /**
+   * File the captured responses of Bamboo are written to, compressed. Unset to capture none.
+   *
+   * @return the path of the capture file, or null.
+   */
+  public String getCaptureFile() {
+    return captureFile;
+  }
+
+  public void setCaptureFile(String captureFile) {
+    this.captureFile = captureFile;
+  }
+
+  /**
+   * Servers whose every response is captured.
+   *
+   * @return the URLs of the servers, as configured in the servers.
+   */
+  public List<String> getCaptureServers() {
+    return captureServers;
+  }
+
+  public void setCaptureServers(List<String> captureServers) {
+    this.captureServers = captureServers;
+  }
+
+  /**
+   * Plans whose responses are captured, along with those of their branches.
+   *
+   * @return the keys of the plans.
+   */
+  public List<String> getCapturePlans() {
+    return capturePlans;
+  }
+
+  public void setCapturePlans(List<String> capturePlans) {
+    this.capturePlans = capturePlans;
+  }
+
+  /**
+   * Share of the other responses captured at random.
+   *
+   * @return the percentage of responses, 0 for none.
+   */
+  public double getCaptureSamplePercent() {
+    return captureSamplePercent;
+  }
+
+  public void setCaptureSamplePercent(double captureSamplePercent) {
+    this.captureSamplePercent = captureSamplePercent;
+  }
+
+  /**
+   * Number of uncompressed bytes written to the capture file before it is rotated.
+   *
+   * @return the size in bytes.
+   */
+  public long getCaptureMaxBytes() {
+    return captureMaxBytes;
+  }
+
+  public void setCaptureMaxBytes(long captureMaxBytes) {
+    this.captureMaxBytes = captureMaxBytes;
+  }
+
+  /**
+   * Number of rotated capture files kept next to the current one.
+   *
+   * @return the number of files.
+   */
+  public int getCaptureFileCount() {
+    return captureFileCount;
+  }
+
+  public void setCaptureFileCount(int captureFileCount) {
+    this.captureFileCount = captureFileCount;
+  }
+
   public List<String> getServers() {
     return servers;
   }
@@ -0,0 +1,335 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.capitalone.dashboard.collector;
+
+import com.google.common.util.concurrent.RateLimiter;
+
+import com.capitalone.dashboard.model.BambooBackfill;
+import com.capitalone.dashboard.model.BambooFailedBuild;
+import com.capitalone.dashboard.model.BambooJob;
+import com.capitalone.dashboard.model.Build;
+import com.capitalone.dashboard.model.BuildStatus;
+import com.capitalone.dashboard.repository.BambooBackfillRepository;
+import com.capitalone.dashboard.repository.BambooFailedBuildRepository;
+import com.capitalone.dashboard.repository.BambooJobRepository;
+import com.capitalone.dashboard.repository.BuildRepository;
+import com.capitalone.dashboard.util.Supplier;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.InitializingBean;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+import org.springframework.web.client.RestClientException;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Collects the whole history of jobs, oldest build first, apart from the collection cycle.
+ * Backfilling runs on its own thread at a capped rate of requests, retries included, a page of
+ * results per job at a time, and saves builds under the lock of their job like the collection
+ * cycle does. Its cursors are stored so that it resumes where it stopped after a restart.
+ * Builds whose details cannot be fetched are tracked as failed builds, retried after a growing
+ * wait like those of the collection cycle, and the backfill of a job only finishes once none
+ * is left but quarantined ones. Only the results of the plan of a job are walked, not those of
+ * its branches.
+ */
+@Component
+public class BuildBackfill implements InitializingBean, DisposableBean {
+  private static final Logger LOG = LoggerFactory.getLogger(BuildBackfill.class);
+
+  private final BambooClient bambooClient;
+  private final BambooSettings settings;
+  private final BambooBackfillRepository bambooBackfillRepository;
+  private final BambooFailedBuildRepository bambooFailedBuildRepository;
+  private final BambooJobRepository bambooJobRepository;
+  private final BuildRepository buildRepository;
+  private final ClusterCoordinator clusterCoordinator;
+  private final JobLocks jobLocks;
+  private RateLimiter rateLimiter;
+  private ScheduledExecutorService executor;
+
+  /**
+   * Autowired constructor for spring dependency-injection.
+   *
+   * @param bambooClient             autowired.
+   * @param settings                 autowired.
+   * @param bambooBackfillRepository    autowired.
+   * @param bambooFailedBuildRepository autowired.
+   * @param bambooJobRepository         autowired.
+   * @param buildRepository             autowired.
+   * @param clusterCoordinator          autowired.
+   * @param jobLocks                    autowired.
+   */
+  @Autowired
+  public BuildBackfill(BambooClient bambooClient, BambooSettings settings,
+                       BambooBackfillRepository bambooBackfillRepository,
+                       BambooFailedBuildRepository bambooFailedBuildRepository,
+                       BambooJobRepository bambooJobRepository, BuildRepository buildRepository,
+                       ClusterCoordinator clusterCoordinator, JobLocks jobLocks) {
+    this.bambooClient = bambooClient;
+    this.settings = settings;
+    this.bambooBackfillRepository = bambooBackfillRepository;
+    this.bambooFailedBuildRepository = bambooFailedBuildRepository;
+    this.bambooJobRepository = bambooJobRepository;
+    this.buildRepository = buildRepository;
+    this.clusterCoordinator = clusterCoordinator;
+    this.jobLocks = jobLocks;
+  }
+
+  @Override
+  public synchronized void afterPropertiesSet() {
+    if (settings.getBackfillRequestsPerSecond() <= 0) {
+      return;
+    }
+    rateLimiter = RateLimiter.create(settings.getBackfillRequestsPerSecond());
+    long interval = Math.max(1000, settings.getBackfillInterval());
+    executor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+      Thread thread = new Thread(runnable, "bamboo-backfill");
+      thread.setDaemon(true);
+      return thread;
+    });
+    executor.scheduleWithFixedDelay(this::run, interval, interval, TimeUnit.MILLISECONDS);
+  }
+
+  @Override
+  public synchronized void destroy() {
+    if (executor != null) {
+      executor.shutdownNow();
+    }
+  }
+
+  /**
+   * Starts backfilling a job, unless it is being backfilled already.
+   *
+   * @param job the {@link BambooJob} to backfill.
+   * @return the cursor of the backfill.
+   */
+  public BambooBackfill start(BambooJob job) {
+    BambooBackfill backfill = bambooBackfillRepository.findByCollectorItemId(job.getId());
+    if (backfill == null) {
+      backfill = new BambooBackfill();
+      backfill.setCollectorItemId(job.getId());
+      backfill.setRequestedAt(System.currentTimeMillis());
+      backfill = bambooBackfillRepository.save(backfill);
+      LOG.info("Backfill of " + job.getJobName() + " on " + job.getInstanceUrl() + " started");
+    }
+    return backfill;
+  }
+
+  /**
+   * Walks a page of every job being backfilled.
+   */
+  void run() {
+    try {
+      for (BambooBackfill backfill : bambooBackfillRepository.findAll()) {
+        step(backfill);
+      }
+    } catch (RuntimeException re) {
+      // keep the schedule going, the cursors are where the last page left them
+      LOG.error("Backfill failed", re);
+    }
+  }
+
+  /**
+   * Stores the builds of the next page of a job being backfilled, and moves its cursor past
+   * them. The cursor stops at a running build, so that it is stored once finished. Failed
+   * builds the cursor has passed are retried first once they are due.
+   *
+   * @param backfill the cursor of the job.
+   * @return the number of builds stored.
+   */
+  int step(BambooBackfill backfill) {
+    BambooJob job = bambooJobRepository.findOne(backfill.getCollectorItemId());
+    if (job == null) {
+      bambooBackfillRepository.delete(backfill);
+      return 0;
+    }
+    if (clusterCoordinator.isClustered() && !clusterCoordinator.owns(job)) {
+      return 0;
+    }
+    Map<String, BambooFailedBuild> failedBuilds = new HashMap<>();
+    for (BambooFailedBuild failed : bambooFailedBuildRepository
+        .findByCollectorItemId(job.getId())) {
+      failedBuilds.put(failed.getNumber(), failed);
+    }
+    int count = 0;
+    try {
+      count += retryFailedBuilds(job, backfill, failedBuilds);
+      int pageSize = Math.max(1, settings.getBackfillPageSize());
+      List<Build> page = limited(() -> bambooClient.getOldestBuilds(job.getInstanceUrl(),
+          job.getJobName(), backfill.getBuildNumber(), pageSize));
+      if (page == null) {
+        page = Collections.emptyList();
+      } else if (page.isEmpty() && !isRetrying(backfill, failedBuilds)) {
+        LOG.info("Backfill of " + job.getJobName() + " on " + job.getInstanceUrl()
+            + " finished with " + (backfill.getBuilds() + count) + " builds");
+        bambooBackfillRepository.delete(backfill);
+        return count;
+      }
+      for (Build buildSummary : page) {
+        if (isNewBuild(job, buildSummary)) {
+          Build build = limited(() -> bambooClient.getBuildDetails(buildSummary.getBuildUrl(),
+              job.getInstanceUrl()));
+          if (build != null && BuildStatus.InProgress.equals(build.getBuildStatus())) {
+            break;
+          }
+          if (build == null) {
+            trackFailedBuild(job, buildSummary, failedBuilds);
+          } else if (save(job, buildSummary, build)) {
+            count++;
+          }
+        }
+        backfill.setBuildNumber(Long.parseLong(buildSummary.getNumber()));
+      }
+    } catch (RestClientException rce) {
+      LOG.warn("Backfill of " + job.getJobName() + " interrupted: " + rce.getMessage());
+    }
+    backfill.setBuilds(backfill.getBuilds() + count);
+    bambooBackfillRepository.save(backfill);
+    return count;
+  }
+
+  /**
+   * Requests the details of the failed builds the cursor has passed again, once they are due.
+   *
+   * @param job          the {@link BambooJob} being backfilled.
+   * @param backfill     the cursor of the job.
+   * @param failedBuilds the failing builds of the job, keyed by build number.
+   * @return the number of builds stored.
+   */
+  private int retryFailedBuilds(BambooJob job, BambooBackfill backfill,
+                                Map<String, BambooFailedBuild> failedBuilds) {
+    int count = 0;
+    long now = System.currentTimeMillis();
+    Iterator<BambooFailedBuild> failures = failedBuilds.values().iterator();
+    while (failures.hasNext()) {
+      BambooFailedBuild failed = failures.next();
+      if (!isPassed(failed, backfill) || failed.isQuarantined() || !failed.isDue(now)) {
+        continue;
+      }
+      Build buildSummary = new Build();
+      buildSummary.setNumber(failed.getNumber());
+      buildSummary.setBuildUrl(failed.getBuildUrl());
+      if (isNewBuild(job, buildSummary)) {
+        Build build = limited(() -> bambooClient.getBuildDetails(failed.getBuildUrl(),
+            job.getInstanceUrl()));
+        if (build == null) {
+          trackFailedBuild(job, buildSummary, failedBuilds);
+          continue;
+        }
+        if (BuildStatus.InProgress.equals(build.getBuildStatus())) {
+          continue;
+        }
+        if (save(job, buildSummary, build)) {
+          count++;
+        }
+      }
+      bambooFailedBuildRepository.delete(failed);
+      failures.remove();
+    }
+    return count;
+  }
+
+  /**
+   * Checks whether failed builds the cursor has passed are still to be retried.
+   *
+   * @param backfill     the cursor of the job.
+   * @param failedBuilds the failing builds of the job, keyed by build number.
+   * @return true if any of them is not quarantined.
+   */
+  private boolean isRetrying(BambooBackfill backfill,
+                             Map<String, BambooFailedBuild> failedBuilds) {
+    for (BambooFailedBuild failed : failedBuilds.values()) {
+      if (isPassed(failed, backfill) && !failed.isQuarantined()) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  private boolean isPassed(BambooFailedBuild failed, BambooBackfill backfill) {
+    return Long.parseLong(failed.getNumber()) <= backfill.getBuildNumber();
+  }
+
+  private void trackFailedBuild(BambooJob job, Build buildSummary,
+                                Map<String, BambooFailedBuild> failedBuilds) {
+    BambooFailedBuild failedBuild = failedBuilds.get(buildSummary.getNumber());
+    if (failedBuild == null) {
+      failedBuild = new BambooFailedBuild();
+      failedBuild.setCollectorItemId(job.getId());
+      failedBuild.setNumber(buildSummary.getNumber());
+      failedBuild.setBuildUrl(buildSummary.getBuildUrl());
+      failedBuilds.put(failedBuild.getNumber(), failedBuild);
+    }
+    failedBuild.recordFailure(System.currentTimeMillis(),
+        settings.getFailedBuildMinRetryInterval(), settings.getFailedBuildMaxRetryInterval(),
+        settings.getFailedBuildQuarantineThreshold());
+    if (failedBuild.isQuarantined()) {
+      LOG.warn("Quarantined build " + failedBuild.getBuildUrl() + " after "
+          + failedBuild.getFailures() + " failures");
+    } else {
+      LOG.warn("Backfill will retry build " + failedBuild.getBuildUrl());
+    }
+    bambooFailedBuildRepository.save(failedBuild);
+  }
+
+  /**
+   * Makes the requests of a call at the capped rate, taking a permit for every request the
+   * client makes, the retries and the listing of a page included.
+   *
+   * @param call the call to the {@link BambooClient}.
+   * @param <T>  the type of the result of the call.
+   * @return the result of the call.
+   */
+  private <T> T limited(Supplier<T> call) {
+    return rateLimiter == null ? call.get() : bambooClient.withRateLimiter(rateLimiter, call);
+  }
+
+  /**
+   * Stores a build under the lock of its job, unless the collection cycle or the notification
+   * queue stored it meanwhile.
+   *
+   * @param job          the {@link BambooJob} of the build.
+   * @param buildSummary the {@link Build} listed for the job.
+   * @param build        the details of the build.
+   * @return true if the build was stored.
+   */
+  private boolean save(BambooJob job, Build buildSummary, Build build) {
+    synchronized (jobLocks.get(job)) {
+      if (!isNewBuild(job, buildSummary)) {
+        return false;
+      }
+      build.setCollectorItemId(job.getId());
+      buildRepository.save(build);
+      return true;
+    }
+  }
+
+  private boolean isNewBuild(BambooJob job, Build build) {
+    return buildRepository.findByCollectorItemIdAndNumber(job.getId(),
+        build.getNumber()) == null;
+  }
+}
@@ -0,0 +1,47 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.capitalone.dashboard.collector;
+
+/**
+ * How much of a build result is expanded when its details are requested.
+ */
+public enum BuildDetailsExpansion {
+  /**
+   * The result only, without change sets.
+   */
+  MINIMAL(""),
+  /**
+   * The result and its changes. The number of files of a change is taken from the size of the
+   * collapsed file list.
+   */
+  STANDARD("?expand=changes.change"),
+  /**
+   * The result with its artifacts, and its changes with every changed file.
+   */
+  FULL("?expand=results.result.artifacts&expand=changes.change.files");
+
+  private final String urlSuffix;
+
+  BuildDetailsExpansion(String urlSuffix) {
+    this.urlSuffix = urlSuffix;
+  }
+
+  public String getUrlSuffix() {
+    return urlSuffix;
+  }
+}
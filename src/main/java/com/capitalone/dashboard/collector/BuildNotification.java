@@ -0,0 +1,98 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.capitalone.dashboard.collector;
+
+import org.apache.commons.lang3.StringUtils;
+
+/**
+ * A notification from Bamboo that a build has completed. Bamboo's notification templates can
+ * post the plan or branch key and the build number, and the server when several are collected.
+ */
+public class BuildNotification {
+  private String instanceUrl;
+  private String planKey;
+  private String buildNumber;
+
+  public BuildNotification() {
+  }
+
+  /**
+   * Creates a notification.
+   *
+   * @param instanceUrl the URL of the Bamboo instance, may be null.
+   * @param planKey     the key of the plan or branch.
+   * @param buildNumber the number of the build.
+   */
+  public BuildNotification(String instanceUrl, String planKey, String buildNumber) {
+    this.instanceUrl = instanceUrl;
+    this.planKey = planKey;
+    this.buildNumber = buildNumber;
+  }
+
+  /**
+   * The URL of the Bamboo instance, or null if the build is looked up on every server.
+   *
+   * @return the URL of the Bamboo instance.
+   */
+  public String getInstanceUrl() {
+    return instanceUrl;
+  }
+
+  public void setInstanceUrl(String instanceUrl) {
+    this.instanceUrl = instanceUrl;
+  }
+
+  public String getPlanKey() {
+    return planKey;
+  }
+
+  public void setPlanKey(String planKey) {
+    this.planKey = planKey;
+  }
+
+  public String getBuildNumber() {
+    return buildNumber;
+  }
+
+  public void setBuildNumber(String buildNumber) {
+    this.buildNumber = buildNumber;
+  }
+
+  /**
+   * Checks that the plan key and a numeric build number are set.
+   *
+   * @return true if the notification names a build.
+   */
+  public boolean isValid() {
+    return StringUtils.isNotBlank(planKey) && StringUtils.isNumeric(buildNumber);
+  }
+
+  /**
+   * Identifies the build the notification is about, for de-duplication.
+   *
+   * @return the key of the build.
+   */
+  public String getKey() {
+    return StringUtils.defaultString(instanceUrl) + "|" + planKey + "-" + buildNumber;
+  }
+
+  @Override
+  public String toString() {
+    return getKey();
+  }
+}
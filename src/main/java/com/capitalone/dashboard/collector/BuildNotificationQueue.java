@@ -0,0 +1,235 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.capitalone.dashboard.collector;
+
+import com.capitalone.dashboard.model.BambooCollector;
+import com.capitalone.dashboard.model.BambooJob;
+import com.capitalone.dashboard.model.BambooPendingBuild;
+import com.capitalone.dashboard.model.Build;
+import com.capitalone.dashboard.model.BuildStatus;
+import com.capitalone.dashboard.repository.BambooCollectorRepository;
+import com.capitalone.dashboard.repository.BambooJobRepository;
+import com.capitalone.dashboard.repository.BambooPendingBuildRepository;
+import com.capitalone.dashboard.repository.BuildRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+import org.springframework.web.client.RestClientException;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Collects single builds as Bamboo notifies that they completed, so that they show up without
+ * waiting for the next collection. Notifications wait in a bounded queue, and a notification
+ * for a build that is already waiting is dropped. Anything missed here is still picked up by
+ * the scheduled collection. A build is stored under the lock of its job, like the collection
+ * cycle and the backfill do, and the average build duration and the pending build of the job
+ * are kept up to date as the cycle would.
+ */
+@Component
+public class BuildNotificationQueue implements DisposableBean {
+  private static final Logger LOG = LoggerFactory.getLogger(BuildNotificationQueue.class);
+
+  private final BambooClient bambooClient;
+  private final BambooSettings settings;
+  private final BambooCollectorRepository bambooCollectorRepository;
+  private final BambooJobRepository bambooJobRepository;
+  private final BuildRepository buildRepository;
+  private final BambooPendingBuildRepository bambooPendingBuildRepository;
+  private final JobLocks jobLocks;
+  private final Set<String> queued = Collections.newSetFromMap(new ConcurrentHashMap<>());
+  private ThreadPoolExecutor executor;
+
+  /**
+   * Autowired constructor for spring dependency-injection.
+   *
+   * @param bambooClient              autowired.
+   * @param settings                  autowired.
+   * @param bambooCollectorRepository autowired.
+   * @param bambooJobRepository       autowired.
+   * @param buildRepository           autowired.
+   * @param bambooPendingBuildRepository autowired.
+   * @param jobLocks                     autowired.
+   */
+  @Autowired
+  public BuildNotificationQueue(BambooClient bambooClient, BambooSettings settings,
+                                BambooCollectorRepository bambooCollectorRepository,
+                                BambooJobRepository bambooJobRepository,
+                                BuildRepository buildRepository,
+                                BambooPendingBuildRepository bambooPendingBuildRepository,
+                                JobLocks jobLocks) {
+    this.bambooClient = bambooClient;
+    this.settings = settings;
+    this.bambooCollectorRepository = bambooCollectorRepository;
+    this.bambooJobRepository = bambooJobRepository;
+    this.buildRepository = buildRepository;
+    this.bambooPendingBuildRepository = bambooPendingBuildRepository;
+    this.jobLocks = jobLocks;
+  }
+
+  /**
+   * Queues a build to be collected.
+   *
+   * @param notification the {@link BuildNotification} of the build.
+   * @return false if notifications are turned off or the queue is full.
+   */
+  public boolean offer(BuildNotification notification) {
+    ThreadPoolExecutor worker = getExecutor();
+    if (worker == null) {
+      return false;
+    }
+    String key = notification.getKey();
+    if (!queued.add(key)) {
+      LOG.debug("Build already queued: " + key);
+      return true;
+    }
+    try {
+      worker.execute(() -> {
+        queued.remove(key);
+        process(notification);
+      });
+      return true;
+    } catch (RejectedExecutionException ree) {
+      queued.remove(key);
+      LOG.warn("Notification queue full, dropped: " + key);
+      return false;
+    }
+  }
+
+  /**
+   * Number of notifications waiting to be collected.
+   *
+   * @return the size of the queue.
+   */
+  public int size() {
+    return queued.size();
+  }
+
+  /**
+   * Fetches and stores the details of a notified build, unless it is unknown, not enabled,
+   * already stored or still running.
+   *
+   * @param notification the {@link BuildNotification} of the build.
+   * @return true if the build was stored.
+   */
+  boolean process(BuildNotification notification) {
+    try {
+      BambooJob job = findJob(notification);
+      if (job == null || !job.isEnabled()) {
+        LOG.debug("No enabled job for notified build " + notification);
+        return false;
+      }
+      String number = notification.getBuildNumber();
+      if (buildRepository.findByCollectorItemIdAndNumber(job.getId(), number) != null) {
+        return false;
+      }
+      String buildUrl = bambooClient.getBuildUrl(job.getInstanceUrl(),
+          notification.getPlanKey(), number);
+      Build build = bambooClient.getBuildDetails(buildUrl, job.getInstanceUrl());
+      // running or failing builds are left to the scheduled collection, which tracks them
+      if (build == null || BuildStatus.InProgress.equals(build.getBuildStatus())) {
+        return false;
+      }
+      synchronized (jobLocks.get(job)) {
+        // the scheduled collection or the backfill may have stored it meanwhile
+        if (buildRepository.findByCollectorItemIdAndNumber(job.getId(), number) != null) {
+          return false;
+        }
+        build.setCollectorItemId(job.getId());
+        buildRepository.save(build);
+      }
+      job.addBuildDuration(build.getDuration());
+      bambooJobRepository.save(job);
+      // a build the collection saw running is not listed again once stored
+      for (BambooPendingBuild pending : bambooPendingBuildRepository
+          .findByCollectorItemId(job.getId())) {
+        if (number.equals(pending.getNumber())) {
+          bambooPendingBuildRepository.delete(pending);
+        }
+      }
+      LOG.info("Collected notified build " + buildUrl);
+      return true;
+    } catch (RestClientException rce) {
+      LOG.warn("Failed to collect notified build " + notification, rce);
+      return false;
+    }
+  }
+
+  /**
+   * Finds the job of a notified build. A branch build belongs to the job of its plan, whose
+   * key is the branch key without the trailing branch number.
+   *
+   * @param notification the {@link BuildNotification} of the build.
+   * @return the {@link BambooJob}, or null if there is none.
+   */
+  private BambooJob findJob(BuildNotification notification) {
+    BambooCollector collector = bambooCollectorRepository.findByName("Bamboo");
+    if (collector == null) {
+      return null;
+    }
+    List<String> servers = new ArrayList<>();
+    if (notification.getInstanceUrl() != null) {
+      servers.add(notification.getInstanceUrl());
+    } else if (settings.getServers() != null) {
+      servers.addAll(settings.getServers());
+    }
+    String planKey = notification.getPlanKey();
+    String masterPlanKey = planKey.replaceFirst("\\d+$", "");
+    for (String server : servers) {
+      BambooJob job = bambooJobRepository.findJob(collector.getId(), server, planKey);
+      if (job == null && !masterPlanKey.equals(planKey)) {
+        job = bambooJobRepository.findJob(collector.getId(), server, masterPlanKey);
+      }
+      if (job != null) {
+        return job;
+      }
+    }
+    return null;
+  }
+
+  private synchronized ThreadPoolExecutor getExecutor() {
+    if (executor == null && settings.getNotificationQueueCapacity() > 0) {
+      ThreadFactory threadFactory = runnable -> {
+        Thread thread = new Thread(runnable, "bamboo-notifications");
+        thread.setDaemon(true);
+        return thread;
+      };
+      executor = new ThreadPoolExecutor(1, 1, 0, TimeUnit.MILLISECONDS,
+          new ArrayBlockingQueue<>(settings.getNotificationQueueCapacity()), threadFactory);
+    }
+    return executor;
+  }
+
+  @Override
+  public synchronized void destroy() {
+    if (executor != null) {
+      executor.shutdownNow();
+    }
+  }
+}
@@ -0,0 +1,225 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.capitalone.dashboard.collector;
+
+import static org.springframework.data.mongodb.core.query.Criteria.where;
+import static org.springframework.data.mongodb.core.query.Query.query;
+
+import com.capitalone.dashboard.model.BambooCollectorLease;
+import com.capitalone.dashboard.model.BambooCollectorReplica;
+import com.capitalone.dashboard.model.BambooJob;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.data.mongodb.core.FindAndModifyOptions;
+import org.springframework.data.mongodb.core.MongoOperations;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.stereotype.Component;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.UUID;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Shares the Bamboo jobs between collector replicas. Jobs are split into shards by the hash of
+ * their plan key, and every replica leases its fair share of the shards in Mongo. Leases are
+ * renewed by a heartbeat and expire with their replica, and the shares are recomputed on every
+ * heartbeat, so shards move as replicas join or die. Every heartbeat also removes the replicas
+ * whose own heartbeat expired, as a replica that crashed never removes itself. The owner of
+ * shard 0 is the leader, which does the bookkeeping of jobs shared by all replicas.
+ */
+@Component
+public class ClusterCoordinator implements DisposableBean {
+  private static final Logger LOG = LoggerFactory.getLogger(ClusterCoordinator.class);
+
+  private final MongoOperations mongoOperations;
+  private final BambooSettings settings;
+  private final String replicaId;
+  private volatile Set<Integer> ownedShards = Collections.emptySet();
+  private ScheduledExecutorService heartbeat;
+
+  /**
+   * Autowired constructor for spring dependency-injection.
+   *
+   * @param mongoOperations autowired.
+   * @param settings        autowired.
+   */
+  @Autowired
+  public ClusterCoordinator(MongoOperations mongoOperations, BambooSettings settings) {
+    this.mongoOperations = mongoOperations;
+    this.settings = settings;
+    this.replicaId = ManagementFactory.getRuntimeMXBean().getName() + "/"
+        + UUID.randomUUID().toString().substring(0, 8);
+  }
+
+  public boolean isClustered() {
+    return settings.isClusterEnabled();
+  }
+
+  public String getReplicaId() {
+    return replicaId;
+  }
+
+  /**
+   * The leader does the job bookkeeping that must only happen once per cycle.
+   *
+   * @return true if this replica is the leader, or the collector is not clustered.
+   */
+  public boolean isLeader() {
+    return !isClustered() || ownedShards.contains(0);
+  }
+
+  /**
+   * Checks whether this replica collects the builds of a job.
+   *
+   * @param job the {@link BambooJob}.
+   * @return true if the shard of the job is leased to this replica.
+   */
+  public boolean owns(BambooJob job) {
+    return !isClustered() || ownedShards.contains(shardOf(job.getJobName()));
+  }
+
+  /**
+   * Keeps the jobs whose builds this replica collects.
+   *
+   * @param jobs the jobs to filter.
+   * @return the jobs whose shard is leased to this replica.
+   */
+  public List<BambooJob> owned(List<BambooJob> jobs) {
+    if (!isClustered()) {
+      return jobs;
+    }
+    List<BambooJob> owned = new ArrayList<>();
+    for (BambooJob job : jobs) {
+      if (owns(job)) {
+        owned.add(job);
+      }
+    }
+    return owned;
+  }
+
+  int shardOf(String planKey) {
+    return Math.floorMod(planKey.hashCode(), Math.max(1, settings.getClusterShards()));
+  }
+
+  /**
+   * Announces this replica, renews its leases, and releases or acquires shards until it holds
+   * its fair share of them.
+   */
+  public synchronized void rebalance() {
+    if (!isClustered()) {
+      return;
+    }
+    startHeartbeat();
+    long now = System.currentTimeMillis();
+    long expiresAt = now + settings.getClusterLeaseTtl();
+    int shards = Math.max(1, settings.getClusterShards());
+
+    mongoOperations.upsert(query(where("_id").is(replicaId)),
+        new Update().set("expiresAt", expiresAt), BambooCollectorReplica.class);
+    mongoOperations.remove(query(where("expiresAt").lt(now)), BambooCollectorReplica.class);
+
+    createLeases(shards);
+    mongoOperations.updateMulti(query(where("owner").is(replicaId).and("expiresAt").gt(now)),
+        new Update().set("expiresAt", expiresAt), BambooCollectorLease.class);
+    TreeSet<Integer> owned = new TreeSet<>();
+    for (BambooCollectorLease lease : mongoOperations.find(
+        query(where("owner").is(replicaId).and("expiresAt").gt(now)),
+        BambooCollectorLease.class)) {
+      owned.add(lease.getShard());
+    }
+
+    long replicas = Math.max(1,
+        mongoOperations.count(query(where("expiresAt").gt(now)), BambooCollectorReplica.class));
+    long fairShare = (shards + replicas - 1) / replicas;
+    // give away the highest shards first, so the leader keeps shard 0
+    while (owned.size() > fairShare) {
+      release(owned.pollLast());
+    }
+    for (int shard = 0; shard < shards && owned.size() < fairShare; shard++) {
+      if (!owned.contains(shard) && acquire(shard, now, expiresAt)) {
+        owned.add(shard);
+      }
+    }
+    ownedShards = Collections.unmodifiableSet(owned);
+    LOG.info("Replica " + replicaId + " of " + replicas + " owns shards " + owned);
+  }
+
+  private void createLeases(int shards) {
+    for (int shard = 0; shard < shards; shard++) {
+      try {
+        mongoOperations.upsert(query(where("_id").is(shard)),
+            new Update().setOnInsert("expiresAt", 0L), BambooCollectorLease.class);
+      } catch (DuplicateKeyException duplicateKeyException) {
+        // another replica created it at the same time
+        LOG.debug("Lease already created for shard " + shard);
+      }
+    }
+  }
+
+  private boolean acquire(int shard, long now, long expiresAt) {
+    Query free = query(where("_id").is(shard).orOperator(
+        where("owner").is(null), where("expiresAt").lt(now)));
+    BambooCollectorLease lease = mongoOperations.findAndModify(free,
+        new Update().set("owner", replicaId).set("expiresAt", expiresAt),
+        FindAndModifyOptions.options().returnNew(true), BambooCollectorLease.class);
+    return lease != null;
+  }
+
+  private void release(int shard) {
+    mongoOperations.updateFirst(query(where("_id").is(shard).and("owner").is(replicaId)),
+        new Update().unset("owner").set("expiresAt", 0L), BambooCollectorLease.class);
+  }
+
+  private void startHeartbeat() {
+    if (heartbeat != null) {
+      return;
+    }
+    long period = Math.max(1000, settings.getClusterLeaseTtl() / 3);
+    heartbeat = Executors.newSingleThreadScheduledExecutor();
+    heartbeat.scheduleAtFixedRate(() -> {
+      try {
+        rebalance();
+      } catch (RuntimeException exception) {
+        LOG.error("Unable to renew the leases of replica " + replicaId, exception);
+      }
+    }, period, period, TimeUnit.MILLISECONDS);
+  }
+
+  @Override
+  public synchronized void destroy() {
+    if (heartbeat == null) {
+      return;
+    }
+    heartbeat.shutdownNow();
+    mongoOperations.updateMulti(query(where("owner").is(replicaId)),
+        new Update().unset("owner").set("expiresAt", 0L), BambooCollectorLease.class);
+    mongoOperations.remove(query(where("_id").is(replicaId)), BambooCollectorReplica.class);
+    ownedShards = Collections.emptySet();
+  }
+}
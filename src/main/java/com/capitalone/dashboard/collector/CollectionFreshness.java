@@ -0,0 +1,246 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.capitalone.dashboard.collector;
+
+import com.capitalone.dashboard.model.BambooJob;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Collectors;
+
+/**
+ * Keeps track of how fresh the collected data is: when every server and every enabled job was
+ * last polled successfully, and how many builds listed by Bamboo for a job are not stored yet
+ * and since when. The collection is degraded once any of them is older than the freshness SLO.
+ */
+@Component
+public class CollectionFreshness {
+  private final BambooSettings settings;
+  private final long startedAt = System.currentTimeMillis();
+  private final Map<String, ServerFreshness> servers = new ConcurrentHashMap<>();
+  private final Map<String, JobFreshness> jobs = new ConcurrentHashMap<>();
+
+  /**
+   * Autowired constructor for spring dependency-injection.
+   *
+   * @param settings autowired.
+   */
+  @Autowired
+  public CollectionFreshness(BambooSettings settings) {
+    this.settings = settings;
+  }
+
+  /**
+   * Records a job whose builds were collected.
+   *
+   * @param job          the {@link BambooJob}.
+   * @param buildsBehind the number of builds listed for the job that are still not stored.
+   */
+  public void recordJobPolled(BambooJob job, int buildsBehind) {
+    JobFreshness freshness = jobs.computeIfAbsent(getKey(job), key -> new JobFreshness(job));
+    freshness.polled(System.currentTimeMillis(), buildsBehind);
+  }
+
+  /**
+   * Records a server whose jobs and builds were collected, and forgets the jobs of the server
+   * that are no longer collected.
+   *
+   * @param instanceUrl the URL of the Bamboo instance.
+   * @param polledJobs  the jobs of the server whose builds were collected.
+   */
+  public void recordServerPolled(String instanceUrl, Collection<BambooJob> polledJobs) {
+    servers.computeIfAbsent(instanceUrl, ServerFreshness::new)
+        .lastPolled = System.currentTimeMillis();
+    Set<String> polled = new HashSet<>();
+    for (BambooJob job : polledJobs) {
+      polled.add(getKey(job));
+    }
+    jobs.entrySet().removeIf(entry -> instanceUrl.equals(entry.getValue().instanceUrl)
+        && !polled.contains(entry.getKey()));
+  }
+
+  /**
+   * The servers collected from, including the ones not polled successfully yet.
+   *
+   * @return the freshness of every server.
+   */
+  public List<ServerFreshness> getServers() {
+    List<ServerFreshness> list = new ArrayList<>();
+    if (settings.getServers() != null) {
+      for (String instanceUrl : settings.getServers()) {
+        list.add(servers.computeIfAbsent(instanceUrl, ServerFreshness::new));
+      }
+    }
+    return list;
+  }
+
+  /**
+   * The jobs whose data is the most out of date.
+   *
+   * @param limit the largest number of jobs to return.
+   * @return the jobs, the longest behind first.
+   */
+  public List<JobFreshness> getStalestJobs(int limit) {
+    return jobs.values().stream()
+        .sorted(Comparator.comparingLong(JobFreshness::getLag)
+            .thenComparingLong(JobFreshness::getSincePolled).reversed())
+        .limit(limit)
+        .collect(Collectors.toList());
+  }
+
+  /**
+   * Number of jobs tracked.
+   *
+   * @return the number of jobs.
+   */
+  public int size() {
+    return jobs.size();
+  }
+
+  /**
+   * Describes every server and job that is older than the freshness SLO.
+   *
+   * @return the violations of the SLO, empty when the collection is fresh.
+   */
+  public List<String> getViolations() {
+    List<String> violations = new ArrayList<>();
+    long slo = settings.getFreshnessSlo();
+    if (slo <= 0) {
+      return violations;
+    }
+    for (ServerFreshness server : getServers()) {
+      if (server.getSincePolled() > slo) {
+        violations.add("Server " + server.getInstanceUrl() + " not polled for "
+            + server.getSincePolled() + "ms");
+      }
+    }
+    for (JobFreshness job : jobs.values()) {
+      if (job.getSincePolled() > slo) {
+        violations.add("Job " + job.getJobName() + " on " + job.getInstanceUrl()
+            + " not polled for " + job.getSincePolled() + "ms");
+      } else if (job.getLag() > slo) {
+        violations.add("Job " + job.getJobName() + " on " + job.getInstanceUrl() + " "
+            + job.getBuildsBehind() + " builds behind for " + job.getLag() + "ms");
+      }
+    }
+    return violations;
+  }
+
+  private static String getKey(BambooJob job) {
+    return job.getInstanceUrl() + "|" + job.getJobName();
+  }
+
+  /**
+   * When a server was last polled successfully.
+   */
+  public final class ServerFreshness {
+    private final String instanceUrl;
+    private volatile long lastPolled;
+
+    ServerFreshness(String instanceUrl) {
+      this.instanceUrl = instanceUrl;
+    }
+
+    public String getInstanceUrl() {
+      return instanceUrl;
+    }
+
+    public long getLastPolled() {
+      return lastPolled;
+    }
+
+    /**
+     * Time since the server was last polled successfully, or since the collector started if
+     * it never was.
+     *
+     * @return the time in milliseconds.
+     */
+    public long getSincePolled() {
+      return System.currentTimeMillis() - (lastPolled > 0 ? lastPolled : startedAt);
+    }
+  }
+
+  /**
+   * When a job was last polled, and how far its stored builds are behind Bamboo.
+   */
+  public static final class JobFreshness {
+    private final String jobName;
+    private final String instanceUrl;
+    private long lastPolled;
+    private int buildsBehind;
+    private long behindSince;
+
+    JobFreshness(BambooJob job) {
+      this.jobName = job.getJobName();
+      this.instanceUrl = job.getInstanceUrl();
+    }
+
+    synchronized void polled(long now, int behind) {
+      lastPolled = now;
+      if (behind == 0) {
+        behindSince = 0;
+      } else if (buildsBehind == 0) {
+        behindSince = now;
+      }
+      buildsBehind = behind;
+    }
+
+    public String getJobName() {
+      return jobName;
+    }
+
+    public String getInstanceUrl() {
+      return instanceUrl;
+    }
+
+    public synchronized long getLastPolled() {
+      return lastPolled;
+    }
+
+    public synchronized long getSincePolled() {
+      return System.currentTimeMillis() - lastPolled;
+    }
+
+    /**
+     * Number of builds Bamboo listed for the job on the last poll that are not stored yet,
+     * running builds included.
+     *
+     * @return the number of builds.
+     */
+    public synchronized int getBuildsBehind() {
+      return buildsBehind;
+    }
+
+    /**
+     * Time since the job has had builds that are not stored, 0 when it is up to date.
+     *
+     * @return the time in milliseconds.
+     */
+    public synchronized long getLag() {
+      return behindSince == 0 ? 0 : System.currentTimeMillis() - behindSince;
+    }
+  }
+}
@@ -0,0 +1,183 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.capitalone.dashboard.collector;
+
+import static org.springframework.data.mongodb.core.query.Criteria.where;
+import static org.springframework.data.mongodb.core.query.Query.query;
+
+import com.capitalone.dashboard.model.BambooCommit;
+import com.capitalone.dashboard.model.SCM;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.dao.DataAccessException;
+import org.springframework.data.mongodb.core.MongoOperations;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.stereotype.Component;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Shares the commits of the builds collected in a cycle. The same commits show up in the builds
+ * of a plan and of its branches, and every build parsed gets the one instance of each commit
+ * instead of a copy of its own. A commit is known by its repository, the commit url without the
+ * revision, and its revision, as the same revision can be in more than one repository. When
+ * commits are stored apart, every commit is also saved once to its own collection, keyed by
+ * repository and revision, and the builds keep only a reference to it: the url, revision, author,
+ * time and number of changes, without the message. The url stays the real commit url, so links
+ * from builds to commits keep working, and the key is found again from it with
+ * {@link #repository(SCM)}.
+ */
+@Component
+public class CommitStore {
+  private static final Logger LOG = LoggerFactory.getLogger(CommitStore.class);
+
+  private final MongoOperations mongoOperations;
+  private final BambooSettings settings;
+  private final Map<String, SCM> commits = new ConcurrentHashMap<>();
+  private final AtomicInteger references = new AtomicInteger();
+  private final AtomicLong sharedChars = new AtomicLong();
+  private final AtomicLong unembeddedChars = new AtomicLong();
+
+  /**
+   * Autowired constructor for spring dependency-injection.
+   *
+   * @param mongoOperations autowired.
+   * @param settings        autowired.
+   */
+  @Autowired
+  public CommitStore(MongoOperations mongoOperations, BambooSettings settings) {
+    this.mongoOperations = mongoOperations;
+    this.settings = settings;
+  }
+
+  /**
+   * Gives the instance of a commit to add to a build.
+   *
+   * @param scm the commit as parsed from the build.
+   * @return the instance shared by every build of the cycle with the same commit.
+   */
+  public SCM share(SCM scm) {
+    references.incrementAndGet();
+    String repository = repository(scm);
+    if (repository == null) {
+      return scm;
+    }
+    String key = key(repository, scm.getScmRevisionNumber());
+    SCM shared = commits.get(key);
+    if (shared == null) {
+      shared = settings.isCommitStore() ? store(key, repository, scm) : scm;
+      SCM previous = commits.putIfAbsent(key, shared);
+      if (previous != null) {
+        shared = previous;
+      }
+    }
+    if (shared != scm) {
+      sharedChars.addAndGet(length(scm.getScmCommitLog()) + length(scm.getScmUrl())
+          + length(scm.getScmAuthor()));
+    }
+    if (shared.getScmCommitLog() == null) {
+      unembeddedChars.addAndGet(length(scm.getScmCommitLog()));
+    }
+    return shared;
+  }
+
+  /**
+   * Saves a commit to the commit collection unless it is there already.
+   *
+   * @param key        the key of the commit.
+   * @param repository the repository of the commit.
+   * @param scm        the commit.
+   * @return the reference to the commit to embed in builds, or the commit itself when it
+   *     could not be saved.
+   */
+  private SCM store(String key, String repository, SCM scm) {
+    try {
+      mongoOperations.upsert(query(where("_id").is(key)), new Update()
+              .setOnInsert("repository", repository)
+              .setOnInsert("revision", scm.getScmRevisionNumber())
+              .setOnInsert("url", scm.getScmUrl())
+              .setOnInsert("author", scm.getScmAuthor())
+              .setOnInsert("commitLog", scm.getScmCommitLog())
+              .setOnInsert("commitTimestamp", scm.getScmCommitTimestamp())
+              .setOnInsert("numberOfChanges", scm.getNumberOfChanges()),
+          BambooCommit.class);
+    } catch (DataAccessException exception) {
+      LOG.warn("Unable to store commit " + key, exception);
+      return scm;
+    }
+    SCM reference = new SCM();
+    reference.setScmUrl(scm.getScmUrl());
+    reference.setScmRevisionNumber(scm.getScmRevisionNumber());
+    reference.setScmAuthor(scm.getScmAuthor());
+    reference.setScmCommitTimestamp(scm.getScmCommitTimestamp());
+    reference.setNumberOfChanges(scm.getNumberOfChanges());
+    return reference;
+  }
+
+  /**
+   * Logs how much was shared since the last cycle and forgets the commits of the cycle.
+   */
+  public void endCycle() {
+    int distinct = commits.size();
+    int total = references.getAndSet(0);
+    long shared = sharedChars.getAndSet(0);
+    long unembedded = unembeddedChars.getAndSet(0);
+    commits.clear();
+    if (total > 0) {
+      LOG.info("Commits: " + total + " in builds, " + distinct + " distinct, " + shared
+          + " characters shared in memory, " + unembedded + " characters kept out of builds");
+    }
+  }
+
+  /**
+   * Gives the repository of a commit: its url without the revision at the end.
+   *
+   * @param scm the commit.
+   * @return the repository, or null when the commit has no url or no revision.
+   */
+  static String repository(SCM scm) {
+    String url = scm.getScmUrl();
+    String revision = scm.getScmRevisionNumber();
+    if (url == null || url.isEmpty() || revision == null || revision.isEmpty()) {
+      return null;
+    }
+    String repository = url.endsWith(revision)
+        ? url.substring(0, url.length() - revision.length()) : url;
+    int end = repository.length();
+    while (end > 0 && repository.charAt(end - 1) == '/') {
+      end--;
+    }
+    return end == 0 ? url : repository.substring(0, end);
+  }
+
+  static String key(String repository, String revision) {
+    return repository + '#' + revision;
+  }
+
+  int size() {
+    return commits.size();
+  }
+
+  private static int length(String text) {
+    return text == null ? 0 : text.length();
+  }
+}
@@ -0,0 +1,284 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.capitalone.dashboard.collector;
+
+import org.apache.commons.lang3.StringUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Traces a collection cycle as a tree of spans, server, plan, branch, build and save, with
+ * their timings and the bytes received from Bamboo under them. After the cycle the tree and
+ * the slowest plans and requests are written to a file and kept for the trace endpoint.
+ *
+ * <p>A trace belongs to the thread running the cycle; spans entered on other threads are
+ * ignored. Entering a span closes the open span of the same kind and everything under it, so
+ * a loop only needs to enter a span for every item.
+ */
+@Component
+public class CycleTrace {
+  private static final Logger LOG = LoggerFactory.getLogger(CycleTrace.class);
+
+  private final BambooSettings settings;
+  private final ThreadLocal<Trace> current = new ThreadLocal<>();
+  private volatile String lastReport;
+
+  /**
+   * Autowired constructor for spring dependency-injection.
+   *
+   * @param settings autowired.
+   */
+  @Autowired
+  public CycleTrace(BambooSettings settings) {
+    this.settings = settings;
+  }
+
+  /**
+   * Starts tracing a cycle on the current thread, if tracing is enabled.
+   */
+  public void begin() {
+    if (settings.isTraceEnabled()) {
+      current.set(new Trace());
+    }
+  }
+
+  /**
+   * Finishes the trace of the current thread and reports it.
+   */
+  public void end() {
+    Trace trace = current.get();
+    if (trace == null) {
+      return;
+    }
+    current.remove();
+    trace.closeAll();
+    lastReport = report(trace);
+    if (StringUtils.isNotEmpty(settings.getTraceFile())) {
+      write(Paths.get(settings.getTraceFile()), lastReport);
+    }
+  }
+
+  /**
+   * Enters a span, after closing the open span of the same kind.
+   *
+   * @param kind the kind of span, such as server, plan or build.
+   * @param name the name of the span.
+   * @param plan the key of the plan the span belongs to, or null.
+   */
+  public void enter(String kind, String name, String plan) {
+    Trace trace = current.get();
+    if (trace != null) {
+      trace.close(kind);
+      Span span = new Span(kind, name, plan);
+      trace.stack.peek().children.add(span);
+      trace.stack.push(span);
+    }
+  }
+
+  /**
+   * Closes the open span of a kind and everything under it.
+   *
+   * @param kind the kind of span.
+   */
+  public void exit(String kind) {
+    Trace trace = current.get();
+    if (trace != null) {
+      trace.close(kind);
+    }
+  }
+
+  /**
+   * Records a request to Bamboo under the innermost open span.
+   *
+   * @param url   the url of the request.
+   * @param nanos the time the request took, in nanoseconds.
+   * @param bytes the size of the response.
+   */
+  public void recordRequest(String url, long nanos, long bytes) {
+    Trace trace = current.get();
+    if (trace != null) {
+      for (Span span : trace.stack) {
+        span.bytes += bytes;
+      }
+      trace.stack.peek().requests++;
+      trace.requests.add(new Request(url, nanos, bytes));
+    }
+  }
+
+  /**
+   * The report of the last cycle traced.
+   *
+   * @return the report, or null if no cycle was traced.
+   */
+  public String getLastReport() {
+    return lastReport;
+  }
+
+  private String report(Trace trace) {
+    StringBuilder report = new StringBuilder();
+    appendSpan(report, trace.root, 0);
+
+    Map<String, Long> plans = new HashMap<>();
+    addPlanTimes(trace.root, plans);
+    int topN = Math.max(1, settings.getTraceTopN());
+    report.append("slowest plans\n");
+    plans.entrySet().stream()
+        .sorted(Map.Entry.<String, Long>comparingByValue().reversed())
+        .limit(topN)
+        .forEach(plan -> report.append("  ").append(millis(plan.getValue())).append("ms ")
+            .append(plan.getKey()).append('\n'));
+
+    Map<String, long[]> categories = new HashMap<>();
+    for (Request request : trace.requests) {
+      long[] totals = categories.computeIfAbsent(
+          DefaultBambooClient.getUrlCategory(request.url), category -> new long[3]);
+      totals[0]++;
+      totals[1] += request.nanos;
+      totals[2] += request.bytes;
+    }
+    report.append("requests by endpoint\n");
+    categories.entrySet().stream()
+        .sorted(Comparator.comparingLong(category -> -category.getValue()[1]))
+        .forEach(category -> report.append("  ").append(category.getKey()).append(' ')
+            .append(category.getValue()[0]).append(" requests ")
+            .append(millis(category.getValue()[1])).append("ms ")
+            .append(category.getValue()[2]).append("B\n"));
+    report.append("slowest requests\n");
+    trace.requests.stream()
+        .sorted(Comparator.comparingLong(request -> -request.nanos))
+        .limit(topN)
+        .forEach(request -> report.append("  ").append(millis(request.nanos)).append("ms ")
+            .append(request.bytes).append("B ").append(request.url).append('\n'));
+    return report.toString();
+  }
+
+  private void appendSpan(StringBuilder report, Span span, int depth) {
+    report.append(StringUtils.repeat("  ", depth)).append(span.kind);
+    if (span.name != null) {
+      report.append(' ').append(span.name);
+    }
+    report.append(' ').append(millis(span.end - span.start)).append("ms ")
+        .append(span.bytes).append('B');
+    if (span.requests > 0) {
+      report.append(' ').append(span.requests).append(" requests");
+    }
+    report.append('\n');
+    for (Span child : span.children) {
+      appendSpan(report, child, depth + 1);
+    }
+  }
+
+  private void addPlanTimes(Span span, Map<String, Long> plans) {
+    if (span.plan != null) {
+      plans.merge(span.plan, span.end - span.start, Long::sum);
+      return;
+    }
+    for (Span child : span.children) {
+      addPlanTimes(child, plans);
+    }
+  }
+
+  private static long millis(long nanos) {
+    return TimeUnit.NANOSECONDS.toMillis(nanos);
+  }
+
+  private static void write(Path file, String report) {
+    try {
+      Path parent = file.toAbsolutePath().getParent();
+      Path temp = Files.createTempFile(parent, file.getFileName().toString(), ".tmp");
+      Files.write(temp, report.getBytes(StandardCharsets.UTF_8));
+      Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING);
+    } catch (IOException ioe) {
+      LOG.warn("Unable to write the cycle trace to " + file, ioe);
+    }
+  }
+
+  private static final class Trace {
+    private final Span root = new Span("cycle", null, null);
+    private final Deque<Span> stack = new ArrayDeque<>();
+    private final List<Request> requests = new ArrayList<>();
+
+    Trace() {
+      stack.push(root);
+    }
+
+    void close(String kind) {
+      boolean open = false;
+      for (Span span : stack) {
+        open |= span.kind.equals(kind);
+      }
+      while (open && stack.size() > 1) {
+        Span span = stack.pop();
+        span.end = System.nanoTime();
+        open = !span.kind.equals(kind);
+      }
+    }
+
+    void closeAll() {
+      while (!stack.isEmpty()) {
+        stack.pop().end = System.nanoTime();
+      }
+    }
+  }
+
+  private static final class Span {
+    private final String kind;
+    private final String name;
+    private final String plan;
+    private final long start = System.nanoTime();
+    private final List<Span> children = new ArrayList<>();
+    private long end;
+    private long bytes;
+    private int requests;
+
+    Span(String kind, String name, String plan) {
+      this.kind = kind;
+      this.name = name;
+      this.plan = plan;
+    }
+  }
+
+  private static final class Request {
+    private final String url;
+    private final long nanos;
+    private final long bytes;
+
+    Request(String url, long nanos, long bytes) {
+      this.url = url;
+      this.nanos = nanos;
+      this.bytes = bytes;
+    }
+  }
+}
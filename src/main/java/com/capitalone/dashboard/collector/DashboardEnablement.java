@@ -0,0 +1,181 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.capitalone.dashboard.collector;
+
+import static org.springframework.data.mongodb.core.query.Criteria.where;
+import static org.springframework.data.mongodb.core.query.Query.query;
+
+import com.capitalone.dashboard.model.BambooJob;
+import com.capitalone.dashboard.model.CollectorItem;
+import com.capitalone.dashboard.model.CollectorType;
+import org.bson.types.ObjectId;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.mongodb.core.MongoOperations;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.stereotype.Component;
+
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Keeps the enabled flag of the jobs in step with the dashboards between collections, so
+ * that a collection does not have to go through every component first. The build items of the
+ * collector on dashboards are polled in the background, reading only their ids, and only the
+ * jobs added to or removed from a dashboard since the last poll are updated. Every job is
+ * reconciled with the dashboards now and then as a safety net.
+ */
+@Component
+public class DashboardEnablement implements DisposableBean {
+  private static final Logger LOG = LoggerFactory.getLogger(DashboardEnablement.class);
+  private static final String BUILD_ITEMS = "collectorItems." + CollectorType.Build;
+
+  private final MongoOperations mongoOperations;
+  private final BambooSettings settings;
+  private volatile ObjectId collectorId;
+  private Set<ObjectId> onDashboards;
+  private long reconciledAt;
+  private ScheduledExecutorService poller;
+
+  /**
+   * Autowired constructor for spring dependency-injection.
+   *
+   * @param mongoOperations autowired.
+   * @param settings        autowired.
+   */
+  @Autowired
+  public DashboardEnablement(MongoOperations mongoOperations, BambooSettings settings) {
+    this.mongoOperations = mongoOperations;
+    this.settings = settings;
+  }
+
+  public boolean isEnabled() {
+    return settings.getEnablementRefreshInterval() > 0;
+  }
+
+  /**
+   * Brings the enabled flag of the jobs of a collector up to date before a collection,
+   * reconciling every job when it is due, and polls the dashboards from then on.
+   *
+   * @param collector the id of the collector.
+   * @param jobs      the jobs of the collector, whose flags are set in memory as well.
+   */
+  public synchronized void sync(ObjectId collector, Collection<BambooJob> jobs) {
+    collectorId = collector;
+    startPolling();
+    if (onDashboards == null || System.currentTimeMillis() - reconciledAt
+        >= settings.getEnablementReconcileInterval()) {
+      reconcile();
+    } else {
+      refresh();
+    }
+    for (BambooJob job : jobs) {
+      job.setEnabled(onDashboards.contains(job.getId()));
+    }
+  }
+
+  /**
+   * Enables the jobs added to a dashboard, and disables the ones removed from every dashboard,
+   * since the last poll.
+   */
+  synchronized void refresh() {
+    Set<ObjectId> current = findOnDashboards();
+    Set<ObjectId> added = new HashSet<>(current);
+    added.removeAll(onDashboards);
+    Set<ObjectId> removed = new HashSet<>(onDashboards);
+    removed.removeAll(current);
+    if (!added.isEmpty()) {
+      setEnabled(query(where("collectorId").is(collectorId).and("_id").in(added)), true);
+    }
+    if (!removed.isEmpty()) {
+      setEnabled(query(where("collectorId").is(collectorId).and("_id").in(removed)), false);
+    }
+    if (!added.isEmpty() || !removed.isEmpty()) {
+      LOG.info("Enabled " + added.size() + " and disabled " + removed.size() + " jobs");
+    }
+    onDashboards = current;
+  }
+
+  /**
+   * Sets the enabled flag of every job of the collector from the dashboards.
+   */
+  synchronized void reconcile() {
+    Set<ObjectId> current = findOnDashboards();
+    setEnabled(query(where("collectorId").is(collectorId).and("enabled").is(false)
+        .and("_id").in(current)), true);
+    setEnabled(query(where("collectorId").is(collectorId).and("enabled").is(true)
+        .and("_id").nin(current)), false);
+    onDashboards = current;
+    reconciledAt = System.currentTimeMillis();
+  }
+
+  private Set<ObjectId> findOnDashboards() {
+    Query onDashboard = query(where(BUILD_ITEMS + ".collectorId").is(collectorId));
+    onDashboard.fields().include(BUILD_ITEMS + "._id").include(BUILD_ITEMS + ".collectorId");
+    Set<ObjectId> ids = new HashSet<>();
+    for (com.capitalone.dashboard.model.Component component : mongoOperations.find(
+        onDashboard, com.capitalone.dashboard.model.Component.class)) {
+      List<CollectorItem> items = component.getCollectorItems() == null
+          ? null : component.getCollectorItems().get(CollectorType.Build);
+      if (items == null) {
+        continue;
+      }
+      for (CollectorItem item : items) {
+        if (collectorId.equals(item.getCollectorId())) {
+          ids.add(item.getId());
+        }
+      }
+    }
+    return ids;
+  }
+
+  private void setEnabled(Query jobs, boolean enabled) {
+    mongoOperations.updateMulti(jobs, new Update().set("enabled", enabled), BambooJob.class);
+  }
+
+  private void startPolling() {
+    if (poller != null) {
+      return;
+    }
+    long period = settings.getEnablementRefreshInterval();
+    poller = Executors.newSingleThreadScheduledExecutor();
+    poller.scheduleWithFixedDelay(() -> {
+      try {
+        refresh();
+      } catch (RuntimeException exception) {
+        LOG.error("Unable to refresh the enabled jobs", exception);
+      }
+    }, period, period, TimeUnit.MILLISECONDS);
+  }
+
+  @Override
+  public synchronized void destroy() {
+    if (poller != null) {
+      poller.shutdownNow();
+      poller = null;
+    }
+  }
+}
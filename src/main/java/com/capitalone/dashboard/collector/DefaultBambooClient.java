@@ -17,6 +17,9 @@
 
 package com.capitalone.dashboard.collector;
 
+import com.google.common.util.concurrent.RateLimiter;
+
+import com.capitalone.dashboard.collector.jfr.CollectorEvents;
 import com.capitalone.dashboard.model.BambooJob;
 import com.capitalone.dashboard.model.Build;
 import com.capitalone.dashboard.model.BuildStatus;
@@ -34,9 +37,12 @@ import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.http.HttpEntity;
 import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpMethod;
+import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.stereotype.Component;
 import org.springframework.util.CollectionUtils;
+import org.springframework.web.client.HttpStatusCodeException;
+import org.springframework.web.client.ResourceAccessException;
 import org.springframework.web.client.RestClientException;
 import org.springframework.web.client.RestOperations;
 
@@ -48,11 +54,18 @@ import java.net.URL;
 import java.net.URLDecoder;
 import java.nio.charset.StandardCharsets;
 import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Date;
+import java.util.HashMap;
 import java.util.LinkedHashMap;
 import java.util.LinkedHashSet;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 
 /**
@@ -65,51 +78,96 @@ public class DefaultBambooClient implements BambooClient {
 
   private final RestOperations rest;
   private final BambooSettings settings;
+  private final BambooMetadataCache metadataCache;
+  private final PlanQuarantine planQuarantine;
+  private final CycleTrace cycleTrace;
+  private final RestFixture restFixture;
+  private final CommitStore commitStore;
+  private final PayloadCapture payloadCapture;
+  private final ClusterCoordinator clusterCoordinator;
+  private final AtomicInteger retriesLeft = new AtomicInteger(Integer.MAX_VALUE);
+  private final ThreadLocal<RateLimiter> rateLimiter = new ThreadLocal<>();
 
   private static final String JOBS_URL_SUFFIX =
       "rest/api/latest/plan?expand=plans&max-result=2000";
   private static final String JOBS_RESULT_SUFFIX =
       "rest/api/latest/result/";
-  private static final String BUILD_DETAILS_URL_SUFFIX =
-      "?expand=results.result.artifacts&expand=changes.change.files";
+  private static final String PROJECT_URL_SUFFIX =
+      "rest/api/latest/project/";
+  private static final String PROJECT_PLANS_SUFFIX =
+      "?expand=plans&max-result=2000";
+  private static final String BRANCH_LATEST_RESULT_SUFFIX =
+      "?expand=branches.branch.latestResult";
+  private static final String LATEST_RESULTS_URL_SUFFIX =
+      "rest/api/latest/result";
+  private static final int LATEST_RESULTS_PAGE_SIZE = 1000;
 
   /**
    * Spring dependency-injection controller.
    *
    * @param restOperationsSupplier is Autowired.
    * @param settings               is Autowired.
+   * @param metadataCache          is Autowired.
+   * @param planQuarantine         is Autowired.
+   * @param cycleTrace             is Autowired.
+   * @param restFixture            is Autowired.
+   * @param commitStore            is Autowired.
+   * @param payloadCapture         is Autowired.
+   * @param clusterCoordinator     is Autowired.
    */
   @Autowired
   public DefaultBambooClient(
       Supplier<RestOperations> restOperationsSupplier,
-      BambooSettings settings) {
+      BambooSettings settings, BambooMetadataCache metadataCache,
+      PlanQuarantine planQuarantine, CycleTrace cycleTrace, RestFixture restFixture,
+      CommitStore commitStore, PayloadCapture payloadCapture,
+      ClusterCoordinator clusterCoordinator) {
     this.rest = restOperationsSupplier.get();
     this.settings = settings;
+    this.metadataCache = metadataCache;
+    this.planQuarantine = planQuarantine;
+    this.cycleTrace = cycleTrace;
+    this.restFixture = restFixture;
+    this.commitStore = commitStore;
+    this.payloadCapture = payloadCapture;
+    this.clusterCoordinator = clusterCoordinator;
   }
 
-  @SuppressWarnings("PMD.ExcessiveMethodLength")
   @Override
   public Map<BambooJob, Set<Build>> getInstanceJobs(String instanceUrl) {
+    return getInstanceJobs(instanceUrl, null);
+  }
+
+  @SuppressWarnings("PMD.ExcessiveMethodLength")
+  @Override
+  public Map<BambooJob, Set<Build>> getInstanceJobs(String instanceUrl,
+                                                     Collection<BambooJob> knownJobs) {
     Map<BambooJob, Set<Build>> result = new LinkedHashMap<>();
+    BambooDiscoveryScope scope = settings.getScope(instanceUrl);
+    long notBefore = settings.getBuildWindowDays() > 0
+        ? System.currentTimeMillis() - TimeUnit.DAYS.toMillis(settings.getBuildWindowDays()) : 0;
     try {
-      String url = joinUrl(instanceUrl, JOBS_URL_SUFFIX);
-      ResponseEntity<String> responseEntity = makeRestCall(url);
-      String returnJson = responseEntity.getBody();
-      LOG.debug(returnJson);
       JSONParser parser = new JSONParser();
 
       try {
-        JSONObject object = (JSONObject) parser.parse(returnJson);
+        List<JSONObject> plans = getPlans(instanceUrl, scope, parser);
 
-        for (Object job : getJsonArray((JSONObject) object.get("plans"), "plan")) {
-          JSONObject jsonJob = (JSONObject) job;
+        // Only look for plans that moved on since the last collection when we know what we have
+        Map<String, BambooJob> knownPlans = null;
+        Map<String, Map<String, Long>> latestBuilds = null;
+        if (knownJobs != null && settings.isChangeDetection()) {
+          knownPlans = getKnownPlans(instanceUrl, knownJobs);
+          latestBuilds = getLatestBuildNumbers(instanceUrl, scope, parser);
+        }
 
+        for (JSONObject jsonJob : plans) {
           final String planName = getString(jsonJob, "key");
+          cycleTrace.enter("plan", planName, planName);
           JSONObject link = (JSONObject) jsonJob.get("link");
           final String planUrl = getString(link, "href");
 
-          LOG.debug("Plan:" + planName);
-          LOG.debug("PlanURL: " + planUrl);
+          LOG.debug("Plan:{}", planName);
+          LOG.debug("PlanURL: {}", planUrl);
 
           // In terms of Bamboo this is the plan not job
           BambooJob bambooJob = new BambooJob();
@@ -117,92 +175,95 @@ public class DefaultBambooClient implements BambooClient {
           bambooJob.setJobName(planName);
           bambooJob.setJobUrl(planUrl);
 
-          // Finding out the results of the top-level plan
-
-          String resultUrl = joinUrl(instanceUrl, JOBS_RESULT_SUFFIX);
-          resultUrl = joinUrl(resultUrl, planName);
-          LOG.debug("Job:" + planName);
-          LOG.debug("Result URL:" + resultUrl);
-          responseEntity = makeRestCall(resultUrl);
-          returnJson = responseEntity.getBody();
-          LOG.debug("Result :" + returnJson);
-          jsonJob = (JSONObject) parser.parse(returnJson);
-
           Set<Build> builds = new LinkedHashSet<>();
-          for (Object build : getJsonArray((JSONObject) jsonJob.get("results"), "result")) {
-            JSONObject jsonBuild = (JSONObject) build;
-            LOG.debug("Entered each build for job : " + planName);
-            // A basic Build object. This will be fleshed out later if this is a new Build.
-            String dockerLocalHostIp = settings.getDockerLocalHostIP();
-            String buildNumber = jsonBuild.get("buildNumber").toString();
-            if (!"0".equals(buildNumber)) {
-              LOG.debug("BuildNO " + buildNumber + " for planName: " + planName);
-              Build bambooBuild = new Build();
-              bambooBuild.setNumber(buildNumber);
-              String buildUrl = joinUrl(resultUrl, buildNumber); //getString(jsonBuild, "url");
-              LOG.debug(buildUrl);
-              //Modify localhost if Docker Natting is being done
-              if (!dockerLocalHostIp.isEmpty()) {
-                buildUrl = buildUrl.replace("localhost", dockerLocalHostIp);
-                LOG.debug("Adding build & Updated URL to map LocalHost for Docker: " + buildUrl);
-              } else {
-                LOG.debug(" Adding Build: " + buildUrl);
-              }
-
-              bambooBuild.setBuildUrl(buildUrl);
-              builds.add(bambooBuild);
-            }
-          }
           // add the builds to the job
           result.put(bambooJob, builds);
 
+          if (!clusterCoordinator.owns(bambooJob)) {
+            // another replica lists the builds of the plan, with or without change detection
+            LOG.debug("Plan of another replica: {}", planName);
+            continue;
+          }
+          BambooJob known = knownPlans == null ? null : knownPlans.get(planName);
+          if (knownPlans != null && !hasNewBuilds(known, latestBuilds)) {
+            LOG.debug("No new builds for plan: {}", planName);
+            continue;
+          }
+
+          // Finding out the results of the top-level plan, a failing plan only costs itself
+          String planResultUrl = joinUrl(instanceUrl, JOBS_RESULT_SUFFIX, planName);
+          if (planQuarantine.isQuarantined(planResultUrl)) {
+            LOG.debug("Plan quarantined: {}", planName);
+            continue;
+          }
+          try {
+            bambooJob.getDiscoveredBuildNumbers().put(planName,
+                addBuilds(parser, instanceUrl, planName, planName, settings.getPlanMaxResults(),
+                    notBefore, builds));
+            planQuarantine.recordSuccess(planResultUrl);
+          } catch (RestClientException | ParseException exception) {
+            LOG.warn("Quarantined plan " + planName + ": " + exception.getMessage());
+            planQuarantine.recordFailure(planResultUrl, exception);
+            builds.clear();
+            bambooJob.getDiscoveredBuildNumbers().clear();
+            continue;
+          }
+
+          if (!scope.isIncludeBranches()) {
+            continue;
+          }
+
           //But we might have many branches and subplans in them so we have to find them out as well
           String branchesUrl = joinUrl(planUrl, "/branch");
-          responseEntity = makeRestCall(branchesUrl);
-          returnJson = responseEntity.getBody();
-          JSONObject jsonBranches = (JSONObject) parser.parse(returnJson);
-
-          for (Object branch : getJsonArray((JSONObject) jsonBranches.get("branches"), "branch")) {
+          if (planQuarantine.isQuarantined(branchesUrl)) {
+            LOG.debug("Branches of plan quarantined: {}", planName);
+            keepCollectedBuildNumbers(known, bambooJob);
+            continue;
+          }
+          List<?> branches;
+          try {
+            branches = getBranches(notBefore > 0
+                ? branchesUrl + BRANCH_LATEST_RESULT_SUFFIX : branchesUrl, parser);
+            planQuarantine.recordSuccess(branchesUrl);
+          } catch (RestClientException | ParseException exception) {
+            LOG.warn("Quarantined branches of plan " + planName + ": " + exception.getMessage());
+            planQuarantine.recordFailure(branchesUrl, exception);
+            keepCollectedBuildNumbers(known, bambooJob);
+            continue;
+          }
+          if (scope.getMaxBranches() > 0 && branches.size() > scope.getMaxBranches()) {
+            LOG.debug("Listing {} of {} branches of plan: {}", scope.getMaxBranches(),
+                branches.size(), planName);
+            branches = branches.subList(0, scope.getMaxBranches());
+          }
+          for (Object branch : branches) {
             JSONObject branchObject = (JSONObject) branch;
             String subPlan = branchObject.get("key").toString();
+            cycleTrace.enter("branch", subPlan, planName);
+            JSONObject latestResult = (JSONObject) branchObject.get("latestResult");
+            if (notBefore > 0 && isStale(latestResult, notBefore)
+                && !hasBuiltSince(subPlan, latestResult, latestBuilds)) {
+              LOG.debug("No builds in the time window for branch: {}", subPlan);
+              keepCollectedBuildNumber(known, subPlan, bambooJob);
+              continue;
+            }
             // Figure out nested jobs under the branches
-
-            resultUrl = joinUrl(instanceUrl, JOBS_RESULT_SUFFIX);
-            resultUrl = joinUrl(resultUrl, subPlan);
-            LOG.debug("sub Plan:" + subPlan);
-            LOG.debug("sub plan-Result URL:" + resultUrl);
-            responseEntity = makeRestCall(resultUrl);
-            returnJson = responseEntity.getBody();
-            LOG.debug("Result :" + returnJson);
-            jsonJob = (JSONObject) parser.parse(returnJson);
-
-            for (Object build : getJsonArray((JSONObject) jsonJob.get("results"), "result")) {
-              JSONObject jsonBuild = (JSONObject) build;
-              LOG.debug("Entered each build for nested plan : " + subPlan);
-              // A basic Build object. This will be fleshed out later if this is a new Build.
-              String dockerLocalHostIp = settings.getDockerLocalHostIP();
-              String buildNumber = jsonBuild.get("buildNumber").toString();
-              if (!"0".equals(buildNumber)) {
-                LOG.debug("BuildNO " + buildNumber + " for planName: " + planName);
-                Build bambooBuild = new Build();
-                bambooBuild.setNumber(buildNumber);
-                String buildUrl = joinUrl(resultUrl, buildNumber); //getString(jsonBuild, "url");
-                LOG.debug(buildUrl);
-                //Modify localhost if Docker Natting is being done
-                if (!dockerLocalHostIp.isEmpty()) {
-                  buildUrl = buildUrl.replace("localhost", dockerLocalHostIp);
-                  LOG.debug("Adding build & Updated URL to map LocalHost for Docker: " + buildUrl);
-                } else {
-                  LOG.debug(" Adding Build: " + buildUrl);
-                }
-
-                bambooBuild.setBuildUrl(buildUrl);
-                builds.add(bambooBuild);
-              }
+            String branchResultUrl = joinUrl(instanceUrl, JOBS_RESULT_SUFFIX, subPlan);
+            if (planQuarantine.isQuarantined(branchResultUrl)) {
+              LOG.debug("Branch quarantined: {}", subPlan);
+              keepCollectedBuildNumber(known, subPlan, bambooJob);
+              continue;
+            }
+            try {
+              bambooJob.getDiscoveredBuildNumbers().put(subPlan,
+                  addBuilds(parser, instanceUrl, planName, subPlan,
+                      settings.getBranchMaxResults(), notBefore, builds));
+              planQuarantine.recordSuccess(branchResultUrl);
+            } catch (RestClientException | ParseException exception) {
+              LOG.warn("Quarantined branch " + subPlan + ": " + exception.getMessage());
+              planQuarantine.recordFailure(branchResultUrl, exception);
+              keepCollectedBuildNumber(known, subPlan, bambooJob);
             }
-            // add the builds to the job
-            result.put(bambooJob, builds);
-
             // Ended with nested branches
           }
 
@@ -215,50 +276,482 @@ public class DefaultBambooClient implements BambooClient {
       throw restClientException;
     } catch (MalformedURLException malformedUrlException) {
       LOG.error("malformed url for loading jobs", malformedUrlException);
+    } finally {
+      cycleTrace.exit("plan");
     }
     return result;
   }
 
+  /**
+   * Lists the plans of an instance that are in scope. When the scope names projects only
+   * the plans of those projects are requested.
+   *
+   * @param instanceUrl the URL for the Bamboo instance.
+   * @param scope       the {@link BambooDiscoveryScope} of the instance.
+   * @param parser      the {@link JSONParser} to use.
+   * @return the plans in scope.
+   * @throws MalformedURLException if the plans url cannot be built.
+   * @throws ParseException if the plans cannot be parsed.
+   */
+  private List<JSONObject> getPlans(String instanceUrl, BambooDiscoveryScope scope,
+                                    JSONParser parser)
+      throws MalformedURLException, ParseException {
+    List<JSONObject> cached = metadataCache.getPlans(instanceUrl);
+    if (cached != null) {
+      LOG.debug("Using the cached plans of {}", instanceUrl);
+      return cached;
+    }
+    List<String> urls = new ArrayList<>();
+    if (CollectionUtils.isEmpty(scope.getProjectKeys())) {
+      urls.add(joinUrl(instanceUrl, JOBS_URL_SUFFIX));
+    } else {
+      for (String projectKey : scope.getProjectKeys()) {
+        urls.add(joinUrl(instanceUrl, PROJECT_URL_SUFFIX, projectKey + PROJECT_PLANS_SUFFIX));
+      }
+    }
+
+    List<JSONObject> plans = new ArrayList<>();
+    for (String url : urls) {
+      ResponseEntity<String> responseEntity = makeRestCall(url);
+      String returnJson = responseEntity.getBody();
+      payloadCapture.capture(instanceUrl, null, "plans", url, returnJson);
+      JSONObject object = parseJson(parser, returnJson, "plans");
+      for (Object plan : getJsonArray((JSONObject) object.get("plans"), "plan")) {
+        JSONObject jsonPlan = (JSONObject) plan;
+        if (scope.includesPlan(getString(jsonPlan, "key"))) {
+          plans.add(jsonPlan);
+        } else {
+          LOG.debug("Plan out of scope: {}", getString(jsonPlan, "key"));
+        }
+      }
+    }
+    metadataCache.putPlans(instanceUrl, plans);
+    return plans;
+  }
+
+  /**
+   * Lists the branches of a plan, or reuses them from the metadata cache.
+   *
+   * @param branchesUrl the URL to list the branches from.
+   * @param parser      the {@link JSONParser} to use.
+   * @return the branches of the plan.
+   * @throws MalformedURLException if the branches url cannot be built.
+   * @throws ParseException if the branches cannot be parsed.
+   */
+  private List<?> getBranches(String branchesUrl, JSONParser parser)
+      throws MalformedURLException, ParseException {
+    List<?> branches = metadataCache.getBranches(branchesUrl);
+    if (branches == null) {
+      ResponseEntity<String> responseEntity = makeRestCall(branchesUrl);
+      String returnJson = responseEntity.getBody();
+      JSONObject jsonBranches = parseJson(parser, returnJson, "branches");
+      branches = getJsonArray((JSONObject) jsonBranches.get("branches"), "branch");
+      metadataCache.putBranches(branchesUrl, branches);
+    }
+    return branches;
+  }
+
+  /**
+   * Adds the builds listed for a plan or one of its branches.
+   *
+   * @param parser      the {@link JSONParser} to use.
+   * @param instanceUrl the URL for the Bamboo instance.
+   * @param planName    the key of the top-level plan.
+   * @param planKey     the key of the plan or branch to list the results of.
+   * @param maxResults  the largest number of results to list, 0 for Bamboo's default.
+   * @param notBefore   the earliest start time of the builds to add, 0 for any.
+   * @param builds      the {@link Set} of {@link Build}s to add to.
+   * @return the newest build number listed, or 0 when there are no builds.
+   * @throws MalformedURLException if the result url cannot be built.
+   * @throws ParseException if the results cannot be parsed.
+   */
+  private long addBuilds(JSONParser parser, String instanceUrl, String planName,
+                         String planKey, int maxResults, long notBefore, Set<Build> builds)
+      throws MalformedURLException, ParseException {
+    String resultUrl = joinUrl(instanceUrl, JOBS_RESULT_SUFFIX);
+    resultUrl = joinUrl(resultUrl, planKey);
+    LOG.debug("Plan:{}", planKey);
+    LOG.debug("Result URL:{}", resultUrl);
+    List<String> parameters = new ArrayList<>();
+    if (maxResults > 0) {
+      parameters.add("max-results=" + maxResults);
+    }
+    if (notBefore > 0) {
+      // the start times are only listed with the expanded results
+      parameters.add("expand=results.result");
+    }
+    String listingUrl = parameters.isEmpty()
+        ? resultUrl : resultUrl + "?" + StringUtils.join(parameters, '&');
+    ResponseEntity<String> responseEntity = makeRestCall(listingUrl);
+    String returnJson = responseEntity.getBody();
+    payloadCapture.capture(instanceUrl, planKey, "results", listingUrl, returnJson);
+    JSONObject jsonJob = parseJson(parser, returnJson, "results");
+
+    long newest = 0;
+    for (Object build : getJsonArray((JSONObject) jsonJob.get("results"), "result")) {
+      JSONObject jsonBuild = (JSONObject) build;
+      LOG.debug("Entered each build for plan : {}", planKey);
+      // A basic Build object. This will be fleshed out later if this is a new Build.
+      String buildNumber = jsonBuild.get("buildNumber").toString();
+      newest = Math.max(newest, Long.parseLong(buildNumber));
+      if (notBefore > 0 && isStale(jsonBuild, notBefore)) {
+        LOG.debug("BuildNO {} is older than the time window", buildNumber);
+        continue;
+      }
+      if (!"0".equals(buildNumber)) {
+        LOG.debug("BuildNO {} for planName: {}", buildNumber, planName);
+        Build bambooBuild = new Build();
+        bambooBuild.setNumber(buildNumber);
+        String buildUrl = getBuildUrl(instanceUrl, planKey, buildNumber);
+        LOG.debug(" Adding Build: {}", buildUrl);
+
+        bambooBuild.setBuildUrl(buildUrl);
+        builds.add(bambooBuild);
+      }
+    }
+    return newest;
+  }
+
+  @Override
+  public List<Build> getOldestBuilds(String instanceUrl, String planKey, long after, int count) {
+    List<Build> builds = new ArrayList<>();
+    String resultUrl = joinUrl(instanceUrl, JOBS_RESULT_SUFFIX, planKey);
+    JSONParser parser = new JSONParser();
+    try {
+      // results are listed newest first and cannot be asked for from a build number, so the
+      // page is found from the newest build number, then moved should results be missing
+      JSONObject first = getResults(parser, resultUrl + "?max-results=1");
+      long size = first == null || first.get("size") == null
+          ? 0 : Long.parseLong(first.get("size").toString());
+      List<Long> numbers = getBuildNumbers(first);
+      if (numbers.isEmpty() || numbers.get(0) <= after) {
+        return builds;
+      }
+      // the page holds one result more than asked for, the oldest of which tells whether
+      // there are builds after the given one older than the page
+      long startIndex = Math.max(0, Math.min(numbers.get(0) - after - count, size - count - 1));
+      for (long moves = 0; moves <= size / count + 1; moves++) {
+        numbers = getBuildNumbers(getResults(parser, resultUrl + "?max-results=" + (count + 1)
+            + "&start-index=" + startIndex));
+        if (numbers.isEmpty()) {
+          return builds;
+        }
+        if (numbers.get(numbers.size() - 1) > after && startIndex + numbers.size() < size) {
+          // results before the page were removed, such as expired ones
+          startIndex += count;
+        } else if (numbers.get(0) <= after && startIndex > 0) {
+          // results within the page were removed, such as deleted ones
+          startIndex = Math.max(0, startIndex - count);
+        } else {
+          break;
+        }
+      }
+      for (Long number : numbers) {
+        if (number > after) {
+          Build build = new Build();
+          build.setNumber(number.toString());
+          build.setBuildUrl(getBuildUrl(instanceUrl, planKey, number.toString()));
+          builds.add(0, build);
+        }
+      }
+      return builds.size() > count ? new ArrayList<>(builds.subList(0, count)) : builds;
+    } catch (MalformedURLException | ParseException | NumberFormatException exception) {
+      LOG.error("Unable to list the oldest results of " + resultUrl, exception);
+      return null;
+    }
+  }
+
+  private JSONObject getResults(JSONParser parser, String url)
+      throws MalformedURLException, ParseException {
+    return (JSONObject) parseJson(parser, makeRestCall(url).getBody(), "results").get("results");
+  }
+
+  private List<Long> getBuildNumbers(JSONObject results) {
+    List<Long> numbers = new ArrayList<>();
+    if (results != null) {
+      for (Object item : getJsonArray(results, "result")) {
+        numbers.add(Long.parseLong(((JSONObject) item).get("buildNumber").toString()));
+      }
+    }
+    return numbers;
+  }
+
+  @Override
+  public String getBuildUrl(String instanceUrl, String planKey, String buildNumber) {
+    String buildUrl = joinUrl(instanceUrl, JOBS_RESULT_SUFFIX, planKey, buildNumber);
+    //Modify localhost if Docker Natting is being done
+    String dockerLocalHostIp = settings.getDockerLocalHostIP();
+    if (!dockerLocalHostIp.isEmpty()) {
+      buildUrl = buildUrl.replace("localhost", dockerLocalHostIp);
+    }
+    return buildUrl;
+  }
+
+  /**
+   * Checks whether a result started before the time window. Results without a start time
+   * are never stale.
+   *
+   * @param jsonResult the result, may be null.
+   * @param notBefore  the start of the time window in milliseconds.
+   * @return true if the result started before the time window.
+   */
+  private boolean isStale(JSONObject jsonResult, long notBefore) {
+    if (jsonResult == null || jsonResult.get("buildStartedTime") == null) {
+      return false;
+    }
+    try {
+      return parseDate(jsonResult.get("buildStartedTime").toString()) < notBefore;
+    } catch (java.text.ParseException parseException) {
+      LOG.debug("Invalid build start time: {}", jsonResult.get("buildStartedTime"));
+      return false;
+    }
+  }
+
+  /**
+   * Keeps the high-water marks of the branches of a plan whose branches could not be listed,
+   * so that the plan is not listed again just for having lost them.
+   *
+   * @param known     the stored job for the plan, may be null.
+   * @param bambooJob the job discovered for the plan.
+   */
+  private void keepCollectedBuildNumbers(BambooJob known, BambooJob bambooJob) {
+    if (known == null) {
+      return;
+    }
+    for (String key : known.getCollectedBuildNumbers().keySet()) {
+      if (!key.equals(bambooJob.getJobName())) {
+        keepCollectedBuildNumber(known, key, bambooJob);
+      }
+    }
+  }
+
+  private void keepCollectedBuildNumber(BambooJob known, String key, BambooJob bambooJob) {
+    Long collected = known == null ? null : known.getCollectedBuildNumbers().get(key);
+    if (collected != null) {
+      bambooJob.getDiscoveredBuildNumbers().put(key, collected);
+    }
+  }
+
+  /**
+   * Checks whether a branch has built since its latest result was listed, which may be a
+   * while ago when the branches come from the metadata cache.
+   *
+   * @param branchKey    the key of the branch.
+   * @param latestResult the latest result listed with the branch, may be null.
+   * @param latestBuilds the newest build numbers grouped by {@link #planBase(String)},
+   *                     or null if unknown.
+   * @return true if a newer build of the branch is known.
+   */
+  private boolean hasBuiltSince(String branchKey, JSONObject latestResult,
+                                Map<String, Map<String, Long>> latestBuilds) {
+    Map<String, Long> group = latestBuilds == null ? null : latestBuilds.get(planBase(branchKey));
+    Long latest = group == null ? null : group.get(branchKey);
+    if (latest == null) {
+      return false;
+    }
+    Object listed = latestResult == null ? null : latestResult.get("buildNumber");
+    return listed == null || latest > Long.parseLong(listed.toString());
+  }
+
+  /**
+   * Indexes the known jobs of an instance by plan key.
+   *
+   * @param instanceUrl the URL for the Bamboo instance.
+   * @param knownJobs   the jobs already stored for the collector.
+   * @return the known jobs of the instance keyed by plan key.
+   */
+  private Map<String, BambooJob> getKnownPlans(String instanceUrl,
+                                               Collection<BambooJob> knownJobs) {
+    Map<String, BambooJob> knownPlans = new HashMap<>();
+    for (BambooJob job : knownJobs) {
+      if (instanceUrl.equals(job.getInstanceUrl())) {
+        knownPlans.put(job.getJobName(), job);
+      }
+    }
+    return knownPlans;
+  }
+
+  /**
+   * Lists the newest build number of every plan and branch on an instance, using the
+   * latest-result listing which reports one result per plan. When the scope names projects
+   * only the latest results of those projects are listed.
+   *
+   * @param instanceUrl the URL for the Bamboo instance.
+   * @param scope       the {@link BambooDiscoveryScope} of the instance.
+   * @param parser      the {@link JSONParser} to use.
+   * @return the newest build numbers keyed by plan key and grouped by {@link #planBase(String)},
+   *     or null if they could not be listed.
+   */
+  private Map<String, Map<String, Long>> getLatestBuildNumbers(String instanceUrl,
+                                                               BambooDiscoveryScope scope,
+                                                               JSONParser parser) {
+    Map<String, Map<String, Long>> latestBuilds = new HashMap<>();
+    List<String> listings = new ArrayList<>();
+    if (CollectionUtils.isEmpty(scope.getProjectKeys())) {
+      listings.add(LATEST_RESULTS_URL_SUFFIX);
+    } else {
+      for (String projectKey : scope.getProjectKeys()) {
+        listings.add(LATEST_RESULTS_URL_SUFFIX + "/" + projectKey);
+      }
+    }
+    try {
+      for (String listing : listings) {
+        addLatestBuildNumbers(joinUrl(instanceUrl, listing), parser, latestBuilds);
+      }
+    } catch (RestClientException | MalformedURLException | ParseException
+        | NumberFormatException exception) {
+      LOG.warn("Unable to list latest results on " + instanceUrl
+          + ", listing every plan instead: " + exception.getMessage());
+      return null;
+    }
+    return latestBuilds;
+  }
+
+  private void addLatestBuildNumbers(String listingUrl, JSONParser parser,
+                                     Map<String, Map<String, Long>> latestBuilds)
+      throws MalformedURLException, ParseException {
+    long startIndex = 0;
+    long size;
+    do {
+      String url = listingUrl
+          + "?max-results=" + LATEST_RESULTS_PAGE_SIZE + "&start-index=" + startIndex;
+      String returnJson = makeRestCall(url).getBody();
+      JSONObject results = (JSONObject) parseJson(parser, returnJson, "latestResults")
+          .get("results");
+      if (results == null) {
+        break;
+      }
+      JSONArray page = getJsonArray(results, "result");
+      for (Object item : page) {
+        JSONObject jsonResult = (JSONObject) item;
+        String planKey = getResultPlanKey(jsonResult);
+        Object buildNumber = jsonResult.get("buildNumber");
+        if (planKey != null && buildNumber != null) {
+          long number = Long.parseLong(buildNumber.toString());
+          Map<String, Long> group = latestBuilds.get(planBase(planKey));
+          if (group == null) {
+            group = new HashMap<>();
+            latestBuilds.put(planBase(planKey), group);
+          }
+          Long previous = group.get(planKey);
+          group.put(planKey, previous == null ? number : Math.max(previous, number));
+        }
+      }
+      startIndex += page.size();
+      size = results.get("size") == null ? 0 : Long.parseLong(results.get("size").toString());
+      if (page.isEmpty()) {
+        break;
+      }
+    } while (startIndex < size);
+  }
+
+  private String getResultPlanKey(JSONObject jsonResult) {
+    JSONObject planResultKey = (JSONObject) jsonResult.get("planResultKey");
+    if (planResultKey != null && planResultKey.get("entityKey") != null) {
+      return getString((JSONObject) planResultKey.get("entityKey"), "key");
+    }
+    // "PROJ-PLAN-12" is build 12 of plan "PROJ-PLAN"
+    String resultKey = getString(jsonResult, "key");
+    return resultKey == null ? null : resultKey.replaceFirst("-\\d+$", "");
+  }
+
+  /**
+   * Decides whether a plan needs its results listed. Builds are only collected for enabled
+   * jobs, so only those are listed, and only when the plan or one of its branches has a
+   * newer build than the ones already collected.
+   *
+   * <p>Branch keys are the plan key followed by a number, so any latest result whose key
+   * extends the plan key that way counts as a branch of the plan. A false match only costs
+   * an extra listing of the plan.
+   *
+   * @param known        the stored job for the plan, or null if the plan is new.
+   * @param latestBuilds the newest build numbers grouped by {@link #planBase(String)},
+   *                     or null if unknown.
+   * @return true if the results of the plan and its branches should be listed.
+   */
+  private boolean hasNewBuilds(BambooJob known, Map<String, Map<String, Long>> latestBuilds) {
+    if (known == null || !known.isEnabled()) {
+      return false;
+    }
+    Map<String, Long> collected = known.getCollectedBuildNumbers();
+    if (latestBuilds == null || collected == null || collected.isEmpty()) {
+      return true;
+    }
+    String planKey = known.getJobName();
+    Map<String, Long> group = latestBuilds.get(planBase(planKey));
+    if (group == null) {
+      return false;
+    }
+    for (Map.Entry<String, Long> latest : group.entrySet()) {
+      String key = latest.getKey();
+      if ((key.equals(planKey) || collected.containsKey(key) || isBranchOf(key, planKey))
+          && latest.getValue() > collected.getOrDefault(key, 0L)) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  /**
+   * Strips the trailing digits of a plan key, so a plan and its branches share the same base.
+   *
+   * @param planKey the key of a plan or branch.
+   * @return the key without its trailing digits.
+   */
+  private static String planBase(String planKey) {
+    return planKey.replaceFirst("\\d+$", "");
+  }
+
+  private boolean isBranchOf(String key, String planKey) {
+    return key.length() > planKey.length() && key.startsWith(planKey)
+        && StringUtils.isNumeric(key.substring(planKey.length()));
+  }
+
   @Override
   public Build getBuildDetails(String buildUrl, String instanceUrl) {
     try {
       String newUrl = rebuildJobUrl(buildUrl, instanceUrl);
-      String url = joinUrl(newUrl, BUILD_DETAILS_URL_SUFFIX);
-      LOG.debug("Build Details URL:" + url);
+      String suffix = settings.getBuildDetailsExpansion().getUrlSuffix();
+      String url = suffix.isEmpty() ? newUrl : joinUrl(newUrl, suffix);
+      LOG.debug("Build Details URL:{}", url);
       ResponseEntity<String> result = makeRestCall(url);
       String resultJson = result.getBody();
-      LOG.debug("Build Details :" + resultJson);
+      payloadCapture.capture(instanceUrl, null, "build", url, resultJson);
+      if (LOG.isDebugEnabled() && resultJson != null) {
+        LOG.debug("Build Details size: " + resultJson.length() + " characters, "
+            + settings.getBuildDetailsExpansion() + " expansion. URL=" + url);
+      }
       if (StringUtils.isEmpty(resultJson)) {
         LOG.error("Error getting build details for. URL=" + url);
         return null;
       }
       JSONParser parser = new JSONParser();
       try {
-        JSONObject buildJson = (JSONObject) parser.parse(resultJson);
+        JSONObject buildJson = parseJson(parser, resultJson, "build");
+        Build build = new Build();
+        build.setNumber(buildJson.get("buildNumber").toString());
+        build.setBuildUrl(buildUrl);
+        build.setTimestamp(System.currentTimeMillis());
+        // Jobs that are building are only reported as in progress
         Boolean finished = (Boolean) buildJson.get("finished");
-        // Ignore jobs that are building
-        if (finished) {
-          Build build = new Build();
-          build.setNumber(buildJson.get("buildNumber").toString());
-          build.setBuildUrl(buildUrl);
-          build.setTimestamp(System.currentTimeMillis());
-
-          //"2016-06-23T09:13:29.961+07:00"
-          SimpleDateFormat dateFormat =
-              new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ss.SSSXXX");
-          Date parsedDate = dateFormat.parse(buildJson.get("buildStartedTime").toString());
-          build.setStartTime((Long) parsedDate.getTime());
-
-          build.setDuration((Long) buildJson.get("buildDuration"));
-          build.setEndTime(build.getStartTime() + build.getDuration());
-          build.setBuildStatus(getBuildStatus(buildJson));
-          if (settings.isSaveLog()) {
-            build.setLog(getLog(buildUrl));
+        if (!finished) {
+          build.setBuildStatus(BuildStatus.InProgress);
+          if (buildJson.get("buildStartedTime") != null) {
+            build.setStartTime(parseDate(buildJson.get("buildStartedTime").toString()));
           }
-          addChangeSets(build, buildJson);
           return build;
         }
 
+        build.setStartTime(parseDate(buildJson.get("buildStartedTime").toString()));
+        build.setDuration((Long) buildJson.get("buildDuration"));
+        build.setEndTime(build.getStartTime() + build.getDuration());
+        build.setBuildStatus(getBuildStatus(buildJson));
+        if (settings.isSaveLog()) {
+          build.setLog(getLog(buildUrl));
+        }
+        addChangeSets(build, buildJson);
+        return build;
+
       } catch (Exception exception) {
         LOG.error("Parsing build: " + buildUrl, exception);
       }
@@ -325,13 +818,21 @@ public class DefaultBambooClient implements BambooClient {
       scm.setScmCommitTimestamp(getCommitTimestamp(jsonItem));
       scm.setScmRevisionNumber(getRevision(jsonItem));
       scm.setScmUrl(getString(jsonItem, "commitUrl"));
-      scm.setNumberOfChanges(getJsonArray((JSONObject) jsonItem.get("files"), "file").size());
-      build.getSourceChangeSet().add(scm);
+      scm.setNumberOfChanges(getCollectionSize((JSONObject) jsonItem.get("files"), "file"));
+      build.getSourceChangeSet().add(commitStore.share(scm));
     }
   }
 
   ////// Helpers
 
+  private long parseDate(String date) throws java.text.ParseException {
+    //"2016-06-23T09:13:29.961+07:00"
+    SimpleDateFormat dateFormat =
+        new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ss.SSSXXX");
+    Date parsedDate = dateFormat.parse(date);
+    return parsedDate.getTime();
+  }
+
   private long getCommitTimestamp(JSONObject jsonItem) {
     if (jsonItem.get("timestamp") != null) {
       return (Long) jsonItem.get("timestamp");
@@ -351,6 +852,25 @@ public class DefaultBambooClient implements BambooClient {
     return 0;
   }
 
+  /**
+   * Parses a response from Bamboo into a JSON object.
+   *
+   * @param parser   the {@link JSONParser} to use.
+   * @param json     the response.
+   * @param category the kind of resource parsed, for the recorded events.
+   * @return the parsed object.
+   * @throws ParseException if the response cannot be parsed.
+   */
+  private JSONObject parseJson(JSONParser parser, String json, String category)
+      throws ParseException {
+    Object event = CollectorEvents.beginJsonParse();
+    try {
+      return (JSONObject) parser.parse(json);
+    } finally {
+      CollectorEvents.endJsonParse(event, category, json == null ? 0 : json.length());
+    }
+  }
+
   private String getString(JSONObject json, String key) {
     return (String) json.get(key);
   }
@@ -366,6 +886,24 @@ public class DefaultBambooClient implements BambooClient {
     return array == null ? new JSONArray() : (JSONArray) array;
   }
 
+  /**
+   * Counts the items of a collection, whether it was expanded or not.
+   *
+   * @param json the collection, may be null.
+   * @param key  the key of the expanded items.
+   * @return the number of listed items, or else the size Bamboo reports for the collection.
+   */
+  private long getCollectionSize(JSONObject json, String key) {
+    if (json == null) {
+      return 0;
+    }
+    if (json.get(key) != null) {
+      return getJsonArray(json, key).size();
+    }
+    Object size = json.get("size");
+    return size == null ? 0 : Long.parseLong(size.toString());
+  }
+
   private String firstCulprit(JSONObject buildJson) {
     JSONArray culprits = getJsonArray(buildJson, "culprits");
     if (CollectionUtils.isEmpty(culprits)) {
@@ -412,15 +950,140 @@ public class DefaultBambooClient implements BambooClient {
       userInfo = this.settings.getUsername() + ":" + this.settings.getApiKey();
     }
     // Basic Auth only.
-    if (StringUtils.isNotEmpty(userInfo)) {
-      return rest.exchange(thisUri, HttpMethod.GET,
-          new HttpEntity<>(createHeaders(userInfo)),
-          String.class);
-    } else {
-      return rest.exchange(thisUri, HttpMethod.GET, null,
-          String.class);
+    HttpEntity<?> requestEntity = StringUtils.isNotEmpty(userInfo)
+        ? new HttpEntity<>(createHeaders(userInfo)) : null;
+    String category = getUrlCategory(url);
+    for (int attempt = 0; ; attempt++) {
+      RateLimiter limiter = rateLimiter.get();
+      if (limiter != null) {
+        limiter.acquire();
+      }
+      Object event = CollectorEvents.beginRestCall();
+      long start = System.nanoTime();
+      try {
+        ResponseEntity<String> response = restFixture.exchange(thisUri, requestEntity,
+            () -> rest.exchange(thisUri, HttpMethod.GET, requestEntity, String.class));
+        int bytes =
+            response == null || response.getBody() == null ? 0 : response.getBody().length();
+        CollectorEvents.endRestCall(event, thisUri.getHost(), category,
+            response == null ? 0 : response.getStatusCode().value(), bytes, attempt);
+        cycleTrace.recordRequest(url, System.nanoTime() - start, bytes);
+        return response;
+      } catch (RestClientException rce) {
+        CollectorEvents.endRestCall(event, thisUri.getHost(), category,
+            rce instanceof HttpStatusCodeException
+                ? ((HttpStatusCodeException) rce).getStatusCode().value() : 0, 0, attempt);
+        cycleTrace.recordRequest(url, System.nanoTime() - start, 0);
+        if (attempt >= settings.getRetryAttempts() || !isTransient(rce) || !takeRetry()) {
+          throw rce;
+        }
+        long delay = getRetryDelay(attempt);
+        LOG.debug("Retrying {} in {}ms: {}", url, delay, rce.getMessage());
+        try {
+          Thread.sleep(delay);
+        } catch (InterruptedException ie) {
+          Thread.currentThread().interrupt();
+          throw rce;
+        }
+      }
+    }
+  }
+
+  @Override
+  public <T> T withRateLimiter(RateLimiter limiter, Supplier<T> action) {
+    RateLimiter previous = rateLimiter.get();
+    rateLimiter.set(limiter);
+    try {
+      return action.get();
+    } finally {
+      if (previous == null) {
+        rateLimiter.remove();
+      } else {
+        rateLimiter.set(previous);
+      }
     }
+  }
 
+  @Override
+  public void resetRetryBudget() {
+    retriesLeft.set(settings.getRetryBudget() > 0
+        ? settings.getRetryBudget() : Integer.MAX_VALUE);
+  }
+
+  /**
+   * Names the kind of resource a url requests, for the recorded events.
+   *
+   * @param url the url of the request.
+   * @return the category of the url.
+   */
+  static String getUrlCategory(String url) {
+    if (url.contains("/branch")) {
+      return "branches";
+    }
+    if (url.contains("/consoleText")) {
+      return "log";
+    }
+    if (url.contains(JOBS_RESULT_SUFFIX)) {
+      return url.matches(".*/result/[^/?]+/\\d+.*") ? "build" : "results";
+    }
+    if (url.contains(LATEST_RESULTS_URL_SUFFIX)) {
+      return "latestResults";
+    }
+    if (url.contains(PROJECT_URL_SUFFIX)) {
+      return "projectPlans";
+    }
+    if (url.contains("rest/api/latest/plan")) {
+      return "plans";
+    }
+    return "other";
+  }
+
+  /**
+   * Takes a retry from the budget of the cycle.
+   *
+   * @return false if the budget is spent.
+   */
+  private boolean takeRetry() {
+    if (retriesLeft.getAndDecrement() > 0) {
+      return true;
+    }
+    retriesLeft.incrementAndGet();
+    LOG.debug("Retry budget spent");
+    return false;
+  }
+
+  /**
+   * Checks whether a failed request is worth repeating: the connection failed, or Bamboo or a
+   * proxy in front of it is overloaded or restarting.
+   *
+   * @param rce the failure.
+   * @return true if the request can be retried.
+   */
+  private static boolean isTransient(RestClientException rce) {
+    if (rce instanceof ResourceAccessException) {
+      return true;
+    }
+    if (rce instanceof HttpStatusCodeException) {
+      HttpStatus status = ((HttpStatusCodeException) rce).getStatusCode();
+      return status == HttpStatus.TOO_MANY_REQUESTS || status == HttpStatus.BAD_GATEWAY
+          || status == HttpStatus.SERVICE_UNAVAILABLE || status == HttpStatus.GATEWAY_TIMEOUT;
+    }
+    return false;
+  }
+
+  /**
+   * Picks a random wait up to a limit that doubles with every attempt, so that the retries of
+   * many requests are spread out.
+   *
+   * @param attempt the number of the failed attempt, from 0.
+   * @return the wait in milliseconds.
+   */
+  private long getRetryDelay(int attempt) {
+    long limit = settings.getRetryMinDelay() << Math.min(attempt, 30);
+    if (settings.getRetryMaxDelay() > 0) {
+      limit = Math.min(limit, settings.getRetryMaxDelay());
+    }
+    return limit <= 0 ? 0 : ThreadLocalRandom.current().nextLong(limit + 1);
   }
 
   protected HttpHeaders createHeaders(final String userInfo) {
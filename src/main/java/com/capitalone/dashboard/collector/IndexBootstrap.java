@@ -0,0 +1,173 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.capitalone.dashboard.collector;
+
+import com.capitalone.dashboard.model.BambooJob;
+import com.capitalone.dashboard.model.Build;
+import com.mongodb.BasicDBObject;
+import com.mongodb.DBObject;
+import org.bson.types.ObjectId;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.InitializingBean;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.dao.DataAccessException;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.MongoOperations;
+import org.springframework.data.mongodb.core.index.Index;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Makes sure the queries the collector runs on every collection are served by an index. The
+ * indexes are created at startup when missing, in the background so that a large collection
+ * stays available. Optionally each query is explained, and a query answered by a collection
+ * scan is logged or stops the collector.
+ */
+@Component
+public class IndexBootstrap implements InitializingBean {
+  private static final Logger LOG = LoggerFactory.getLogger(IndexBootstrap.class);
+
+  static final String LOG_SCANS = "log";
+  static final String FAIL_ON_SCANS = "fail";
+
+  private static final String COLLECTOR_ID = "collectorId";
+  private static final String INSTANCE_URL = "options.instanceUrl";
+  private static final String JOB_NAME = "options.jobName";
+  private static final String ENABLED = "enabled";
+  private static final String COLLECTOR_ITEM_ID = "collectorItemId";
+  private static final String NUMBER = "number";
+
+  private final MongoOperations mongoOperations;
+  private final BambooSettings settings;
+
+  /**
+   * Autowired constructor for spring dependency-injection.
+   *
+   * @param mongoOperations autowired.
+   * @param settings        autowired.
+   */
+  @Autowired
+  public IndexBootstrap(MongoOperations mongoOperations, BambooSettings settings) {
+    this.mongoOperations = mongoOperations;
+    this.settings = settings;
+  }
+
+  @Override
+  public void afterPropertiesSet() {
+    if (settings.isEnsureIndexes()) {
+      ensureIndexes();
+    }
+    String check = settings.getQueryPlanCheck();
+    if (LOG_SCANS.equals(check) || FAIL_ON_SCANS.equals(check)) {
+      List<String> scans = findCollectionScans();
+      for (String scan : scans) {
+        LOG.warn("Collection scan for " + scan);
+      }
+      if (!scans.isEmpty() && FAIL_ON_SCANS.equals(check)) {
+        throw new IllegalStateException("Collection scans for " + scans);
+      }
+    }
+  }
+
+  /**
+   * Creates the indexes of the jobs and builds queried on every collection. An index that
+   * already exists is left alone.
+   */
+  void ensureIndexes() {
+    // serves findByCollectorIdIn by its prefix and findJob
+    ensureIndex(BambooJob.class, COLLECTOR_ID, INSTANCE_URL, JOB_NAME);
+    // serves findEnabledJobs
+    ensureIndex(BambooJob.class, COLLECTOR_ID, INSTANCE_URL, ENABLED);
+    // serves findByCollectorItemIdAndNumber
+    ensureIndex(Build.class, COLLECTOR_ITEM_ID, NUMBER);
+  }
+
+  private void ensureIndex(Class<?> entity, String... keys) {
+    Index index = new Index().background();
+    for (String key : keys) {
+      index.on(key, Sort.Direction.ASC);
+    }
+    try {
+      mongoOperations.indexOps(entity).ensureIndex(index);
+    } catch (DataAccessException exception) {
+      LOG.warn("Unable to create the index " + Arrays.toString(keys) + " of "
+          + mongoOperations.getCollectionName(entity), exception);
+    }
+  }
+
+  /**
+   * Explains the queries run on every collection.
+   *
+   * @return the queries answered by a collection scan.
+   */
+  List<String> findCollectionScans() {
+    ObjectId id = new ObjectId();
+    List<String> scans = new ArrayList<>();
+    explain(scans, "findByCollectorIdIn", BambooJob.class, new BasicDBObject(COLLECTOR_ID,
+        new BasicDBObject("$in", Collections.singletonList(id))));
+    explain(scans, "findEnabledJobs", BambooJob.class, new BasicDBObject(COLLECTOR_ID, id)
+        .append(INSTANCE_URL, "").append(ENABLED, true));
+    explain(scans, "findJob", BambooJob.class, new BasicDBObject(COLLECTOR_ID, id)
+        .append(INSTANCE_URL, "").append(JOB_NAME, ""));
+    explain(scans, "findByCollectorItemIdAndNumber", Build.class,
+        new BasicDBObject(COLLECTOR_ITEM_ID, id).append(NUMBER, ""));
+    return scans;
+  }
+
+  private void explain(List<String> scans, String name, Class<?> entity, DBObject query) {
+    try {
+      DBObject plan = mongoOperations.getCollection(mongoOperations.getCollectionName(entity))
+          .find(query).explain();
+      Object queryPlanner = plan.get("queryPlanner");
+      Object winningPlan = queryPlanner instanceof DBObject
+          ? ((DBObject) queryPlanner).get("winningPlan") : null;
+      if (isCollectionScan(winningPlan)) {
+        scans.add(name);
+      }
+    } catch (RuntimeException exception) {
+      LOG.warn("Unable to explain " + name, exception);
+    }
+  }
+
+  private static boolean isCollectionScan(Object stage) {
+    if (!(stage instanceof DBObject)) {
+      return false;
+    }
+    DBObject plan = (DBObject) stage;
+    if ("COLLSCAN".equals(plan.get("stage"))) {
+      return true;
+    }
+    if (isCollectionScan(plan.get("inputStage"))) {
+      return true;
+    }
+    Object inputStages = plan.get("inputStages");
+    if (inputStages instanceof List) {
+      for (Object input : (List<?>) inputStages) {
+        if (isCollectionScan(input)) {
+          return true;
+        }
+      }
+    }
+    return false;
+  }
+}
@@ -0,0 +1,47 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.capitalone.dashboard.collector;
+
+import com.capitalone.dashboard.model.BambooJob;
+import org.springframework.stereotype.Component;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Locks of the jobs, that the collection cycle, the notification queue and the backfill hold
+ * while they check that a build is not stored yet and save it. They run on threads of their
+ * own, so without the lock of the job the same build could be stored twice. A job is known by
+ * its server and plan key, like {@link BambooJob#equals(Object)} does. The locks only hold
+ * within a replica; across replicas a job is collected by the replica leasing its shard.
+ */
+@Component
+public class JobLocks {
+  private final Map<String, Object> locks = new ConcurrentHashMap<>();
+
+  /**
+   * The lock of a job, to synchronize on.
+   *
+   * @param job the {@link BambooJob}.
+   * @return the lock of the job.
+   */
+  public Object get(BambooJob job) {
+    return locks.computeIfAbsent(job.getInstanceUrl() + " " + job.getJobName(),
+        key -> new Object());
+  }
+}
@@ -0,0 +1,206 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.capitalone.dashboard.collector;
+
+import org.json.simple.JSONObject;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+import org.springframework.util.CollectionUtils;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Captures the raw responses of Bamboo for diagnostics, instead of logging every response at
+ * debug level. Only the responses of the selected servers and plans, and a sample of the
+ * others, are written, one JSON line each, to a compressed file that is rotated once it holds
+ * enough. When capture is off, the responses are not touched at all.
+ */
+@Component
+public class PayloadCapture implements DisposableBean {
+  private static final Logger LOG = LoggerFactory.getLogger(PayloadCapture.class);
+  // "result/PROJ-PLAN-12" and "result/PROJ-PLAN/12" are both results of plan "PROJ-PLAN"
+  private static final Pattern RESULT_PLAN = Pattern.compile("/result/([^/?-]+-[^/?-]+)");
+  private static final Pattern USER_INFO = Pattern.compile("//[^/@]+@");
+
+  private final BambooSettings settings;
+  private Writer writer;
+  private long written;
+
+  /**
+   * Autowired constructor for spring dependency-injection.
+   *
+   * @param settings autowired.
+   */
+  @Autowired
+  public PayloadCapture(BambooSettings settings) {
+    this.settings = settings;
+  }
+
+  /**
+   * Whether any response can be captured.
+   *
+   * @return true if a capture file is set along with servers, plans or a sample to capture.
+   */
+  public boolean isEnabled() {
+    return settings.getCaptureFile() != null
+        && (!CollectionUtils.isEmpty(settings.getCaptureServers())
+        || !CollectionUtils.isEmpty(settings.getCapturePlans())
+        || settings.getCaptureSamplePercent() > 0);
+  }
+
+  /**
+   * Captures a response if it is selected or sampled.
+   *
+   * @param instanceUrl the URL of the Bamboo instance.
+   * @param planKey     the key of the plan the response is about, or null to take it from the
+   *                    URL of a result.
+   * @param category    the kind of response.
+   * @param url         the URL the response was requested from.
+   * @param body        the response.
+   */
+  @SuppressWarnings("unchecked")
+  public void capture(String instanceUrl, String planKey, String category, String url,
+                      String body) {
+    if (!isEnabled() || body == null) {
+      return;
+    }
+    String plan = planKey != null ? planKey : resultPlan(url);
+    if (!isSelected(instanceUrl, plan) && !isSampled()) {
+      return;
+    }
+    JSONObject record = new JSONObject();
+    record.put("time", System.currentTimeMillis());
+    record.put("server", instanceUrl);
+    record.put("plan", plan);
+    record.put("category", category);
+    record.put("url", url == null ? null : USER_INFO.matcher(url).replaceFirst("//"));
+    record.put("body", body);
+    write(record.toJSONString());
+  }
+
+  private boolean isSelected(String instanceUrl, String plan) {
+    List<String> servers = settings.getCaptureServers();
+    if (servers != null && servers.contains(instanceUrl)) {
+      return true;
+    }
+    List<String> plans = settings.getCapturePlans();
+    if (plans == null || plan == null) {
+      return false;
+    }
+    for (String selected : plans) {
+      // a branch key is the key of its plan followed by a number
+      if (plan.startsWith(selected)
+          && plan.substring(selected.length()).chars().allMatch(Character::isDigit)) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  private boolean isSampled() {
+    double percent = settings.getCaptureSamplePercent();
+    return percent > 0 && ThreadLocalRandom.current().nextDouble(100) < percent;
+  }
+
+  static String resultPlan(String url) {
+    if (url == null) {
+      return null;
+    }
+    Matcher matcher = RESULT_PLAN.matcher(url);
+    return matcher.find() ? matcher.group(1) : null;
+  }
+
+  private synchronized void write(String line) {
+    try {
+      if (writer == null) {
+        Path file = Paths.get(settings.getCaptureFile());
+        Path parent = file.toAbsolutePath().getParent();
+        if (parent != null) {
+          Files.createDirectories(parent);
+        }
+        OutputStream out = new GZIPOutputStream(Files.newOutputStream(file), true);
+        writer = new OutputStreamWriter(out, StandardCharsets.UTF_8);
+        written = 0;
+      }
+      writer.write(line);
+      writer.write('\n');
+      // flushed after every response, so the file can be read up to the last one any time
+      writer.flush();
+      written += line.length() + 1;
+      if (written >= settings.getCaptureMaxBytes()) {
+        rotate();
+      }
+    } catch (IOException ioe) {
+      LOG.warn("Unable to capture a response in " + settings.getCaptureFile(), ioe);
+      closeQuietly();
+    }
+  }
+
+  /**
+   * Closes the capture file and shifts it and the older ones by one, dropping the oldest.
+   *
+   * @throws IOException if the files cannot be moved.
+   */
+  private void rotate() throws IOException {
+    closeQuietly();
+    Path file = Paths.get(settings.getCaptureFile());
+    int kept = Math.max(1, settings.getCaptureFileCount());
+    Files.deleteIfExists(Paths.get(file + "." + kept));
+    for (int index = kept - 1; index >= 1; index--) {
+      Path older = Paths.get(file + "." + index);
+      if (Files.exists(older)) {
+        Files.move(older, Paths.get(file + "." + (index + 1)),
+            StandardCopyOption.REPLACE_EXISTING);
+      }
+    }
+    Files.move(file, Paths.get(file + ".1"), StandardCopyOption.REPLACE_EXISTING);
+  }
+
+  private void closeQuietly() {
+    if (writer == null) {
+      return;
+    }
+    try {
+      writer.close();
+    } catch (IOException ioe) {
+      LOG.debug("Unable to close " + settings.getCaptureFile(), ioe);
+    }
+    writer = null;
+  }
+
+  @Override
+  public synchronized void destroy() {
+    closeQuietly();
+  }
+}
@@ -0,0 +1,203 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.capitalone.dashboard.collector;
+
+import org.json.simple.JSONArray;
+import org.json.simple.JSONObject;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Keeps track of the plan and branch urls that fail, so that one failing plan or branch does
+ * not cost the collection of a whole instance. A failing url is quarantined, and requested
+ * again after a wait that doubles with every failure.
+ */
+@Component
+public class PlanQuarantine {
+  private final BambooSettings settings;
+  private final Map<String, PlanFailure> failures = new ConcurrentHashMap<>();
+
+  /**
+   * Autowired constructor for spring dependency-injection.
+   *
+   * @param settings autowired.
+   */
+  @Autowired
+  public PlanQuarantine(BambooSettings settings) {
+    this.settings = settings;
+  }
+
+  /**
+   * Checks whether a url is waiting to be requested again.
+   *
+   * @param url the url of the plan or branch.
+   * @return true if the url is not to be requested now.
+   */
+  public boolean isQuarantined(String url) {
+    PlanFailure failure = failures.get(url);
+    return failure != null && System.currentTimeMillis() < failure.getNextAttempt();
+  }
+
+  /**
+   * Records a failure of a url, and quarantines it.
+   *
+   * @param url       the url of the plan or branch.
+   * @param exception the cause of the failure.
+   */
+  public void recordFailure(String url, Exception exception) {
+    PlanFailure failure = failures.computeIfAbsent(url, PlanFailure::new);
+    synchronized (failure) {
+      long now = System.currentTimeMillis();
+      long backoff = settings.getFailedPlanMinRetryInterval()
+          << Math.min(failure.failures, 30);
+      if (settings.getFailedPlanMaxRetryInterval() > 0) {
+        backoff = Math.min(backoff, settings.getFailedPlanMaxRetryInterval());
+      }
+      failure.failures++;
+      failure.lastFailure = now;
+      failure.nextAttempt = now + backoff;
+      failure.lastError = exception.getMessage();
+    }
+  }
+
+  /**
+   * Forgets the failures of a url that succeeded.
+   *
+   * @param url the url of the plan or branch.
+   */
+  public void recordSuccess(String url) {
+    failures.remove(url);
+  }
+
+  /**
+   * The urls that failed, whether or not they are due to be requested again.
+   *
+   * @return the failures by url.
+   */
+  public List<PlanFailure> getFailures() {
+    List<PlanFailure> list = new ArrayList<>(failures.values());
+    list.sort((first, second) -> first.getUrl().compareTo(second.getUrl()));
+    return Collections.unmodifiableList(list);
+  }
+
+  /**
+   * Number of urls quarantined.
+   *
+   * @return the number of failing urls.
+   */
+  public int size() {
+    return failures.size();
+  }
+
+  /**
+   * Releases a url, so that it is requested on the next collection.
+   *
+   * @param url the url of the plan or branch.
+   * @return true if the url was quarantined.
+   */
+  public boolean release(String url) {
+    return failures.remove(url) != null;
+  }
+
+  /**
+   * Releases every url.
+   */
+  public void releaseAll() {
+    failures.clear();
+  }
+
+  /**
+   * The failing urls, for the state snapshot.
+   *
+   * @return the failures as JSON.
+   */
+  @SuppressWarnings("unchecked")
+  JSONArray toJson() {
+    JSONArray json = new JSONArray();
+    for (PlanFailure failure : failures.values()) {
+      JSONObject item = new JSONObject();
+      synchronized (failure) {
+        item.put("url", failure.url);
+        item.put("failures", failure.failures);
+        item.put("lastFailure", failure.lastFailure);
+        item.put("nextAttempt", failure.nextAttempt);
+        item.put("lastError", failure.lastError);
+      }
+      json.add(item);
+    }
+    return json;
+  }
+
+  /**
+   * Quarantines the failing urls of a state snapshot again, with their original backoff.
+   *
+   * @param json the failures as written by {@link #toJson()}.
+   */
+  void restore(JSONArray json) {
+    for (Object item : json) {
+      JSONObject jsonFailure = (JSONObject) item;
+      PlanFailure failure = new PlanFailure(jsonFailure.get("url").toString());
+      failure.failures = ((Number) jsonFailure.get("failures")).intValue();
+      failure.lastFailure = ((Number) jsonFailure.get("lastFailure")).longValue();
+      failure.nextAttempt = ((Number) jsonFailure.get("nextAttempt")).longValue();
+      failure.lastError = (String) jsonFailure.get("lastError");
+      failures.putIfAbsent(failure.url, failure);
+    }
+  }
+
+  /**
+   * The failures of a plan or branch url.
+   */
+  public static final class PlanFailure {
+    private final String url;
+    private int failures;
+    private long lastFailure;
+    private long nextAttempt;
+    private String lastError;
+
+    PlanFailure(String url) {
+      this.url = url;
+    }
+
+    public String getUrl() {
+      return url;
+    }
+
+    public synchronized int getFailures() {
+      return failures;
+    }
+
+    public synchronized long getLastFailure() {
+      return lastFailure;
+    }
+
+    public synchronized long getNextAttempt() {
+      return nextAttempt;
+    }
+
+    public synchronized String getLastError() {
+      return lastError;
+    }
+  }
+}
@@ -0,0 +1,256 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.capitalone.dashboard.collector;
+
+import com.capitalone.dashboard.util.Supplier;
+import org.apache.commons.codec.digest.DigestUtils;
+import org.apache.commons.lang3.StringUtils;
+import org.json.simple.JSONArray;
+import org.json.simple.JSONObject;
+import org.json.simple.parser.JSONParser;
+import org.json.simple.parser.ParseException;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpEntity;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.stereotype.Component;
+import org.springframework.web.client.HttpClientErrorException;
+import org.springframework.web.client.HttpServerErrorException;
+import org.springframework.web.client.HttpStatusCodeException;
+import org.springframework.web.client.ResourceAccessException;
+import org.springframework.web.client.RestClientException;
+import org.springframework.web.client.UnknownHttpStatusCodeException;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.Reader;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Records the responses of Bamboo to a directory, or serves them back from it, so that a real
+ * collection can be run again offline with the same traffic every time.
+ *
+ * <p>Every response is kept in a gzipped file named after a hash of its url and the number of
+ * times the url was requested before: a line of JSON with the url, request and response
+ * headers, status and latency, followed by the body. Credentials are left out. A replayed url
+ * gets its responses in the order they were recorded, and the last one once they run out.
+ */
+@Component
+public class RestFixture {
+  static final String RECORD = "record";
+  static final String REPLAY = "replay";
+
+  private final BambooSettings settings;
+  private final Map<String, AtomicInteger> requests = new ConcurrentHashMap<>();
+
+  /**
+   * Autowired constructor for spring dependency-injection.
+   *
+   * @param settings autowired.
+   */
+  @Autowired
+  public RestFixture(BambooSettings settings) {
+    this.settings = settings;
+  }
+
+  /**
+   * Makes a request to Bamboo, recording its response, or replays a recorded response.
+   *
+   * @param uri           the uri requested.
+   * @param requestEntity the headers of the request, or null.
+   * @param call          makes the request to Bamboo.
+   * @return the response.
+   * @throws RestClientException if the request failed, or its recorded response was a failure.
+   */
+  public ResponseEntity<String> exchange(URI uri, HttpEntity<?> requestEntity,
+                                         Supplier<ResponseEntity<String>> call) {
+    if (REPLAY.equals(settings.getFixtureMode())) {
+      return replay(uri);
+    }
+    if (!RECORD.equals(settings.getFixtureMode())) {
+      return call.get();
+    }
+    long start = System.nanoTime();
+    try {
+      ResponseEntity<String> response = call.get();
+      record(uri, requestEntity, response.getStatusCode().value(), response.getHeaders(),
+          response.getBody(), System.nanoTime() - start);
+      return response;
+    } catch (HttpStatusCodeException hsce) {
+      record(uri, requestEntity, hsce.getStatusCode().value(), hsce.getResponseHeaders(),
+          hsce.getResponseBodyAsString(), System.nanoTime() - start);
+      throw hsce;
+    } catch (UnknownHttpStatusCodeException uhsce) {
+      record(uri, requestEntity, uhsce.getRawStatusCode(), uhsce.getResponseHeaders(),
+          uhsce.getResponseBodyAsString(), System.nanoTime() - start);
+      throw uhsce;
+    } catch (RestClientException rce) {
+      record(uri, requestEntity, 0, null, rce.getMessage(), System.nanoTime() - start);
+      throw rce;
+    }
+  }
+
+  @SuppressWarnings("unchecked")
+  private void record(URI uri, HttpEntity<?> requestEntity, int status, HttpHeaders headers,
+                      String body, long nanos) {
+    String url = withoutUserInfo(uri);
+    JSONObject entry = new JSONObject();
+    entry.put("url", url);
+    entry.put("status", status);
+    entry.put("latency", TimeUnit.NANOSECONDS.toMillis(nanos));
+    entry.put("requestHeaders",
+        toJson(requestEntity == null ? null : requestEntity.getHeaders()));
+    entry.put("headers", toJson(headers));
+    Path file = getFile(url, next(url));
+    try {
+      Files.createDirectories(file.getParent());
+      try (OutputStream out = new GZIPOutputStream(Files.newOutputStream(file))) {
+        out.write(entry.toJSONString().getBytes(StandardCharsets.UTF_8));
+        out.write('\n');
+        if (body != null) {
+          out.write(body.getBytes(StandardCharsets.UTF_8));
+        }
+      }
+    } catch (IOException ioe) {
+      throw new ResourceAccessException("Unable to record the response of " + url, ioe);
+    }
+  }
+
+  private ResponseEntity<String> replay(URI uri) {
+    String url = withoutUserInfo(uri);
+    int index = next(url);
+    Path file = getFile(url, index);
+    while (index > 0 && !Files.exists(file)) {
+      file = getFile(url, --index);
+    }
+    if (!Files.exists(file)) {
+      throw new ResourceAccessException("No recorded response for " + url);
+    }
+    JSONObject entry;
+    String body;
+    try (BufferedReader reader = new BufferedReader(new InputStreamReader(
+        new GZIPInputStream(Files.newInputStream(file)), StandardCharsets.UTF_8))) {
+      entry = (JSONObject) new JSONParser().parse(reader.readLine());
+      body = readAll(reader);
+    } catch (IOException | ParseException exception) {
+      throw new ResourceAccessException("Unable to replay the response of " + url);
+    }
+    delay(((Number) entry.get("latency")).longValue());
+
+    int status = ((Number) entry.get("status")).intValue();
+    HttpHeaders headers = toHeaders((JSONObject) entry.get("headers"));
+    if (status == 0) {
+      throw new ResourceAccessException(body);
+    }
+    if (status >= 400) {
+      throw toException(status, headers, body.getBytes(StandardCharsets.UTF_8));
+    }
+    return new ResponseEntity<>(body, headers, HttpStatus.valueOf(status));
+  }
+
+  private static RestClientException toException(int status, HttpHeaders headers,
+                                                 byte[] body) {
+    HttpStatus httpStatus;
+    try {
+      httpStatus = HttpStatus.valueOf(status);
+    } catch (IllegalArgumentException iae) {
+      return new UnknownHttpStatusCodeException(status, "", headers, body,
+          StandardCharsets.UTF_8);
+    }
+    return httpStatus.is5xxServerError()
+        ? new HttpServerErrorException(httpStatus, httpStatus.getReasonPhrase(), headers, body,
+            StandardCharsets.UTF_8)
+        : new HttpClientErrorException(httpStatus, httpStatus.getReasonPhrase(), headers, body,
+            StandardCharsets.UTF_8);
+  }
+
+  private void delay(long latency) {
+    long millis = (long) (latency * settings.getFixtureLatencyScale());
+    if (millis > 0) {
+      try {
+        Thread.sleep(millis);
+      } catch (InterruptedException ie) {
+        Thread.currentThread().interrupt();
+      }
+    }
+  }
+
+  private int next(String url) {
+    return requests.computeIfAbsent(url, key -> new AtomicInteger()).getAndIncrement();
+  }
+
+  private Path getFile(String url, int index) {
+    return Paths.get(settings.getFixtureDirectory(), DigestUtils.sha1Hex(url) + "-" + index
+        + ".gz");
+  }
+
+  private static String withoutUserInfo(URI uri) {
+    String url = uri.toString();
+    return uri.getRawUserInfo() == null ? url : url.replace(uri.getRawUserInfo() + "@", "");
+  }
+
+  private static String readAll(Reader reader) throws IOException {
+    StringBuilder text = new StringBuilder();
+    char[] buffer = new char[8192];
+    for (int read = reader.read(buffer); read >= 0; read = reader.read(buffer)) {
+      text.append(buffer, 0, read);
+    }
+    return text.toString();
+  }
+
+  @SuppressWarnings("unchecked")
+  private static JSONObject toJson(HttpHeaders headers) {
+    JSONObject json = new JSONObject();
+    if (headers != null) {
+      for (Map.Entry<String, List<String>> header : headers.entrySet()) {
+        if (!StringUtils.equalsIgnoreCase(header.getKey(), HttpHeaders.AUTHORIZATION)) {
+          JSONArray values = new JSONArray();
+          values.addAll(header.getValue());
+          json.put(header.getKey(), values);
+        }
+      }
+    }
+    return json;
+  }
+
+  private static HttpHeaders toHeaders(JSONObject json) {
+    HttpHeaders headers = new HttpHeaders();
+    if (json != null) {
+      for (Object name : json.keySet()) {
+        for (Object value : (JSONArray) json.get(name)) {
+          headers.add(name.toString(), value.toString());
+        }
+      }
+    }
+    return headers;
+  }
+}
@@ -0,0 +1,166 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.capitalone.dashboard.collector;
+
+import org.apache.commons.lang3.StringUtils;
+import org.json.simple.JSONArray;
+import org.json.simple.JSONObject;
+import org.json.simple.parser.JSONParser;
+import org.json.simple.parser.ParseException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.Collections;
+import java.util.List;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Keeps the state the collector holds in memory, the cached plans and branches and the
+ * quarantined plans, in a local file between restarts, so that the first collection after a
+ * restart costs about as much as any other. The file is written after every collection and
+ * read back before the first one.
+ *
+ * <p>The file is gzipped JSON, whose checksum rejects a truncated or corrupted file. A file of
+ * another version is ignored, and only the plans of the servers still collected from are kept.
+ */
+@Component
+public class StateSnapshot {
+  private static final Logger LOG = LoggerFactory.getLogger(StateSnapshot.class);
+  static final long VERSION = 1;
+
+  private final BambooSettings settings;
+  private final BambooMetadataCache metadataCache;
+  private final PlanQuarantine planQuarantine;
+  private volatile boolean restored;
+
+  /**
+   * Autowired constructor for spring dependency-injection.
+   *
+   * @param settings       autowired.
+   * @param metadataCache  autowired.
+   * @param planQuarantine autowired.
+   */
+  @Autowired
+  public StateSnapshot(BambooSettings settings, BambooMetadataCache metadataCache,
+                       PlanQuarantine planQuarantine) {
+    this.settings = settings;
+    this.metadataCache = metadataCache;
+    this.planQuarantine = planQuarantine;
+  }
+
+  /**
+   * Restores the state written before the collector was restarted, the first time it is
+   * called.
+   */
+  public void restoreOnce() {
+    if (restored) {
+      return;
+    }
+    restored = true;
+    Path file = getFile();
+    if (file == null || !Files.exists(file)) {
+      return;
+    }
+    JSONObject snapshot;
+    try (Reader reader = new InputStreamReader(
+        new GZIPInputStream(Files.newInputStream(file)), StandardCharsets.UTF_8)) {
+      snapshot = (JSONObject) new JSONParser().parse(reader);
+    } catch (IOException | ParseException | ClassCastException exception) {
+      LOG.warn("Ignoring the unreadable state snapshot " + file + ": " + exception.getMessage());
+      return;
+    }
+    Object version = snapshot.get("version");
+    if (!(version instanceof Number) || ((Number) version).longValue() != VERSION) {
+      LOG.warn("Ignoring the state snapshot " + file + " of version " + version);
+      return;
+    }
+    List<String> servers =
+        settings.getServers() == null ? Collections.<String>emptyList() : settings.getServers();
+    try {
+      metadataCache.restore((JSONObject) snapshot.get("metadata"), servers);
+      planQuarantine.restore((JSONArray) snapshot.get("quarantine"));
+    } catch (ClassCastException | NullPointerException exception) {
+      LOG.warn("Ignoring the inconsistent state snapshot " + file, exception);
+      metadataCache.invalidate();
+      planQuarantine.releaseAll();
+      return;
+    }
+    LOG.info("Restored the state snapshot " + file + " written at "
+        + snapshot.get("writtenAt") + ": " + metadataCache.size() + " cached entries, "
+        + planQuarantine.size() + " quarantined plans");
+  }
+
+  /**
+   * Writes the state of the collector, replacing the previous snapshot.
+   */
+  @SuppressWarnings("unchecked")
+  public void save() {
+    Path file = getFile();
+    if (file == null) {
+      return;
+    }
+    JSONObject snapshot = new JSONObject();
+    snapshot.put("version", VERSION);
+    snapshot.put("writtenAt", System.currentTimeMillis());
+    snapshot.put("metadata", metadataCache.toJson());
+    snapshot.put("quarantine", planQuarantine.toJson());
+    Path temp = null;
+    try {
+      Path parent = file.toAbsolutePath().getParent();
+      Files.createDirectories(parent);
+      temp = Files.createTempFile(parent, file.getFileName().toString(), ".tmp");
+      try (Writer writer = new OutputStreamWriter(
+          new GZIPOutputStream(Files.newOutputStream(temp)), StandardCharsets.UTF_8)) {
+        snapshot.writeJSONString(writer);
+      }
+      Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING,
+          StandardCopyOption.ATOMIC_MOVE);
+    } catch (IOException ioe) {
+      LOG.warn("Unable to write the state snapshot " + file, ioe);
+      deleteQuietly(temp);
+    }
+  }
+
+  private static void deleteQuietly(Path temp) {
+    try {
+      if (temp != null) {
+        Files.deleteIfExists(temp);
+      }
+    } catch (IOException ioe) {
+      LOG.debug("Unable to delete " + temp, ioe);
+    }
+  }
+
+  private Path getFile() {
+    return StringUtils.isEmpty(settings.getSnapshotFile())
+        ? null : Paths.get(settings.getSnapshotFile());
+  }
+}
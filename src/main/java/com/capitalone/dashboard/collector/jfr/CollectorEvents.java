@@ -0,0 +1,141 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.capitalone.dashboard.collector.jfr;
+
+/**
+ * Records the activity of the collector as Java Flight Recorder events, so that it can be
+ * told apart from GC and thread activity in a recording. On a JVM without Flight Recorder
+ * nothing is recorded, and while no recording is running the events cost next to nothing.
+ *
+ * <p>Every event is begun before the activity, which returns a handle, and ended with the
+ * handle and the details once it is done. The handle is null when nothing is recorded.
+ */
+public final class CollectorEvents {
+  private static final boolean AVAILABLE = isFlightRecorderAvailable();
+
+  private CollectorEvents() {
+  }
+
+  /**
+   * Checks whether the JVM has Flight Recorder events.
+   *
+   * @return true if events are recorded.
+   */
+  public static boolean isAvailable() {
+    return AVAILABLE;
+  }
+
+  public static Object beginRestCall() {
+    return AVAILABLE ? JfrEvents.beginRestCall() : null;
+  }
+
+  /**
+   * Ends a request to Bamboo.
+   *
+   * @param handle   the handle from {@link #beginRestCall()}.
+   * @param server   the host of the Bamboo server.
+   * @param category the kind of resource requested.
+   * @param status   the HTTP status, 0 if there was no response.
+   * @param bytes    the size of the response.
+   * @param attempt  the number of the attempt, 0 for the first request.
+   */
+  public static void endRestCall(Object handle, String server, String category, int status,
+                                 long bytes, int attempt) {
+    if (handle != null) {
+      JfrEvents.endRestCall(handle, server, category, status, bytes, attempt);
+    }
+  }
+
+  public static Object beginJsonParse() {
+    return AVAILABLE ? JfrEvents.beginJsonParse() : null;
+  }
+
+  /**
+   * Ends the parsing of a response of Bamboo.
+   *
+   * @param handle   the handle from {@link #beginJsonParse()}.
+   * @param category the kind of resource parsed.
+   * @param length   the number of characters parsed.
+   */
+  public static void endJsonParse(Object handle, String category, long length) {
+    if (handle != null) {
+      JfrEvents.endJsonParse(handle, category, length);
+    }
+  }
+
+  public static Object beginRepositoryCall() {
+    return AVAILABLE ? JfrEvents.beginRepositoryCall() : null;
+  }
+
+  /**
+   * Ends a call to a Mongo repository.
+   *
+   * @param handle     the handle from {@link #beginRepositoryCall()}.
+   * @param repository the name of the repository.
+   * @param method     the method called.
+   */
+  public static void endRepositoryCall(Object handle, String repository, String method) {
+    if (handle != null) {
+      JfrEvents.endRepositoryCall(handle, repository, method);
+    }
+  }
+
+  public static Object beginCollectionCycle() {
+    return AVAILABLE ? JfrEvents.beginCollectionCycle() : null;
+  }
+
+  /**
+   * Ends a collection of every Bamboo server.
+   *
+   * @param handle  the handle from {@link #beginCollectionCycle()}.
+   * @param servers the number of servers collected.
+   * @param jobs    the number of jobs stored for the collector.
+   */
+  public static void endCollectionCycle(Object handle, int servers, int jobs) {
+    if (handle != null) {
+      JfrEvents.endCollectionCycle(handle, servers, jobs);
+    }
+  }
+
+  public static Object beginServerPhase() {
+    return AVAILABLE ? JfrEvents.beginServerPhase() : null;
+  }
+
+  /**
+   * Ends a phase of the collection of a Bamboo server.
+   *
+   * @param handle the handle from {@link #beginServerPhase()}.
+   * @param server the server, or all of them for the phases that are not run per server.
+   * @param phase  the name of the phase.
+   * @param count  the number of jobs or builds the phase went through.
+   */
+  public static void endServerPhase(Object handle, String server, String phase, int count) {
+    if (handle != null) {
+      JfrEvents.endServerPhase(handle, server, phase, count);
+    }
+  }
+
+  private static boolean isFlightRecorderAvailable() {
+    try {
+      Class.forName("jdk.jfr.Event", false, CollectorEvents.class.getClassLoader());
+      return true;
+    } catch (ClassNotFoundException | LinkageError exception) {
+      return false;
+    }
+  }
+}
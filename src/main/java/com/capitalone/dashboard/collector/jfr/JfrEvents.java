@@ -0,0 +1,113 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.capitalone.dashboard.collector.jfr;
+
+/**
+ * The only class besides the events that refers to Flight Recorder, so that it is loaded only
+ * on a JVM that has it.
+ */
+final class JfrEvents {
+
+  private JfrEvents() {
+  }
+
+  static Object beginRestCall() {
+    RestCallEvent event = new RestCallEvent();
+    event.begin();
+    return event;
+  }
+
+  static void endRestCall(Object handle, String server, String category, int status,
+                          long bytes, int attempt) {
+    RestCallEvent event = (RestCallEvent) handle;
+    event.end();
+    if (event.shouldCommit()) {
+      event.server = server;
+      event.category = category;
+      event.status = status;
+      event.bytes = bytes;
+      event.attempt = attempt;
+      event.commit();
+    }
+  }
+
+  static Object beginJsonParse() {
+    JsonParseEvent event = new JsonParseEvent();
+    event.begin();
+    return event;
+  }
+
+  static void endJsonParse(Object handle, String category, long length) {
+    JsonParseEvent event = (JsonParseEvent) handle;
+    event.end();
+    if (event.shouldCommit()) {
+      event.category = category;
+      event.length = length;
+      event.commit();
+    }
+  }
+
+  static Object beginRepositoryCall() {
+    RepositoryCallEvent event = new RepositoryCallEvent();
+    event.begin();
+    return event;
+  }
+
+  static void endRepositoryCall(Object handle, String repository, String method) {
+    RepositoryCallEvent event = (RepositoryCallEvent) handle;
+    event.end();
+    if (event.shouldCommit()) {
+      event.repository = repository;
+      event.method = method;
+      event.commit();
+    }
+  }
+
+  static Object beginCollectionCycle() {
+    CollectionCycleEvent event = new CollectionCycleEvent();
+    event.begin();
+    return event;
+  }
+
+  static void endCollectionCycle(Object handle, int servers, int jobs) {
+    CollectionCycleEvent event = (CollectionCycleEvent) handle;
+    event.end();
+    if (event.shouldCommit()) {
+      event.servers = servers;
+      event.jobs = jobs;
+      event.commit();
+    }
+  }
+
+  static Object beginServerPhase() {
+    ServerPhaseEvent event = new ServerPhaseEvent();
+    event.begin();
+    return event;
+  }
+
+  static void endServerPhase(Object handle, String server, String phase, int count) {
+    ServerPhaseEvent event = (ServerPhaseEvent) handle;
+    event.end();
+    if (event.shouldCommit()) {
+      event.server = server;
+      event.phase = phase;
+      event.count = count;
+      event.commit();
+    }
+  }
+}
@@ -0,0 +1,72 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.capitalone.dashboard.collector.jfr;
+
+import org.springframework.beans.factory.config.BeanPostProcessor;
+import org.springframework.data.repository.Repository;
+import org.springframework.stereotype.Component;
+import org.springframework.util.ClassUtils;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Proxy;
+
+/**
+ * Wraps the Mongo repositories so that every call to them is recorded as a
+ * {@link RepositoryCallEvent}. Nothing is wrapped on a JVM without Flight Recorder.
+ */
+@Component
+public class RepositoryEventsPostProcessor implements BeanPostProcessor {
+
+  @Override
+  public Object postProcessBeforeInitialization(Object bean, String beanName) {
+    return bean;
+  }
+
+  @Override
+  public Object postProcessAfterInitialization(Object bean, String beanName) {
+    if (!CollectorEvents.isAvailable() || !(bean instanceof Repository)) {
+      return bean;
+    }
+    Class<?>[] interfaces = ClassUtils.getAllInterfaces(bean);
+    String repository = repositoryName(interfaces, beanName);
+    return Proxy.newProxyInstance(bean.getClass().getClassLoader(), interfaces,
+        (proxy, method, args) -> {
+          if (method.getDeclaringClass() == Object.class) {
+            return method.invoke(bean, args);
+          }
+          Object event = CollectorEvents.beginRepositoryCall();
+          try {
+            return method.invoke(bean, args);
+          } catch (InvocationTargetException ite) {
+            throw ite.getCause();
+          } finally {
+            CollectorEvents.endRepositoryCall(event, repository, method.getName());
+          }
+        });
+  }
+
+  private static String repositoryName(Class<?>[] interfaces, String beanName) {
+    for (Class<?> type : interfaces) {
+      if (Repository.class.isAssignableFrom(type) && type.getPackage() != null
+          && type.getPackage().getName().startsWith("com.capitalone")) {
+        return type.getSimpleName();
+      }
+    }
+    return beanName;
+  }
+}
@@ -0,0 +1,53 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.capitalone.dashboard.collector.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * A request made to a Bamboo server, one per attempt.
+ */
+@Name("hygieia.bamboo.RestCall")
+@Label("Bamboo REST Call")
+@Category({"Hygieia", "Bamboo Collector"})
+@Description("A request made to a Bamboo server")
+class RestCallEvent extends Event {
+  @Label("Server")
+  String server;
+
+  @Label("Category")
+  @Description("The kind of resource requested")
+  String category;
+
+  @Label("Status")
+  @Description("The HTTP status of the response, 0 if there was none")
+  int status;
+
+  @Label("Size")
+  @DataAmount
+  long bytes;
+
+  @Label("Attempt")
+  @Description("The number of the attempt, 0 for the first request")
+  int attempt;
+}
@@ -0,0 +1,76 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.capitalone.dashboard.model;
+
+import org.bson.types.ObjectId;
+import org.springframework.data.mongodb.core.mapping.Document;
+
+/**
+ * The cursor of a job whose whole history is being collected, oldest build first. It lives
+ * outside the job, so that the collection cycle saving the job does not rewind it.
+ */
+@Document(collection = "bamboo_backfills")
+public class BambooBackfill extends BaseModel {
+  private ObjectId collectorItemId;
+  private long buildNumber;
+  private int builds;
+  private long requestedAt;
+
+  public ObjectId getCollectorItemId() {
+    return collectorItemId;
+  }
+
+  public void setCollectorItemId(ObjectId collectorItemId) {
+    this.collectorItemId = collectorItemId;
+  }
+
+  /**
+   * The newest build walked, which the next page starts after, so that results removed from
+   * Bamboo in the meantime do not move the cursor.
+   *
+   * @return the number of the newest build walked.
+   */
+  public long getBuildNumber() {
+    return buildNumber;
+  }
+
+  public void setBuildNumber(long buildNumber) {
+    this.buildNumber = buildNumber;
+  }
+
+  /**
+   * Number of builds stored so far.
+   *
+   * @return the number of builds stored.
+   */
+  public int getBuilds() {
+    return builds;
+  }
+
+  public void setBuilds(int builds) {
+    this.builds = builds;
+  }
+
+  public long getRequestedAt() {
+    return requestedAt;
+  }
+
+  public void setRequestedAt(long requestedAt) {
+    this.requestedAt = requestedAt;
+  }
+}
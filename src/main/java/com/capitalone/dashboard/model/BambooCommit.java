@@ -0,0 +1,102 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.capitalone.dashboard.model;
+
+import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.mapping.Document;
+
+/**
+ * Commit of a Bamboo build, stored once however many builds it is part of. It is keyed by its
+ * repository and revision, joined by '#'.
+ */
+@Document(collection = "bamboo_commits")
+public class BambooCommit {
+  @Id
+  private String id;
+  private String repository;
+  private String revision;
+  private String url;
+  private String author;
+  private String commitLog;
+  private long commitTimestamp;
+  private long numberOfChanges;
+
+  public String getId() {
+    return id;
+  }
+
+  public void setId(String id) {
+    this.id = id;
+  }
+
+  public String getRepository() {
+    return repository;
+  }
+
+  public void setRepository(String repository) {
+    this.repository = repository;
+  }
+
+  public String getRevision() {
+    return revision;
+  }
+
+  public void setRevision(String revision) {
+    this.revision = revision;
+  }
+
+  public String getUrl() {
+    return url;
+  }
+
+  public void setUrl(String url) {
+    this.url = url;
+  }
+
+  public String getAuthor() {
+    return author;
+  }
+
+  public void setAuthor(String author) {
+    this.author = author;
+  }
+
+  public String getCommitLog() {
+    return commitLog;
+  }
+
+  public void setCommitLog(String commitLog) {
+    this.commitLog = commitLog;
+  }
+
+  public long getCommitTimestamp() {
+    return commitTimestamp;
+  }
+
+  public void setCommitTimestamp(long commitTimestamp) {
+    this.commitTimestamp = commitTimestamp;
+  }
+
+  public long getNumberOfChanges() {
+    return numberOfChanges;
+  }
+
+  public void setNumberOfChanges(long numberOfChanges) {
+    this.numberOfChanges = numberOfChanges;
+  }
+}
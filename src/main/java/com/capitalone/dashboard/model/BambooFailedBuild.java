@@ -0,0 +1,116 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.capitalone.dashboard.model;
+
+import org.bson.types.ObjectId;
+import org.springframework.data.mongodb.core.mapping.Document;
+
+/**
+ * A build whose details could not be fetched or parsed. Requests for its details back off
+ * with every failure, until the build is quarantined and no longer requested at all.
+ */
+@Document(collection = "bamboo_failed_builds")
+public class BambooFailedBuild extends BaseModel {
+  private ObjectId collectorItemId;
+  private String number;
+  private String buildUrl;
+  private int failures;
+  private long lastFailure;
+  private long nextAttempt;
+  private boolean quarantined;
+
+  public ObjectId getCollectorItemId() {
+    return collectorItemId;
+  }
+
+  public void setCollectorItemId(ObjectId collectorItemId) {
+    this.collectorItemId = collectorItemId;
+  }
+
+  public String getNumber() {
+    return number;
+  }
+
+  public void setNumber(String number) {
+    this.number = number;
+  }
+
+  public String getBuildUrl() {
+    return buildUrl;
+  }
+
+  public void setBuildUrl(String buildUrl) {
+    this.buildUrl = buildUrl;
+  }
+
+  public int getFailures() {
+    return failures;
+  }
+
+  public void setFailures(int failures) {
+    this.failures = failures;
+  }
+
+  public long getLastFailure() {
+    return lastFailure;
+  }
+
+  public void setLastFailure(long lastFailure) {
+    this.lastFailure = lastFailure;
+  }
+
+  public long getNextAttempt() {
+    return nextAttempt;
+  }
+
+  public void setNextAttempt(long nextAttempt) {
+    this.nextAttempt = nextAttempt;
+  }
+
+  public boolean isQuarantined() {
+    return quarantined;
+  }
+
+  public void setQuarantined(boolean quarantined) {
+    this.quarantined = quarantined;
+  }
+
+  public boolean isDue(long now) {
+    return !quarantined && now >= nextAttempt;
+  }
+
+  /**
+   * Records a failure to fetch the build details. The wait before the next attempt doubles
+   * with every failure, and the build is quarantined once it failed too many times.
+   *
+   * @param now         the current time in milliseconds.
+   * @param minInterval the wait after the first failure in milliseconds.
+   * @param maxInterval the longest wait between attempts in milliseconds.
+   * @param threshold   the number of failures that quarantines the build, 0 to never do so.
+   */
+  public void recordFailure(long now, long minInterval, long maxInterval, int threshold) {
+    long backoff = minInterval << Math.min(failures, 30);
+    if (maxInterval > 0) {
+      backoff = Math.min(backoff, maxInterval);
+    }
+    failures++;
+    lastFailure = now;
+    nextAttempt = now + backoff;
+    quarantined = threshold > 0 && failures >= threshold;
+  }
+}
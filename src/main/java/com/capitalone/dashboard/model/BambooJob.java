@@ -17,10 +17,108 @@
 
 package com.capitalone.dashboard.model;
 
+import org.springframework.data.annotation.Transient;
+
+import java.util.HashMap;
+import java.util.Map;
+
 /**
  * CollectorItem extension to store the instance, build job and build url.
  */
 public class BambooJob extends JobCollectorItem {
+  /**
+   * Newest build number collected for the plan and each of its branches, keyed by plan key.
+   */
+  private Map<String, Long> collectedBuildNumbers = new HashMap<>();
+
+  /**
+   * Newest build number seen on Bamboo during the current discovery, keyed by plan key.
+   */
+  @Transient
+  private Map<String, Long> discoveredBuildNumbers = new HashMap<>();
+
+  /**
+   * Moving average of the duration of the collected builds, in milliseconds.
+   */
+  private long averageBuildDuration;
+
+  /**
+   * When the job was first found missing from its server, or 0 if it was not.
+   */
+  private long missingSince;
+
+  /**
+   * Number of collections in a row the job was missing from its server.
+   */
+  private int missingCycles;
+
+  public Map<String, Long> getCollectedBuildNumbers() {
+    return collectedBuildNumbers;
+  }
+
+  public void setCollectedBuildNumbers(Map<String, Long> collectedBuildNumbers) {
+    this.collectedBuildNumbers = collectedBuildNumbers;
+  }
+
+  public Map<String, Long> getDiscoveredBuildNumbers() {
+    return discoveredBuildNumbers;
+  }
+
+  public void setDiscoveredBuildNumbers(Map<String, Long> discoveredBuildNumbers) {
+    this.discoveredBuildNumbers = discoveredBuildNumbers;
+  }
+
+  public long getAverageBuildDuration() {
+    return averageBuildDuration;
+  }
+
+  public void setAverageBuildDuration(long averageBuildDuration) {
+    this.averageBuildDuration = averageBuildDuration;
+  }
+
+  public long getMissingSince() {
+    return missingSince;
+  }
+
+  public void setMissingSince(long missingSince) {
+    this.missingSince = missingSince;
+  }
+
+  public int getMissingCycles() {
+    return missingCycles;
+  }
+
+  public void setMissingCycles(int missingCycles) {
+    this.missingCycles = missingCycles;
+  }
+
+  /**
+   * Folds the duration of a collected build into the average build duration.
+   *
+   * @param duration the duration of the build in milliseconds.
+   */
+  public void addBuildDuration(long duration) {
+    if (duration <= 0) {
+      return;
+    }
+    averageBuildDuration = averageBuildDuration == 0
+        ? duration : (averageBuildDuration * 4 + duration) / 5;
+  }
+
+  /**
+   * Moves the high-water marks up to the build numbers seen during discovery.
+   *
+   * @param discovered the build numbers seen on Bamboo, keyed by plan key.
+   * @return true if the stored marks changed and the job needs saving.
+   */
+  public boolean updateCollectedBuildNumbers(Map<String, Long> discovered) {
+    if (discovered == null || discovered.isEmpty() || discovered.equals(collectedBuildNumbers)) {
+      return false;
+    }
+    collectedBuildNumbers = new HashMap<>(discovered);
+    return true;
+  }
+
   @Override
   public boolean equals(Object obj) {
     if (this == obj) {
@@ -0,0 +1,119 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.capitalone.dashboard.model;
+
+import org.bson.types.ObjectId;
+import org.springframework.data.mongodb.core.mapping.Document;
+
+/**
+ * A build that was still running when its details were last requested. Stores when the build
+ * is expected to finish so its details are only requested again from then on.
+ */
+@Document(collection = "bamboo_pending_builds")
+public class BambooPendingBuild extends BaseModel {
+  private ObjectId collectorItemId;
+  private String number;
+  private String buildUrl;
+  private long startTime;
+  private long expectedDuration;
+  private int attempts;
+  private long nextPollTime;
+
+  public ObjectId getCollectorItemId() {
+    return collectorItemId;
+  }
+
+  public void setCollectorItemId(ObjectId collectorItemId) {
+    this.collectorItemId = collectorItemId;
+  }
+
+  public String getNumber() {
+    return number;
+  }
+
+  public void setNumber(String number) {
+    this.number = number;
+  }
+
+  public String getBuildUrl() {
+    return buildUrl;
+  }
+
+  public void setBuildUrl(String buildUrl) {
+    this.buildUrl = buildUrl;
+  }
+
+  public long getStartTime() {
+    return startTime;
+  }
+
+  public void setStartTime(long startTime) {
+    this.startTime = startTime;
+  }
+
+  public long getExpectedDuration() {
+    return expectedDuration;
+  }
+
+  public void setExpectedDuration(long expectedDuration) {
+    this.expectedDuration = expectedDuration;
+  }
+
+  public int getAttempts() {
+    return attempts;
+  }
+
+  public void setAttempts(int attempts) {
+    this.attempts = attempts;
+  }
+
+  public long getNextPollTime() {
+    return nextPollTime;
+  }
+
+  public void setNextPollTime(long nextPollTime) {
+    this.nextPollTime = nextPollTime;
+  }
+
+  public boolean isDue(long now) {
+    return now >= nextPollTime;
+  }
+
+  /**
+   * Schedules the next request for the details of the build. Until the build is expected to
+   * be finished the next request waits for the expected end, after that the wait doubles
+   * with every request that still finds the build running.
+   *
+   * @param now         the current time in milliseconds.
+   * @param minInterval the shortest wait between requests in milliseconds.
+   * @param maxInterval the longest wait between requests in milliseconds.
+   */
+  public void scheduleNextPoll(long now, long minInterval, long maxInterval) {
+    long expectedEnd = startTime + expectedDuration;
+    if (expectedDuration > 0 && now < expectedEnd) {
+      nextPollTime = Math.max(expectedEnd, now + minInterval);
+      return;
+    }
+    long backoff = minInterval << Math.min(attempts, 30);
+    if (maxInterval > 0) {
+      backoff = Math.min(backoff, maxInterval);
+    }
+    attempts++;
+    nextPollTime = now + backoff;
+  }
+}
@@ -0,0 +1,127 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.capitalone.dashboard.rest;
+
+import com.capitalone.dashboard.collector.BuildBackfill;
+import com.capitalone.dashboard.model.BambooBackfill;
+import com.capitalone.dashboard.model.BambooCollector;
+import com.capitalone.dashboard.model.BambooJob;
+import com.capitalone.dashboard.repository.BambooBackfillRepository;
+import com.capitalone.dashboard.repository.BambooCollectorRepository;
+import com.capitalone.dashboard.repository.BambooJobRepository;
+import org.bson.types.ObjectId;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestMethod;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Starts, lists and cancels the backfilling of the history of jobs.
+ */
+@RestController
+@RequestMapping("/backfill")
+public class BackfillController {
+  private final BuildBackfill buildBackfill;
+  private final BambooBackfillRepository bambooBackfillRepository;
+  private final BambooCollectorRepository bambooCollectorRepository;
+  private final BambooJobRepository bambooJobRepository;
+
+  /**
+   * Autowired constructor for spring dependency-injection.
+   *
+   * @param buildBackfill             autowired.
+   * @param bambooBackfillRepository  autowired.
+   * @param bambooCollectorRepository autowired.
+   * @param bambooJobRepository       autowired.
+   */
+  @Autowired
+  public BackfillController(BuildBackfill buildBackfill,
+                            BambooBackfillRepository bambooBackfillRepository,
+                            BambooCollectorRepository bambooCollectorRepository,
+                            BambooJobRepository bambooJobRepository) {
+    this.buildBackfill = buildBackfill;
+    this.bambooBackfillRepository = bambooBackfillRepository;
+    this.bambooCollectorRepository = bambooCollectorRepository;
+    this.bambooJobRepository = bambooJobRepository;
+  }
+
+  @RequestMapping(method = RequestMethod.GET, produces = MediaType.APPLICATION_JSON_VALUE)
+  public Iterable<BambooBackfill> backfills() {
+    return bambooBackfillRepository.findAll();
+  }
+
+  /**
+   * Starts backfilling a job.
+   *
+   * @param id the id of the {@link BambooJob}.
+   * @return the cursor of the backfill, or not found if there is no such job.
+   */
+  @RequestMapping(value = "/jobs/{id}", method = RequestMethod.POST,
+      produces = MediaType.APPLICATION_JSON_VALUE)
+  public ResponseEntity<BambooBackfill> backfillJob(@PathVariable ObjectId id) {
+    BambooJob job = bambooJobRepository.findOne(id);
+    if (job == null) {
+      return new ResponseEntity<>(HttpStatus.NOT_FOUND);
+    }
+    return new ResponseEntity<>(buildBackfill.start(job), HttpStatus.ACCEPTED);
+  }
+
+  /**
+   * Starts backfilling every enabled job of a server.
+   *
+   * @param instanceUrl the URL of the Bamboo instance.
+   * @return the cursors of the backfills.
+   */
+  @RequestMapping(value = "/servers", method = RequestMethod.POST,
+      produces = MediaType.APPLICATION_JSON_VALUE)
+  public ResponseEntity<List<BambooBackfill>> backfillServer(@RequestParam String instanceUrl) {
+    BambooCollector collector = bambooCollectorRepository.findByName("Bamboo");
+    if (collector == null) {
+      return new ResponseEntity<>(HttpStatus.NOT_FOUND);
+    }
+    List<BambooBackfill> backfills = new ArrayList<>();
+    for (BambooJob job : bambooJobRepository.findEnabledJobs(collector.getId(), instanceUrl)) {
+      backfills.add(buildBackfill.start(job));
+    }
+    return new ResponseEntity<>(backfills, HttpStatus.ACCEPTED);
+  }
+
+  /**
+   * Cancels backfilling a job.
+   *
+   * @param id the id of the {@link BambooJob}.
+   * @return no content, or not found if the job is not being backfilled.
+   */
+  @RequestMapping(value = "/jobs/{id}", method = RequestMethod.DELETE)
+  public ResponseEntity<Void> cancelBackfill(@PathVariable ObjectId id) {
+    BambooBackfill backfill = bambooBackfillRepository.findByCollectorItemId(id);
+    if (backfill == null) {
+      return new ResponseEntity<>(HttpStatus.NOT_FOUND);
+    }
+    bambooBackfillRepository.delete(backfill);
+    return new ResponseEntity<>(HttpStatus.NO_CONTENT);
+  }
+}
@@ -0,0 +1,91 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.capitalone.dashboard.rest;
+
+import com.capitalone.dashboard.collector.BambooSettings;
+import com.capitalone.dashboard.collector.CollectionFreshness;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestMethod;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Reports how stale the collected data is, and whether it is within the freshness SLO.
+ */
+@RestController
+@RequestMapping("/freshness")
+public class FreshnessController {
+  private static final String UP = "UP";
+  private static final String DEGRADED = "DEGRADED";
+
+  private final CollectionFreshness collectionFreshness;
+  private final BambooSettings settings;
+
+  /**
+   * Autowired constructor for spring dependency-injection.
+   *
+   * @param collectionFreshness autowired.
+   * @param settings            autowired.
+   */
+  @Autowired
+  public FreshnessController(CollectionFreshness collectionFreshness, BambooSettings settings) {
+    this.collectionFreshness = collectionFreshness;
+    this.settings = settings;
+  }
+
+  /**
+   * The time since every server was polled, and the jobs that are the most behind.
+   *
+   * @param limit the largest number of jobs to list.
+   * @return the freshness of the servers and jobs.
+   */
+  @RequestMapping(method = RequestMethod.GET, produces = MediaType.APPLICATION_JSON_VALUE)
+  public Map<String, Object> freshness(@RequestParam(defaultValue = "20") int limit) {
+    Map<String, Object> freshness = new LinkedHashMap<>();
+    freshness.put("status", collectionFreshness.getViolations().isEmpty() ? UP : DEGRADED);
+    freshness.put("slo", settings.getFreshnessSlo());
+    freshness.put("servers", collectionFreshness.getServers());
+    freshness.put("jobCount", collectionFreshness.size());
+    freshness.put("jobs", collectionFreshness.getStalestJobs(limit));
+    return freshness;
+  }
+
+  /**
+   * Readiness of the collection, for a load balancer or an orchestrator to probe.
+   *
+   * @return up, or service unavailable with the violations of the SLO when degraded.
+   */
+  @RequestMapping(value = "/health", method = RequestMethod.GET,
+      produces = MediaType.APPLICATION_JSON_VALUE)
+  public ResponseEntity<Map<String, Object>> health() {
+    List<String> violations = collectionFreshness.getViolations();
+    Map<String, Object> health = new LinkedHashMap<>();
+    health.put("status", violations.isEmpty() ? UP : DEGRADED);
+    health.put("violations", violations);
+    return new ResponseEntity<>(health,
+        violations.isEmpty() ? HttpStatus.OK : HttpStatus.SERVICE_UNAVAILABLE);
+  }
+}
@@ -0,0 +1,57 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.capitalone.dashboard.rest;
+
+import com.capitalone.dashboard.collector.BambooMetadataCache;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestMethod;
+import org.springframework.web.bind.annotation.RestController;
+
+/**
+ * Drops the cached plans and branches, so that a change in Bamboo shows up on the next
+ * collection rather than after the refresh interval.
+ */
+@RestController
+@RequestMapping("/metadata")
+public class MetadataController {
+  private final BambooMetadataCache metadataCache;
+
+  /**
+   * Autowired constructor for spring dependency-injection.
+   *
+   * @param metadataCache autowired.
+   */
+  @Autowired
+  public MetadataController(BambooMetadataCache metadataCache) {
+    this.metadataCache = metadataCache;
+  }
+
+  /**
+   * Invalidates the plans and branches cached for every instance.
+   *
+   * @return no content.
+   */
+  @RequestMapping(value = "/cache", method = RequestMethod.DELETE)
+  public ResponseEntity<Void> invalidate() {
+    metadataCache.invalidate();
+    return new ResponseEntity<>(HttpStatus.NO_CONTENT);
+  }
+}
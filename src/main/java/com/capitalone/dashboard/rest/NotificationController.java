@@ -0,0 +1,68 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.capitalone.dashboard.rest;
+
+import com.capitalone.dashboard.collector.BuildNotification;
+import com.capitalone.dashboard.collector.BuildNotificationQueue;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestMethod;
+import org.springframework.web.bind.annotation.RestController;
+
+/**
+ * Receives the notifications Bamboo sends when a build completes, and queues the build to be
+ * collected straight away.
+ */
+@RestController
+@RequestMapping("/notifications")
+public class NotificationController {
+  private final BuildNotificationQueue buildNotificationQueue;
+
+  /**
+   * Autowired constructor for spring dependency-injection.
+   *
+   * @param buildNotificationQueue autowired.
+   */
+  @Autowired
+  public NotificationController(BuildNotificationQueue buildNotificationQueue) {
+    this.buildNotificationQueue = buildNotificationQueue;
+  }
+
+  /**
+   * Queues a completed build to be collected.
+   *
+   * @param notification the plan key and number of the build.
+   * @return accepted, bad request if the build is not named, or service unavailable if
+   *     notifications are turned off or too many are waiting.
+   */
+  @RequestMapping(value = "/builds", method = RequestMethod.POST,
+      consumes = MediaType.APPLICATION_JSON_VALUE)
+  public ResponseEntity<Void> buildCompleted(@RequestBody BuildNotification notification) {
+    if (!notification.isValid()) {
+      return new ResponseEntity<>(HttpStatus.BAD_REQUEST);
+    }
+    if (!buildNotificationQueue.offer(notification)) {
+      return new ResponseEntity<>(HttpStatus.SERVICE_UNAVAILABLE);
+    }
+    return new ResponseEntity<>(HttpStatus.ACCEPTED);
+  }
+}
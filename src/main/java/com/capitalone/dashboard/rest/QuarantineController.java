@@ -0,0 +1,136 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.capitalone.dashboard.rest;
+
+import com.capitalone.dashboard.collector.PlanQuarantine;
+import com.capitalone.dashboard.model.BambooFailedBuild;
+import com.capitalone.dashboard.model.BambooJob;
+import com.capitalone.dashboard.repository.BambooFailedBuildRepository;
+import com.capitalone.dashboard.repository.BambooJobRepository;
+import org.bson.types.ObjectId;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestMethod;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.util.List;
+
+/**
+ * Lists the builds whose details kept failing and are no longer requested, and the plans and
+ * branches that are waiting to be listed again, and releases them so they are requested again.
+ */
+@RestController
+@RequestMapping("/quarantine")
+public class QuarantineController {
+  private final BambooFailedBuildRepository bambooFailedBuildRepository;
+  private final BambooJobRepository bambooJobRepository;
+  private final PlanQuarantine planQuarantine;
+
+  /**
+   * Autowired constructor for spring dependency-injection.
+   *
+   * @param bambooFailedBuildRepository autowired.
+   * @param bambooJobRepository         autowired.
+   * @param planQuarantine              autowired.
+   */
+  @Autowired
+  public QuarantineController(BambooFailedBuildRepository bambooFailedBuildRepository,
+                              BambooJobRepository bambooJobRepository,
+                              PlanQuarantine planQuarantine) {
+    this.bambooFailedBuildRepository = bambooFailedBuildRepository;
+    this.bambooJobRepository = bambooJobRepository;
+    this.planQuarantine = planQuarantine;
+  }
+
+  @RequestMapping(value = "/builds", method = RequestMethod.GET,
+      produces = MediaType.APPLICATION_JSON_VALUE)
+  public List<BambooFailedBuild> quarantinedBuilds() {
+    return bambooFailedBuildRepository.findByQuarantinedTrue();
+  }
+
+  /**
+   * Releases every quarantined build.
+   *
+   * @return no content.
+   */
+  @RequestMapping(value = "/builds", method = RequestMethod.DELETE)
+  public ResponseEntity<Void> releaseBuilds() {
+    for (BambooFailedBuild failed : bambooFailedBuildRepository.findByQuarantinedTrue()) {
+      release(failed);
+    }
+    return new ResponseEntity<>(HttpStatus.NO_CONTENT);
+  }
+
+  /**
+   * Releases a quarantined build.
+   *
+   * @param id the id of the {@link BambooFailedBuild}.
+   * @return no content, or not found if there is no such build.
+   */
+  @RequestMapping(value = "/builds/{id}", method = RequestMethod.DELETE)
+  public ResponseEntity<Void> releaseBuild(@PathVariable ObjectId id) {
+    BambooFailedBuild failed = bambooFailedBuildRepository.findOne(id);
+    if (failed == null) {
+      return new ResponseEntity<>(HttpStatus.NOT_FOUND);
+    }
+    release(failed);
+    return new ResponseEntity<>(HttpStatus.NO_CONTENT);
+  }
+
+  @RequestMapping(value = "/plans", method = RequestMethod.GET,
+      produces = MediaType.APPLICATION_JSON_VALUE)
+  public List<PlanQuarantine.PlanFailure> quarantinedPlans() {
+    return planQuarantine.getFailures();
+  }
+
+  /**
+   * Releases quarantined plans and branches.
+   *
+   * @param url the url of the plan or branch to release, or every one when missing.
+   * @return no content, or not found if the url is not quarantined.
+   */
+  @RequestMapping(value = "/plans", method = RequestMethod.DELETE)
+  public ResponseEntity<Void> releasePlans(@RequestParam(required = false) String url) {
+    if (url == null) {
+      planQuarantine.releaseAll();
+    } else if (!planQuarantine.release(url)) {
+      return new ResponseEntity<>(HttpStatus.NOT_FOUND);
+    }
+    return new ResponseEntity<>(HttpStatus.NO_CONTENT);
+  }
+
+  /**
+   * Forgets the failures of a build, and the high-water marks of its job so that the plan is
+   * listed again and the build is picked up on the next collection.
+   *
+   * @param failed the {@link BambooFailedBuild} to release.
+   */
+  private void release(BambooFailedBuild failed) {
+    bambooFailedBuildRepository.delete(failed);
+    BambooJob job = bambooJobRepository.findOne(failed.getCollectorItemId());
+    if (job != null && !job.getCollectedBuildNumbers().isEmpty()) {
+      job.getCollectedBuildNumbers().clear();
+      bambooJobRepository.save(job);
+    }
+  }
+}
@@ -0,0 +1,58 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.capitalone.dashboard.rest;
+
+import com.capitalone.dashboard.collector.CycleTrace;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestMethod;
+import org.springframework.web.bind.annotation.RestController;
+
+/**
+ * Serves the trace of the last collection cycle, when tracing is enabled.
+ */
+@RestController
+@RequestMapping("/trace")
+public class TraceController {
+  private final CycleTrace cycleTrace;
+
+  /**
+   * Autowired constructor for spring dependency-injection.
+   *
+   * @param cycleTrace autowired.
+   */
+  @Autowired
+  public TraceController(CycleTrace cycleTrace) {
+    this.cycleTrace = cycleTrace;
+  }
+
+  /**
+   * The span tree and summary of the last traced cycle.
+   *
+   * @return the trace as plain text, or not found if no cycle was traced.
+   */
+  @RequestMapping(method = RequestMethod.GET, produces = MediaType.TEXT_PLAIN_VALUE)
+  public ResponseEntity<String> lastTrace() {
+    String report = cycleTrace.getLastReport();
+    return report == null
+        ? new ResponseEntity<>(HttpStatus.NOT_FOUND) : new ResponseEntity<>(report, HttpStatus.OK);
+  }
+}
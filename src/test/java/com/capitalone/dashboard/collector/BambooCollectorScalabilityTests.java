@@ -0,0 +1,332 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.capitalone.dashboard.collector;
+
+import com.capitalone.dashboard.model.BambooCollector;
+import com.capitalone.dashboard.model.BambooJob;
+import com.capitalone.dashboard.model.Build;
+import com.capitalone.dashboard.model.CollectorItem;
+import com.capitalone.dashboard.model.CollectorType;
+import com.capitalone.dashboard.model.Component;
+import com.capitalone.dashboard.repository.BambooCollectorRepository;
+import com.capitalone.dashboard.repository.BambooFailedBuildRepository;
+import com.capitalone.dashboard.repository.BambooJobRepository;
+import com.capitalone.dashboard.repository.BambooPendingBuildRepository;
+import com.capitalone.dashboard.repository.BuildRepository;
+import com.capitalone.dashboard.repository.ComponentRepository;
+import com.capitalone.dashboard.util.Supplier;
+import org.bson.types.ObjectId;
+import org.junit.Test;
+import org.springframework.data.mongodb.core.MongoOperations;
+import org.springframework.http.HttpEntity;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.scheduling.TaskScheduler;
+import org.springframework.web.client.RestOperations;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.lessThan;
+import static org.hamcrest.Matchers.lessThanOrEqualTo;
+import static org.junit.Assert.assertThat;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyListOf;
+import static org.mockito.Matchers.anySetOf;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+import static org.mockito.Mockito.withSettings;
+
+/**
+ * Drives discovery and whole collections against synthetic Bamboo servers of 1k, 10k and 50k
+ * plans, failing when the time, allocations or requests of a cycle grow faster than the number
+ * of plans. Slow, so only run with the scalability profile: {@code mvn test -Pscalability}.
+ */
+public class BambooCollectorScalabilityTests {
+
+    private static final String SERVER = "http://bamboo/";
+    private static final int[] PLANS = {1000, 10000, 50000};
+    private static final int BUILDS_PER_PLAN = 2;
+
+    private static final long DISCOVERY_MILLIS_PER_PLAN = 2;
+    private static final long DISCOVERY_BYTES_PER_PLAN = 100 * 1024;
+    private static final long COLLECT_MILLIS_PER_PLAN = 10;
+    private static final long COLLECT_BYTES_PER_PLAN = 400 * 1024;
+    /** How much more a plan may cost in the largest server than in the one before it. */
+    private static final double GROWTH = 3.0;
+
+    private static final Pattern RESULT = Pattern.compile(".*/result/([^/?]+)/(\\d+).*");
+    private static final Pattern RESULTS = Pattern.compile(".*/result/([^/?]+).*");
+
+    @Test
+    public void getInstanceJobs_growsLinearlyWithPlans() {
+        Cost previous = null;
+        for (int plans : PLANS) {
+            SyntheticServer server = new SyntheticServer(plans);
+            DefaultBambooClient client = server.client();
+
+            Cost cost = Cost.measure(plans, server.requests, () -> {
+                Map<BambooJob, Set<Build>> jobs = client.getInstanceJobs(SERVER);
+                assertThat(jobs.size(), is(plans));
+            });
+
+            // the plans, then the results and the branches of every plan
+            assertThat(cost.requests, is(1 + 2 * plans));
+            cost.assertWithin(DISCOVERY_MILLIS_PER_PLAN, DISCOVERY_BYTES_PER_PLAN, previous);
+            previous = cost;
+        }
+    }
+
+    @Test
+    public void collect_growsLinearlyWithPlans() {
+        Cost previous = null;
+        for (int plans : PLANS) {
+            SyntheticServer server = new SyntheticServer(plans);
+            InMemoryRepositories repositories = new InMemoryRepositories(plans);
+            BambooCollectorTask task = repositories.task(server.client(), server.settings);
+
+            Cost cost = Cost.measure(plans, server.requests,
+                () -> task.collect(repositories.collector));
+
+            assertThat(repositories.builds.size(), is(plans * BUILDS_PER_PLAN));
+            // discovery, then the details of every new build
+            assertThat(cost.requests, is(1 + 2 * plans + BUILDS_PER_PLAN * plans));
+            cost.assertWithin(COLLECT_MILLIS_PER_PLAN, COLLECT_BYTES_PER_PLAN, previous);
+            previous = cost;
+        }
+    }
+
+    /**
+     * A Bamboo server whose plans, results and builds are made up from the urls requested.
+     */
+    private static final class SyntheticServer {
+        private final int plans;
+        private final AtomicInteger requests = new AtomicInteger();
+        private final BambooSettings settings = new BambooSettings();
+        private final RestOperations rest = mock(RestOperations.class, withSettings().stubOnly());
+
+        SyntheticServer(int plans) {
+            this.plans = plans;
+            settings.setServers(Collections.singletonList(SERVER));
+            settings.setChangeDetection(false);
+            when(rest.exchange(any(URI.class), eq(HttpMethod.GET), any(HttpEntity.class),
+                    eq(String.class))).thenAnswer(invocation -> {
+                        requests.incrementAndGet();
+                        return new ResponseEntity<>(respond(invocation.getArguments()[0].toString()),
+                                HttpStatus.OK);
+                    });
+        }
+
+        DefaultBambooClient client() {
+            Supplier<RestOperations> supplier = () -> rest;
+            return new DefaultBambooClient(supplier, settings, new BambooMetadataCache(settings),
+                    new PlanQuarantine(settings), new CycleTrace(settings),
+                    new RestFixture(settings),
+                    new CommitStore(mock(MongoOperations.class), settings),
+                    new PayloadCapture(settings),
+                    new ClusterCoordinator(mock(MongoOperations.class), settings));
+        }
+
+        private String respond(String url) {
+            if (url.contains("/branch")) {
+                return "{\"branches\":{\"branch\":[]}}";
+            }
+            Matcher result = RESULT.matcher(url);
+            if (result.matches()) {
+                return "{\"buildNumber\":" + result.group(2) + ",\"finished\":true,"
+                        + "\"buildStartedTime\":\"2020-01-01T10:00:00.000+00:00\","
+                        + "\"buildDuration\":60000,\"buildState\":\"Successful\","
+                        + "\"changes\":{\"change\":[]}}";
+            }
+            if (RESULTS.matcher(url).matches()) {
+                StringBuilder json = new StringBuilder("{\"results\":{\"result\":[");
+                for (int number = BUILDS_PER_PLAN; number > 0; number--) {
+                    json.append("{\"buildNumber\":").append(number).append('}')
+                            .append(number > 1 ? "," : "");
+                }
+                return json.append("]}}").toString();
+            }
+            StringBuilder json = new StringBuilder("{\"plans\":{\"plan\":[");
+            for (int plan = 0; plan < plans; plan++) {
+                json.append(plan > 0 ? "," : "").append("{\"key\":\"PROJ-PLAN").append(plan)
+                        .append("\",\"link\":{\"href\":\"").append(SERVER)
+                        .append("rest/api/latest/plan/PROJ-PLAN").append(plan).append("\"}}");
+            }
+            return json.append("]}}").toString();
+        }
+    }
+
+    /**
+     * Repositories kept in maps, holding an enabled job on a dashboard for every plan.
+     */
+    private static final class InMemoryRepositories {
+        private final BambooCollector collector =
+                BambooCollector.prototype(Collections.singletonList(SERVER), null);
+        private final Map<BambooJob, BambooJob> jobs = new LinkedHashMap<>();
+        private final Map<String, Build> builds = new HashMap<>();
+        private final BambooJobRepository jobRepository =
+                mock(BambooJobRepository.class, withSettings().stubOnly());
+        private final BuildRepository buildRepository =
+                mock(BuildRepository.class, withSettings().stubOnly());
+        private final ComponentRepository componentRepository =
+                mock(ComponentRepository.class, withSettings().stubOnly());
+
+        @SuppressWarnings("unchecked")
+        InMemoryRepositories(int plans) {
+            collector.setId(new ObjectId());
+            Component component = new Component();
+            for (int plan = 0; plan < plans; plan++) {
+                BambooJob job = new BambooJob();
+                job.setId(new ObjectId());
+                job.setCollectorId(collector.getId());
+                job.setInstanceUrl(SERVER);
+                job.setJobName("PROJ-PLAN" + plan);
+                job.setEnabled(true);
+                jobs.put(job, job);
+                CollectorItem item = new CollectorItem();
+                item.setId(job.getId());
+                item.setCollectorId(collector.getId());
+                component.addCollectorItem(CollectorType.Build, item);
+            }
+            when(componentRepository.findAll()).thenReturn(Collections.singletonList(component));
+
+            when(jobRepository.findByCollectorIdIn(anySetOf(ObjectId.class)))
+                    .thenAnswer(invocation -> new ArrayList<>(jobs.values()));
+            when(jobRepository.findEnabledJobs(any(ObjectId.class), anyString()))
+                    .thenAnswer(invocation -> {
+                        List<BambooJob> enabled = new ArrayList<>();
+                        for (BambooJob job : jobs.values()) {
+                            if (job.isEnabled()
+                                    && job.getInstanceUrl().equals(invocation.getArguments()[1])) {
+                                enabled.add(job);
+                            }
+                        }
+                        return enabled;
+                    });
+            when(jobRepository.save(any(BambooJob.class))).thenAnswer(invocation -> {
+                BambooJob job = (BambooJob) invocation.getArguments()[0];
+                jobs.put(job, job);
+                return job;
+            });
+            when(jobRepository.save(anyListOf(BambooJob.class))).thenAnswer(invocation -> {
+                for (BambooJob job : (Iterable<BambooJob>) invocation.getArguments()[0]) {
+                    jobs.put(job, job);
+                }
+                return invocation.getArguments()[0];
+            });
+
+            when(buildRepository.findByCollectorItemIdAndNumber(any(ObjectId.class), anyString()))
+                    .thenAnswer(invocation -> builds.get(invocation.getArguments()[0] + "#"
+                            + invocation.getArguments()[1]));
+            when(buildRepository.save(any(Build.class))).thenAnswer(invocation -> {
+                Build build = (Build) invocation.getArguments()[0];
+                builds.put(build.getCollectorItemId() + "#" + build.getNumber(), build);
+                return build;
+            });
+        }
+
+        BambooCollectorTask task(BambooClient client, BambooSettings settings) {
+            return new BambooCollectorTask(mock(TaskScheduler.class),
+                    mock(BambooCollectorRepository.class), jobRepository, buildRepository, client,
+                    settings, componentRepository,
+                    mock(BambooPendingBuildRepository.class, withSettings().stubOnly()),
+                    mock(BambooFailedBuildRepository.class, withSettings().stubOnly()),
+                    mock(ClusterCoordinator.class), new PlanQuarantine(settings),
+                    new CycleTrace(settings), new CollectionFreshness(settings),
+                    mock(StateSnapshot.class), mock(DashboardEnablement.class),
+                    mock(CommitStore.class), new JobLocks());
+        }
+    }
+
+    /**
+     * The wall time, bytes allocated and requests made by a run against a server.
+     */
+    private static final class Cost {
+        private final int plans;
+        private final long millis;
+        private final long bytes;
+        private final int requests;
+
+        private Cost(int plans, long millis, long bytes, int requests) {
+            this.plans = plans;
+            this.millis = millis;
+            this.bytes = bytes;
+            this.requests = requests;
+        }
+
+        static Cost measure(int plans, AtomicInteger requests, Runnable run) {
+            System.gc();
+            long bytes = allocatedBytes();
+            long start = System.nanoTime();
+            run.run();
+            long millis = (System.nanoTime() - start) / 1000000;
+            bytes = bytes < 0 ? -1 : allocatedBytes() - bytes;
+            return new Cost(plans, millis, bytes, requests.get());
+        }
+
+        void assertWithin(long millisPerPlan, long bytesPerPlan, Cost previous) {
+            assertThat("milliseconds of " + this, millis,
+                    lessThanOrEqualTo(millisPerPlan * plans));
+            if (bytes >= 0) {
+                assertThat("bytes allocated by " + this, bytes,
+                        lessThanOrEqualTo(bytesPerPlan * plans));
+            }
+            if (previous != null) {
+                // a little slack for the fixed costs, which only the smaller server feels
+                assertThat("milliseconds per plan of " + this + " against " + previous,
+                        (double) millis / plans,
+                        lessThan(GROWTH * Math.max(1.0, previous.millis) / previous.plans));
+                if (bytes >= 0) {
+                    assertThat("bytes per plan of " + this + " against " + previous,
+                            (double) bytes / plans,
+                            lessThan(GROWTH * previous.bytes / previous.plans));
+                }
+            }
+        }
+
+        @Override
+        public String toString() {
+            return plans + " plans: " + millis + "ms, " + bytes + " bytes allocated, "
+                    + requests + " requests";
+        }
+
+        private static long allocatedBytes() {
+            ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+            if (!(threads instanceof com.sun.management.ThreadMXBean)) {
+                return -1;
+            }
+            return ((com.sun.management.ThreadMXBean) threads)
+                    .getThreadAllocatedBytes(Thread.currentThread().getId());
+        }
+    }
+}
@@ -18,31 +18,49 @@
 package com.capitalone.dashboard.collector;
 
 import com.capitalone.dashboard.model.BambooCollector;
+import com.capitalone.dashboard.model.BambooFailedBuild;
 import com.capitalone.dashboard.model.BambooJob;
+import com.capitalone.dashboard.model.BambooPendingBuild;
 import com.capitalone.dashboard.model.Build;
+import com.capitalone.dashboard.model.BuildStatus;
 import com.capitalone.dashboard.model.Component;
 import com.capitalone.dashboard.repository.BambooCollectorRepository;
+import com.capitalone.dashboard.repository.BambooFailedBuildRepository;
 import com.capitalone.dashboard.repository.BambooJobRepository;
+import com.capitalone.dashboard.repository.BambooPendingBuildRepository;
 import com.capitalone.dashboard.repository.BuildRepository;
 import com.capitalone.dashboard.repository.ComponentRepository;
 import com.google.common.collect.Sets;
 import org.bson.types.ObjectId;
 import org.junit.Test;
 import org.junit.runner.RunWith;
+import org.mockito.InOrder;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
+import org.mockito.Spy;
 import org.mockito.runners.MockitoJUnitRunner;
+import org.springframework.dao.DataAccessResourceFailureException;
 import org.springframework.scheduling.TaskScheduler;
 
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
 
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.fail;
+import static org.mockito.Matchers.anyCollectionOf;
+import static org.mockito.Matchers.any;
 import static org.mockito.Matchers.anyListOf;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Matchers.same;
+import static org.mockito.Mockito.inOrder;
 import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
@@ -67,6 +85,26 @@ public class BambooCollectorTaskTests {
     private BambooSettings bambooSettings;
     @Mock
     private ComponentRepository dbComponentRepository;
+    @Mock
+    private BambooPendingBuildRepository bambooPendingBuildRepository;
+    @Mock
+    private BambooFailedBuildRepository bambooFailedBuildRepository;
+    @Mock
+    private ClusterCoordinator clusterCoordinator;
+    @Mock
+    private PlanQuarantine planQuarantine;
+    @Mock
+    private CycleTrace cycleTrace;
+    @Mock
+    private CollectionFreshness collectionFreshness;
+    @Mock
+    private StateSnapshot stateSnapshot;
+    @Mock
+    private DashboardEnablement dashboardEnablement;
+    @Mock
+    private CommitStore commitStore;
+    @Spy
+    private JobLocks jobLocks = new JobLocks();
 
     @InjectMocks
     private BambooCollectorTask task;
@@ -78,22 +116,47 @@ public class BambooCollectorTaskTests {
     public void collect_noBuildServers_nothingAdded() {
         when(dbComponentRepository.findAll()).thenReturn(components());
         task.collect(new BambooCollector());
-        verifyZeroInteractions(bambooClient, buildRepository);
+        verify(bambooClient).resetRetryBudget();
+        verifyNoMoreInteractions(bambooClient);
+        verifyZeroInteractions(buildRepository);
     }
 
     @Test
     public void collect_noJobsOnServer_nothingAdded() {
-        when(bambooClient.getInstanceJobs(SERVER1)).thenReturn(new HashMap<BambooJob, Set<Build>>());
+        BambooCollector collector = collectorWithOneServer();
+        List<BambooJob> existingJobs = new ArrayList<>();
+        when(bambooJobRepository.findByCollectorIdIn(Sets.newHashSet(collector.getId()))).thenReturn(existingJobs);
+        when(bambooClient.getInstanceJobs(eq(SERVER1), anyCollectionOf(BambooJob.class))).thenReturn(new HashMap<BambooJob, Set<Build>>());
         when(dbComponentRepository.findAll()).thenReturn(components());
-        task.collect(collectorWithOneServer());
+        task.collect(collector);
 
-        verify(bambooClient).getInstanceJobs(SERVER1);
+        verify(bambooClient).resetRetryBudget();
+        // the jobs already known are handed to the client to skip the plans with no new builds
+        verify(bambooClient).getInstanceJobs(eq(SERVER1), same(existingJobs));
         verifyNoMoreInteractions(bambooClient, buildRepository);
     }
 
+    @Test
+    public void collect_failure_cycleStillEnded() {
+        BambooCollector collector = collectorWithOneServer();
+        when(bambooJobRepository.findByCollectorIdIn(Sets.newHashSet(collector.getId())))
+                .thenThrow(new DataAccessResourceFailureException("down"));
+
+        try {
+            task.collect(collector);
+            fail("expected the failure of the cycle");
+        } catch (DataAccessResourceFailureException expected) {
+            // the cycle failed
+        }
+
+        verify(stateSnapshot).save();
+        verify(commitStore).endCycle();
+        verify(cycleTrace).end();
+    }
+
     @Test
     public void collect_twoJobs_jobsAdded() {
-        when(bambooClient.getInstanceJobs(SERVER1)).thenReturn(twoJobsWithTwoBuilds(SERVER1, NICENAME1));
+        when(bambooClient.getInstanceJobs(eq(SERVER1), anyCollectionOf(BambooJob.class))).thenReturn(twoJobsWithTwoBuilds(SERVER1, NICENAME1));
         when(dbComponentRepository.findAll()).thenReturn(components());
         List<BambooJob> bambooJobs = new ArrayList<>();
         BambooJob bambooJob = bambooJob("1", SERVER1, "JOB1_URL", NICENAME1);
@@ -105,7 +168,7 @@ public class BambooCollectorTaskTests {
 
     @Test
     public void collect_twoJobs_jobsAdded_random_order() {
-        when(bambooClient.getInstanceJobs(SERVER1)).thenReturn(twoJobsWithTwoBuildsRandom(SERVER1, NICENAME1));
+        when(bambooClient.getInstanceJobs(eq(SERVER1), anyCollectionOf(BambooJob.class))).thenReturn(twoJobsWithTwoBuildsRandom(SERVER1, NICENAME1));
         when(dbComponentRepository.findAll()).thenReturn(components());
         List<BambooJob> bambooJobs = new ArrayList<>();
         BambooJob bambooJob = bambooJob("2", SERVER1, "JOB2_URL", NICENAME1);
@@ -119,7 +182,7 @@ public class BambooCollectorTaskTests {
     public void collect_oneJob_exists_notAdded() {
         BambooCollector collector = collectorWithOneServer();
         BambooJob job = bambooJob("1", SERVER1, "JOB1_URL", NICENAME1);
-        when(bambooClient.getInstanceJobs(SERVER1)).thenReturn(oneJobWithBuilds(job));
+        when(bambooClient.getInstanceJobs(eq(SERVER1), anyCollectionOf(BambooJob.class))).thenReturn(oneJobWithBuilds(job));
         when(bambooJobRepository.findJob(collector.getId(), SERVER1, job.getJobName()))
                 .thenReturn(job);
         when(dbComponentRepository.findAll()).thenReturn(components());
@@ -143,7 +206,7 @@ public class BambooCollectorTaskTests {
         jobs.add(job2);
         Set<ObjectId> udId = new HashSet<>();
         udId.add(collector.getId());
-        when(bambooClient.getInstanceJobs(SERVER1)).thenReturn(oneJobWithBuilds(job1));
+        when(bambooClient.getInstanceJobs(eq(SERVER1), anyCollectionOf(BambooJob.class))).thenReturn(oneJobWithBuilds(job1));
         when(bambooJobRepository.findByCollectorIdIn(udId)).thenReturn(jobs);
         when(dbComponentRepository.findAll()).thenReturn(components());
         task.collect(collector);
@@ -152,6 +215,56 @@ public class BambooCollectorTaskTests {
         verify(bambooJobRepository, times(1)).delete(delete);
     }
 
+    @Test
+    public void delete_job_withinGrace_markedMissing() {
+        BambooCollector collector = collectorWithOneServer();
+        collector.setId(ObjectId.get());
+        BambooJob job1 = bambooJob("1", SERVER1, "JOB1_URL", NICENAME1);
+        job1.setCollectorId(collector.getId());
+        BambooJob job2 = bambooJob("2", SERVER1, "JOB2_URL", NICENAME1);
+        job2.setCollectorId(collector.getId());
+        Set<ObjectId> udId = new HashSet<>();
+        udId.add(collector.getId());
+        when(bambooSettings.getDeleteGraceCycles()).thenReturn(1);
+        when(bambooClient.getInstanceJobs(eq(SERVER1), anyCollectionOf(BambooJob.class))).thenReturn(oneJobWithBuilds(job1));
+        when(bambooJobRepository.findByCollectorIdIn(udId)).thenReturn(Arrays.asList(job1, job2));
+        when(dbComponentRepository.findAll()).thenReturn(components());
+
+        task.collect(collector);
+
+        verify(bambooJobRepository, never()).delete(anyListOf(BambooJob.class));
+        verify(bambooJobRepository).save(Collections.singletonList(job2));
+        assertThat(job2.getMissingCycles(), is(1));
+        assertThat(job2.getMissingSince() > 0, is(true));
+
+        task.collect(collector);
+
+        verify(bambooJobRepository).delete(Collections.singletonList(job2));
+    }
+
+    @Test
+    public void delete_job_missingJobFoundAgain_revived() {
+        BambooCollector collector = collectorWithOneServer();
+        collector.setId(ObjectId.get());
+        BambooJob job1 = bambooJob("1", SERVER1, "JOB1_URL", NICENAME1);
+        job1.setCollectorId(collector.getId());
+        job1.setMissingSince(System.currentTimeMillis());
+        job1.setMissingCycles(2);
+        Set<ObjectId> udId = new HashSet<>();
+        udId.add(collector.getId());
+        when(bambooSettings.getDeleteGraceCycles()).thenReturn(3);
+        when(bambooClient.getInstanceJobs(eq(SERVER1), anyCollectionOf(BambooJob.class))).thenReturn(oneJobWithBuilds(job1));
+        when(bambooJobRepository.findByCollectorIdIn(udId)).thenReturn(Collections.singletonList(job1));
+        when(dbComponentRepository.findAll()).thenReturn(components());
+
+        task.collect(collector);
+
+        verify(bambooJobRepository, never()).delete(anyListOf(BambooJob.class));
+        verify(bambooJobRepository).save(Collections.singletonList(job1));
+        assertThat(job1.getMissingSince(), is(0L));
+        assertThat(job1.getMissingCycles(), is(0));
+    }
+
     @Test
     public void delete_never_job() {
         BambooCollector collector = collectorWithOneServer();
@@ -162,7 +275,7 @@ public class BambooCollectorTaskTests {
         jobs.add(job1);
         Set<ObjectId> udId = new HashSet<>();
         udId.add(collector.getId());
-        when(bambooClient.getInstanceJobs(SERVER1)).thenReturn(oneJobWithBuilds(job1));
+        when(bambooClient.getInstanceJobs(eq(SERVER1), anyCollectionOf(BambooJob.class))).thenReturn(oneJobWithBuilds(job1));
         when(bambooJobRepository.findByCollectorIdIn(udId)).thenReturn(jobs);
         when(dbComponentRepository.findAll()).thenReturn(components());
         task.collect(collector);
@@ -175,7 +288,7 @@ public class BambooCollectorTaskTests {
         BambooJob job = bambooJob("1", SERVER1, "JOB1_URL", NICENAME1);
         Build build = build("1", "JOB1_1_URL");
 
-        when(bambooClient.getInstanceJobs(SERVER1)).thenReturn(oneJobWithBuilds(job, build));
+        when(bambooClient.getInstanceJobs(eq(SERVER1), anyCollectionOf(BambooJob.class))).thenReturn(oneJobWithBuilds(job, build));
         when(dbComponentRepository.findAll()).thenReturn(components());
         task.collect(collector);
 
@@ -188,7 +301,7 @@ public class BambooCollectorTaskTests {
         BambooJob job = bambooJob("1", SERVER1, "JOB1_URL", NICENAME1);
         Build build = build("1", "JOB1_1_URL");
 
-        when(bambooClient.getInstanceJobs(SERVER1)).thenReturn(oneJobWithBuilds(job, build));
+        when(bambooClient.getInstanceJobs(eq(SERVER1), anyCollectionOf(BambooJob.class))).thenReturn(oneJobWithBuilds(job, build));
         when(bambooJobRepository.findEnabledJobs(collector.getId(), SERVER1))
                 .thenReturn(Arrays.asList(job));
         when(buildRepository.findByCollectorItemIdAndNumber(job.getId(), build.getNumber())).thenReturn(build);
@@ -204,7 +317,7 @@ public class BambooCollectorTaskTests {
         BambooJob job = bambooJob("1", SERVER1, "JOB1_URL", NICENAME1);
         Build build = build("1", "JOB1_1_URL");
 
-        when(bambooClient.getInstanceJobs(SERVER1)).thenReturn(oneJobWithBuilds(job, build));
+        when(bambooClient.getInstanceJobs(eq(SERVER1), anyCollectionOf(BambooJob.class))).thenReturn(oneJobWithBuilds(job, build));
         when(bambooJobRepository.findEnabledJobs(collector.getId(), SERVER1))
                 .thenReturn(Arrays.asList(job));
         when(buildRepository.findByCollectorItemIdAndNumber(job.getId(), build.getNumber())).thenReturn(null);
@@ -215,6 +328,224 @@ public class BambooCollectorTaskTests {
         verify(buildRepository, times(1)).save(build);
     }
 
+    @Test
+    public void collect_jobEnabled_buildStoredMeanwhile_notSavedAgain() {
+        BambooCollector collector = collectorWithOneServer();
+        BambooJob job = bambooJob("1", SERVER1, "JOB1_URL", NICENAME1);
+        Build build = build("1", "JOB1_1_URL");
+
+        when(bambooClient.getInstanceJobs(eq(SERVER1), anyCollectionOf(BambooJob.class))).thenReturn(oneJobWithBuilds(job, build));
+        when(bambooJobRepository.findEnabledJobs(collector.getId(), SERVER1))
+                .thenReturn(Arrays.asList(job));
+        // the notification queue stores the build while its details are requested
+        when(buildRepository.findByCollectorItemIdAndNumber(job.getId(), build.getNumber()))
+                .thenReturn(null, build);
+        when(bambooClient.getBuildDetails(build.getBuildUrl(), job.getInstanceUrl())).thenReturn(build);
+        when(dbComponentRepository.findAll()).thenReturn(components());
+        task.collect(collector);
+
+        verify(buildRepository, never()).save(build);
+    }
+
+    @Test
+    public void collect_jobEnabled_newBuild_buildNumbersCollected() {
+        BambooCollector collector = collectorWithOneServer();
+        BambooJob job = bambooJob("1", SERVER1, "JOB1_URL", NICENAME1);
+        BambooJob discovered = bambooJob("1", SERVER1, "JOB1_URL", NICENAME1);
+        discovered.getDiscoveredBuildNumbers().put("1", 1L);
+        Build build = build("1", "JOB1_1_URL");
+
+        when(bambooClient.getInstanceJobs(eq(SERVER1), anyCollectionOf(BambooJob.class)))
+                .thenReturn(oneJobWithBuilds(discovered, build));
+        when(bambooJobRepository.findEnabledJobs(collector.getId(), SERVER1))
+                .thenReturn(Arrays.asList(job));
+        when(bambooClient.getBuildDetails(build.getBuildUrl(), job.getInstanceUrl())).thenReturn(build);
+        when(dbComponentRepository.findAll()).thenReturn(components());
+        task.collect(collector);
+
+        verify(buildRepository, times(1)).save(build);
+        verify(bambooJobRepository, times(1)).save(job);
+        assertThat(job.getCollectedBuildNumbers().get("1"), is(1L));
+    }
+
+    @Test
+    public void collect_jobEnabled_buildDetailsMissing_buildNumbersNotCollected() {
+        BambooCollector collector = collectorWithOneServer();
+        BambooJob job = bambooJob("1", SERVER1, "JOB1_URL", NICENAME1);
+        BambooJob discovered = bambooJob("1", SERVER1, "JOB1_URL", NICENAME1);
+        discovered.getDiscoveredBuildNumbers().put("1", 1L);
+        Build build = build("1", "JOB1_1_URL");
+
+        when(bambooClient.getInstanceJobs(eq(SERVER1), anyCollectionOf(BambooJob.class)))
+                .thenReturn(oneJobWithBuilds(discovered, build));
+        when(bambooJobRepository.findEnabledJobs(collector.getId(), SERVER1))
+                .thenReturn(Arrays.asList(job));
+        when(dbComponentRepository.findAll()).thenReturn(components());
+        task.collect(collector);
+
+        verify(bambooJobRepository, never()).save(job);
+        assertThat(job.getCollectedBuildNumbers().isEmpty(), is(true));
+    }
+
+    @Test
+    public void collect_jobEnabled_buildInProgress_pendingTracked() {
+        BambooCollector collector = collectorWithOneServer();
+        BambooJob job = bambooJob("1", SERVER1, "JOB1_URL", NICENAME1);
+        job.setAverageBuildDuration(600000L);
+        Build build = build("1", "JOB1_1_URL");
+        Build running = build("1", "JOB1_1_URL");
+        running.setBuildStatus(BuildStatus.InProgress);
+        running.setStartTime(System.currentTimeMillis());
+
+        when(bambooClient.getInstanceJobs(eq(SERVER1), anyCollectionOf(BambooJob.class)))
+                .thenReturn(oneJobWithBuilds(job, build));
+        when(bambooJobRepository.findEnabledJobs(collector.getId(), SERVER1))
+                .thenReturn(Arrays.asList(job));
+        when(bambooClient.getBuildDetails(build.getBuildUrl(), job.getInstanceUrl())).thenReturn(running);
+        when(dbComponentRepository.findAll()).thenReturn(components());
+        task.collect(collector);
+
+        verify(buildRepository, never()).save(running);
+        verify(bambooPendingBuildRepository, times(1)).save(any(BambooPendingBuild.class));
+    }
+
+    @Test
+    public void collect_jobEnabled_pendingBuildNotDue_detailsNotRequested() {
+        BambooCollector collector = collectorWithOneServer();
+        BambooJob job = bambooJob("1", SERVER1, "JOB1_URL", NICENAME1);
+        Build build = build("1", "JOB1_1_URL");
+        BambooPendingBuild pending = new BambooPendingBuild();
+        pending.setNumber("1");
+        pending.setNextPollTime(System.currentTimeMillis() + 600000L);
+
+        when(bambooClient.getInstanceJobs(eq(SERVER1), anyCollectionOf(BambooJob.class)))
+                .thenReturn(oneJobWithBuilds(job, build));
+        when(bambooJobRepository.findEnabledJobs(collector.getId(), SERVER1))
+                .thenReturn(Arrays.asList(job));
+        when(bambooPendingBuildRepository.findByCollectorItemId(job.getId()))
+                .thenReturn(Arrays.asList(pending));
+        when(dbComponentRepository.findAll()).thenReturn(components());
+        task.collect(collector);
+
+        verify(bambooClient, never()).getBuildDetails(anyString(), anyString());
+    }
+
+    @Test
+    public void collect_jobEnabled_buildDetailsFail_failureTracked() {
+        BambooCollector collector = collectorWithOneServer();
+        BambooJob job = bambooJob("1", SERVER1, "JOB1_URL", NICENAME1);
+        Build build = build("1", "JOB1_1_URL");
+
+        when(bambooClient.getInstanceJobs(eq(SERVER1), anyCollectionOf(BambooJob.class)))
+                .thenReturn(oneJobWithBuilds(job, build));
+        when(bambooJobRepository.findEnabledJobs(collector.getId(), SERVER1))
+                .thenReturn(Arrays.asList(job));
+        when(dbComponentRepository.findAll()).thenReturn(components());
+        task.collect(collector);
+
+        verify(bambooFailedBuildRepository, times(1)).save(any(BambooFailedBuild.class));
+    }
+
+    @Test
+    public void collect_jobEnabled_buildQuarantined_detailsNotRequested() {
+        BambooCollector collector = collectorWithOneServer();
+        BambooJob job = bambooJob("1", SERVER1, "JOB1_URL", NICENAME1);
+        BambooJob discovered = bambooJob("1", SERVER1, "JOB1_URL", NICENAME1);
+        discovered.getDiscoveredBuildNumbers().put("1", 1L);
+        Build build = build("1", "JOB1_1_URL");
+        BambooFailedBuild failed = new BambooFailedBuild();
+        failed.setNumber("1");
+        failed.setQuarantined(true);
+
+        when(bambooClient.getInstanceJobs(eq(SERVER1), anyCollectionOf(BambooJob.class)))
+                .thenReturn(oneJobWithBuilds(discovered, build));
+        when(bambooJobRepository.findEnabledJobs(collector.getId(), SERVER1))
+                .thenReturn(Arrays.asList(job));
+        when(bambooFailedBuildRepository.findByCollectorItemId(job.getId()))
+                .thenReturn(Arrays.asList(failed));
+        when(dbComponentRepository.findAll()).thenReturn(components());
+        task.collect(collector);
+
+        verify(bambooClient, never()).getBuildDetails(anyString(), anyString());
+        verify(bambooJobRepository, times(1)).save(job);
+    }
+
+    @Test
+    public void collect_buildDetailsBudget_oldestBuildOfEachJobFirst() {
+        BambooCollector collector = collectorWithOneServer();
+        BambooJob job1 = bambooJob("1", SERVER1, "JOB1_URL", NICENAME1);
+        BambooJob job2 = bambooJob("2", SERVER1, "JOB2_URL", NICENAME1);
+        Map<BambooJob, Set<Build>> jobs = new HashMap<>();
+        jobs.put(job1, Sets.newHashSet(build("1", "JOB1_1_URL"), build("2", "JOB1_2_URL"),
+                build("3", "JOB1_3_URL")));
+        jobs.put(job2, Sets.newHashSet(build("1", "JOB2_1_URL")));
+
+        when(bambooSettings.getBuildDetailsBudget()).thenReturn(2);
+        when(bambooClient.getInstanceJobs(eq(SERVER1), anyCollectionOf(BambooJob.class)))
+                .thenReturn(jobs);
+        when(dbComponentRepository.findAll()).thenReturn(components());
+        when(bambooJobRepository.findEnabledJobs(collector.getId(), SERVER1))
+                .thenReturn(Arrays.asList(job1, job2));
+        when(bambooClient.getBuildDetails(anyString(), eq(SERVER1))).thenReturn(new Build());
+        task.collect(collector);
+
+        verify(bambooClient).getBuildDetails("JOB1_1_URL", SERVER1);
+        verify(bambooClient).getBuildDetails("JOB2_1_URL", SERVER1);
+        verify(bambooClient, times(2)).getBuildDetails(anyString(), anyString());
+    }
+
+    @Test
+    public void collect_buildsOfEachJobInBuildNumberOrder() {
+        BambooCollector collector = collectorWithOneServer();
+        BambooJob job1 = bambooJob("1", SERVER1, "JOB1_URL", NICENAME1);
+        BambooJob job2 = bambooJob("2", SERVER1, "JOB2_URL", NICENAME1);
+        Map<BambooJob, Set<Build>> jobs = new HashMap<>();
+        jobs.put(job1, Sets.newHashSet(build("1", "JOB1_1_URL"), build("2", "JOB1_2_URL"),
+                build("3", "JOB1_3_URL")));
+        jobs.put(job2, Sets.newHashSet(build("1", "JOB2_1_URL")));
+
+        when(bambooClient.getInstanceJobs(eq(SERVER1), anyCollectionOf(BambooJob.class)))
+                .thenReturn(jobs);
+        when(dbComponentRepository.findAll()).thenReturn(components());
+        when(bambooJobRepository.findEnabledJobs(collector.getId(), SERVER1))
+                .thenReturn(Arrays.asList(job1, job2));
+        when(bambooClient.getBuildDetails(anyString(), eq(SERVER1))).thenReturn(new Build());
+        task.collect(collector);
+
+        InOrder order = inOrder(bambooClient);
+        order.verify(bambooClient).getBuildDetails("JOB1_1_URL", SERVER1);
+        order.verify(bambooClient).getBuildDetails("JOB2_1_URL", SERVER1);
+        order.verify(bambooClient).getBuildDetails("JOB1_2_URL", SERVER1);
+        order.verify(bambooClient).getBuildDetails("JOB1_3_URL", SERVER1);
+    }
+
+    @Test
+    public void collect_clustered_notLeader_onlyOwnedBuildsAdded() {
+        BambooCollector collector = collectorWithOneServer();
+        BambooJob owned = bambooJob("1", SERVER1, "JOB1_URL", NICENAME1);
+        BambooJob other = bambooJob("2", SERVER1, "JOB2_URL", NICENAME1);
+        Build build1 = build("1", "JOB1_1_URL");
+        Build build2 = build("1", "JOB2_1_URL");
+        Map<BambooJob, Set<Build>> jobs = new HashMap<>();
+        jobs.put(owned, Sets.newHashSet(build1));
+        jobs.put(other, Sets.newHashSet(build2));
+
+        when(clusterCoordinator.isClustered()).thenReturn(true);
+        when(clusterCoordinator.owned(Arrays.asList(owned, other))).thenReturn(Arrays.asList(owned));
+        when(bambooClient.getInstanceJobs(eq(SERVER1), anyCollectionOf(BambooJob.class)))
+                .thenReturn(jobs);
+        when(bambooJobRepository.findEnabledJobs(collector.getId(), SERVER1))
+                .thenReturn(Arrays.asList(owned, other));
+        when(bambooClient.getBuildDetails(build1.getBuildUrl(), SERVER1)).thenReturn(build1);
+        task.collect(collector);
+
+        verify(clusterCoordinator).rebalance();
+        verify(buildRepository, times(1)).save(build1);
+        verify(bambooClient, never()).getBuildDetails(build2.getBuildUrl(), SERVER1);
+        verify(bambooJobRepository, never()).save(anyListOf(BambooJob.class));
+        verifyZeroInteractions(dbComponentRepository);
+    }
+
     private BambooCollector collectorWithOneServer() {
         return BambooCollector.prototype(Arrays.asList(SERVER1), Arrays.asList(NICENAME1));
     }
@@ -0,0 +1,231 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.capitalone.dashboard.collector;
+
+import com.capitalone.dashboard.model.BambooBackfill;
+import com.capitalone.dashboard.model.BambooFailedBuild;
+import com.capitalone.dashboard.model.BambooJob;
+import com.capitalone.dashboard.model.Build;
+import com.capitalone.dashboard.model.BuildStatus;
+import com.capitalone.dashboard.repository.BambooBackfillRepository;
+import com.capitalone.dashboard.repository.BambooFailedBuildRepository;
+import com.capitalone.dashboard.repository.BambooJobRepository;
+import com.capitalone.dashboard.repository.BuildRepository;
+import org.bson.types.ObjectId;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.Spy;
+import org.mockito.runners.MockitoJUnitRunner;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.assertThat;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+@RunWith(MockitoJUnitRunner.class)
+public class BuildBackfillTests {
+
+    private static final String SERVER1 = "http://server1/";
+
+    @Mock
+    private BambooClient bambooClient;
+    @Mock
+    private BambooSettings settings;
+    @Mock
+    private BambooBackfillRepository bambooBackfillRepository;
+    @Mock
+    private BambooFailedBuildRepository bambooFailedBuildRepository;
+    @Mock
+    private BambooJobRepository bambooJobRepository;
+    @Mock
+    private BuildRepository buildRepository;
+    @Mock
+    private ClusterCoordinator clusterCoordinator;
+    @Spy
+    private JobLocks jobLocks = new JobLocks();
+    @InjectMocks
+    private BuildBackfill buildBackfill;
+
+    private BambooJob job;
+    private BambooBackfill backfill;
+
+    @Before
+    public void setup() {
+        job = new BambooJob();
+        job.setId(new ObjectId());
+        job.setInstanceUrl(SERVER1);
+        job.setJobName("PROJ-PLAN");
+        backfill = new BambooBackfill();
+        backfill.setCollectorItemId(job.getId());
+        when(settings.getBackfillPageSize()).thenReturn(2);
+        when(bambooJobRepository.findOne(job.getId())).thenReturn(job);
+    }
+
+    @Test
+    public void step_pageStored_cursorMoved() {
+        Build build1 = build("1", BuildStatus.Success);
+        Build build2 = build("2", BuildStatus.Failure);
+        when(bambooClient.getOldestBuilds(SERVER1, "PROJ-PLAN", 0, 2))
+                .thenReturn(Arrays.asList(build1, build2));
+        when(bambooClient.getBuildDetails("URL1", SERVER1)).thenReturn(build1);
+        when(bambooClient.getBuildDetails("URL2", SERVER1)).thenReturn(build2);
+
+        assertThat(buildBackfill.step(backfill), is(2));
+        verify(buildRepository).save(build1);
+        verify(buildRepository).save(build2);
+        verify(bambooBackfillRepository).save(backfill);
+        assertThat(backfill.getBuildNumber(), is(2L));
+        assertThat(backfill.getBuilds(), is(2));
+    }
+
+    @Test
+    public void step_buildStoredMeanwhile_notSavedAgain() {
+        Build build1 = build("1", BuildStatus.Success);
+        when(bambooClient.getOldestBuilds(SERVER1, "PROJ-PLAN", 0, 2))
+                .thenReturn(Collections.singletonList(build1));
+        when(bambooClient.getBuildDetails("URL1", SERVER1)).thenReturn(build1);
+        // the collection cycle stores the build while its details are requested
+        when(buildRepository.findByCollectorItemIdAndNumber(job.getId(), "1"))
+                .thenReturn(null, build1);
+
+        assertThat(buildBackfill.step(backfill), is(0));
+        verify(buildRepository, never()).save(build1);
+        assertThat(backfill.getBuildNumber(), is(1L));
+    }
+
+    @Test
+    public void step_runningBuild_cursorStops() {
+        Build build1 = build("1", BuildStatus.Success);
+        Build build2 = build("2", BuildStatus.InProgress);
+        when(bambooClient.getOldestBuilds(SERVER1, "PROJ-PLAN", 0, 2))
+                .thenReturn(Arrays.asList(build1, build2));
+        when(bambooClient.getBuildDetails("URL1", SERVER1)).thenReturn(build1);
+        when(bambooClient.getBuildDetails("URL2", SERVER1)).thenReturn(build2);
+
+        assertThat(buildBackfill.step(backfill), is(1));
+        assertThat(backfill.getBuildNumber(), is(1L));
+    }
+
+    @Test
+    public void step_storedBuild_detailsNotRequested() {
+        Build build1 = build("1", BuildStatus.Success);
+        when(bambooClient.getOldestBuilds(SERVER1, "PROJ-PLAN", 0, 2))
+                .thenReturn(Collections.singletonList(build1));
+        when(buildRepository.findByCollectorItemIdAndNumber(job.getId(), "1")).thenReturn(build1);
+
+        assertThat(buildBackfill.step(backfill), is(0));
+        verify(bambooClient, never()).getBuildDetails(anyString(), anyString());
+        assertThat(backfill.getBuildNumber(), is(1L));
+    }
+
+    @Test
+    public void step_pageAfterCursor_requested() {
+        backfill.setBuildNumber(7);
+        when(bambooClient.getOldestBuilds(SERVER1, "PROJ-PLAN", 7, 2))
+                .thenReturn(Collections.singletonList(build("9", BuildStatus.Success)));
+        when(buildRepository.findByCollectorItemIdAndNumber(job.getId(), "9"))
+                .thenReturn(new Build());
+
+        buildBackfill.step(backfill);
+        assertThat(backfill.getBuildNumber(), is(9L));
+    }
+
+    @Test
+    public void step_detailsFail_trackedAsFailedBuildAndCursorMoved() {
+        when(settings.getFailedBuildMinRetryInterval()).thenReturn(1000L);
+        when(bambooClient.getOldestBuilds(SERVER1, "PROJ-PLAN", 0, 2))
+                .thenReturn(Collections.singletonList(build("1", BuildStatus.Success)));
+
+        assertThat(buildBackfill.step(backfill), is(0));
+        ArgumentCaptor<BambooFailedBuild> failed = ArgumentCaptor.forClass(BambooFailedBuild.class);
+        verify(bambooFailedBuildRepository).save(failed.capture());
+        assertThat(failed.getValue().getNumber(), is("1"));
+        assertThat(failed.getValue().getBuildUrl(), is("URL1"));
+        assertThat(failed.getValue().getFailures(), is(1));
+        assertThat(backfill.getBuildNumber(), is(1L));
+    }
+
+    @Test
+    public void step_failedBuildDue_retriedAndStored() {
+        backfill.setBuildNumber(2);
+        BambooFailedBuild failed = failedBuild("1", 0);
+        Build build1 = build("1", BuildStatus.Success);
+        when(bambooFailedBuildRepository.findByCollectorItemId(job.getId()))
+                .thenReturn(Collections.singletonList(failed));
+        when(bambooClient.getBuildDetails("URL1", SERVER1)).thenReturn(build1);
+        when(bambooClient.getOldestBuilds(SERVER1, "PROJ-PLAN", 2, 2))
+                .thenReturn(Collections.<Build>emptyList());
+
+        assertThat(buildBackfill.step(backfill), is(1));
+        verify(buildRepository).save(build1);
+        verify(bambooFailedBuildRepository).delete(failed);
+        verify(bambooBackfillRepository).delete(backfill);
+    }
+
+    @Test
+    public void step_failedBuildNotDue_backfillNotFinished() {
+        backfill.setBuildNumber(2);
+        BambooFailedBuild failed = failedBuild("1", Long.MAX_VALUE);
+        when(bambooFailedBuildRepository.findByCollectorItemId(job.getId()))
+                .thenReturn(Collections.singletonList(failed));
+        when(bambooClient.getOldestBuilds(SERVER1, "PROJ-PLAN", 2, 2))
+                .thenReturn(Collections.<Build>emptyList());
+
+        buildBackfill.step(backfill);
+        verify(bambooClient, never()).getBuildDetails(anyString(), anyString());
+        verify(bambooBackfillRepository, never()).delete(any(BambooBackfill.class));
+        verify(bambooBackfillRepository).save(backfill);
+    }
+
+    @Test
+    public void step_historyWalked_backfillFinished() {
+        when(bambooClient.getOldestBuilds(SERVER1, "PROJ-PLAN", 0, 2))
+                .thenReturn(Collections.<Build>emptyList());
+
+        buildBackfill.step(backfill);
+        verify(bambooBackfillRepository).delete(backfill);
+    }
+
+    private BambooFailedBuild failedBuild(String number, long nextAttempt) {
+        BambooFailedBuild failed = new BambooFailedBuild();
+        failed.setCollectorItemId(job.getId());
+        failed.setNumber(number);
+        failed.setBuildUrl("URL" + number);
+        failed.setFailures(1);
+        failed.setNextAttempt(nextAttempt);
+        return failed;
+    }
+
+    private Build build(String number, BuildStatus status) {
+        Build build = new Build();
+        build.setNumber(number);
+        build.setBuildUrl("URL" + number);
+        build.setBuildStatus(status);
+        return build;
+    }
+}
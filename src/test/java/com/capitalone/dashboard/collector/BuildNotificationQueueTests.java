@@ -0,0 +1,167 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.capitalone.dashboard.collector;
+
+import com.capitalone.dashboard.model.BambooCollector;
+import com.capitalone.dashboard.model.BambooJob;
+import com.capitalone.dashboard.model.BambooPendingBuild;
+import com.capitalone.dashboard.model.Build;
+import com.capitalone.dashboard.model.BuildStatus;
+import com.capitalone.dashboard.repository.BambooCollectorRepository;
+import com.capitalone.dashboard.repository.BambooJobRepository;
+import com.capitalone.dashboard.repository.BambooPendingBuildRepository;
+import com.capitalone.dashboard.repository.BuildRepository;
+import org.bson.types.ObjectId;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.Spy;
+import org.mockito.runners.MockitoJUnitRunner;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.assertThat;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+@RunWith(MockitoJUnitRunner.class)
+public class BuildNotificationQueueTests {
+
+    private static final String SERVER1 = "http://server1/";
+    private static final String BUILD_URL = "http://server1/rest/api/latest/result/PROJ-PLAN/12";
+
+    @Mock
+    private BambooClient bambooClient;
+    @Mock
+    private BambooSettings settings;
+    @Mock
+    private BambooCollectorRepository bambooCollectorRepository;
+    @Mock
+    private BambooJobRepository bambooJobRepository;
+    @Mock
+    private BuildRepository buildRepository;
+    @Mock
+    private BambooPendingBuildRepository bambooPendingBuildRepository;
+    @Spy
+    private JobLocks jobLocks = new JobLocks();
+    @InjectMocks
+    private BuildNotificationQueue queue;
+
+    private BambooCollector collector;
+    private BambooJob job;
+
+    @Before
+    public void setup() {
+        collector = new BambooCollector();
+        collector.setId(new ObjectId());
+        job = new BambooJob();
+        job.setId(new ObjectId());
+        job.setInstanceUrl(SERVER1);
+        job.setJobName("PROJ-PLAN");
+        job.setEnabled(true);
+        when(settings.getServers()).thenReturn(Collections.singletonList(SERVER1));
+        when(bambooCollectorRepository.findByName("Bamboo")).thenReturn(collector);
+        when(bambooJobRepository.findJob(collector.getId(), SERVER1, "PROJ-PLAN")).thenReturn(job);
+        when(bambooClient.getBuildUrl(SERVER1, "PROJ-PLAN", "12")).thenReturn(BUILD_URL);
+    }
+
+    @Test
+    public void process_finishedBuild_saved() {
+        Build build = build(BuildStatus.Success);
+        when(bambooClient.getBuildDetails(BUILD_URL, SERVER1)).thenReturn(build);
+
+        assertThat(queue.process(new BuildNotification(null, "PROJ-PLAN", "12")), is(true));
+        verify(buildRepository).save(build);
+        assertThat(build.getCollectorItemId(), is(job.getId()));
+    }
+
+    @Test
+    public void process_finishedBuild_jobDurationAndPendingBuildUpdated() {
+        Build build = build(BuildStatus.Success);
+        build.setDuration(60000);
+        BambooPendingBuild pending = new BambooPendingBuild();
+        pending.setNumber("12");
+        BambooPendingBuild other = new BambooPendingBuild();
+        other.setNumber("13");
+        when(bambooClient.getBuildDetails(BUILD_URL, SERVER1)).thenReturn(build);
+        when(bambooPendingBuildRepository.findByCollectorItemId(job.getId()))
+                .thenReturn(Arrays.asList(pending, other));
+
+        assertThat(queue.process(new BuildNotification(null, "PROJ-PLAN", "12")), is(true));
+        assertThat(job.getAverageBuildDuration(), is(60000L));
+        verify(bambooJobRepository).save(job);
+        verify(bambooPendingBuildRepository).delete(pending);
+        verify(bambooPendingBuildRepository, never()).delete(other);
+    }
+
+    @Test
+    public void process_branchBuild_savedForPlan() {
+        Build build = build(BuildStatus.Success);
+        when(bambooClient.getBuildUrl(SERVER1, "PROJ-PLAN3", "12")).thenReturn(BUILD_URL);
+        when(bambooClient.getBuildDetails(BUILD_URL, SERVER1)).thenReturn(build);
+
+        assertThat(queue.process(new BuildNotification(SERVER1, "PROJ-PLAN3", "12")), is(true));
+        verify(buildRepository).save(build);
+    }
+
+    @Test
+    public void process_storedBuild_detailsNotRequested() {
+        when(buildRepository.findByCollectorItemIdAndNumber(job.getId(), "12"))
+                .thenReturn(new Build());
+
+        assertThat(queue.process(new BuildNotification(null, "PROJ-PLAN", "12")), is(false));
+        verify(bambooClient, never()).getBuildDetails(anyString(), anyString());
+    }
+
+    @Test
+    public void process_runningBuild_notSaved() {
+        when(bambooClient.getBuildDetails(BUILD_URL, SERVER1))
+                .thenReturn(build(BuildStatus.InProgress));
+
+        assertThat(queue.process(new BuildNotification(null, "PROJ-PLAN", "12")), is(false));
+        verify(buildRepository, never()).save(any(Build.class));
+    }
+
+    @Test
+    public void process_disabledJob_detailsNotRequested() {
+        job.setEnabled(false);
+
+        assertThat(queue.process(new BuildNotification(null, "PROJ-PLAN", "12")), is(false));
+        verify(bambooClient, never()).getBuildDetails(anyString(), anyString());
+    }
+
+    @Test
+    public void offer_notificationsOff_refused() {
+        assertThat(queue.offer(new BuildNotification(null, "PROJ-PLAN", "12")), is(false));
+    }
+
+    private Build build(BuildStatus status) {
+        Build build = new Build();
+        build.setNumber("12");
+        build.setBuildUrl(BUILD_URL);
+        build.setBuildStatus(status);
+        return build;
+    }
+}
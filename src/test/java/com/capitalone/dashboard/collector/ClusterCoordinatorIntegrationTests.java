@@ -0,0 +1,159 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.capitalone.dashboard.collector;
+
+import com.capitalone.dashboard.model.BambooCollectorLease;
+import com.capitalone.dashboard.model.BambooCollectorReplica;
+import com.mongodb.MongoClient;
+import com.mongodb.MongoClientURI;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.data.mongodb.core.MongoTemplate;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import static org.junit.Assert.fail;
+import static org.springframework.data.mongodb.core.query.Criteria.where;
+import static org.springframework.data.mongodb.core.query.Query.query;
+
+/**
+ * Runs collector replicas in JVMs of their own against a Mongo, and checks that they share the
+ * shards evenly, and that the leases and the replica entry of a replica that crashed are taken
+ * over and removed. Needs a Mongo to write to, so only run with the integration profile:
+ * {@code mvn test -Pintegration}, adding {@code -Dintegration.mongo=mongodb://host:port/db}
+ * when the Mongo is not on localhost.
+ */
+public class ClusterCoordinatorIntegrationTests {
+
+    private static final int SHARDS = 8;
+    private static final long LEASE_TTL = 3000;
+    private static final long TIMEOUT = 60000;
+
+    private final List<Process> replicas = new ArrayList<>();
+    private String uri;
+    private MongoClient client;
+    private MongoTemplate mongo;
+
+    @Before
+    public void init() {
+        uri = System.getProperty("integration.mongo", "mongodb://localhost:27017/bamboo-integration");
+        MongoClientURI clientUri = new MongoClientURI(uri);
+        client = new MongoClient(clientUri);
+        mongo = new MongoTemplate(client, clientUri.getDatabase());
+        mongo.dropCollection(BambooCollectorLease.class);
+        mongo.dropCollection(BambooCollectorReplica.class);
+    }
+
+    @After
+    public void destroy() throws InterruptedException {
+        for (Process replica : replicas) {
+            replica.destroyForcibly().waitFor();
+        }
+        mongo.dropCollection(BambooCollectorLease.class);
+        mongo.dropCollection(BambooCollectorReplica.class);
+        client.close();
+    }
+
+    @Test
+    public void replicas_shareShards_crashedReplicaTakenOverAndRemoved() throws Exception {
+        for (int replica = 0; replica < 3; replica++) {
+            replicas.add(startReplica(replica));
+        }
+        awaitEvenShares(3);
+
+        // killed, the replica neither releases its leases nor removes its entry
+        replicas.remove(0).destroyForcibly().waitFor();
+
+        awaitEvenShares(2);
+    }
+
+    /**
+     * Waits until exactly the given number of replicas are registered, and they hold every shard
+     * between them in even shares.
+     *
+     * @param count the number of live replicas.
+     */
+    private void awaitEvenShares(int count) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + TIMEOUT;
+        String state = "";
+        while (System.currentTimeMillis() < deadline) {
+            Set<String> registered = new HashSet<>();
+            for (BambooCollectorReplica replica : mongo.findAll(BambooCollectorReplica.class)) {
+                registered.add(replica.getReplicaId());
+            }
+            Map<String, Integer> shares = new HashMap<>();
+            int leased = 0;
+            for (BambooCollectorLease lease : mongo.find(
+                    query(where("expiresAt").gt(System.currentTimeMillis())),
+                    BambooCollectorLease.class)) {
+                shares.merge(lease.getOwner(), 1, Integer::sum);
+                leased++;
+            }
+            int fairShare = (SHARDS + count - 1) / count;
+            boolean even = shares.values().stream().allMatch(share -> share <= fairShare);
+            if (registered.size() == count && registered.equals(shares.keySet())
+                    && leased == SHARDS && even) {
+                return;
+            }
+            state = "replicas " + registered + ", shares " + shares;
+            Thread.sleep(200);
+        }
+        fail("Shards not shared evenly between " + count + " replicas: " + state);
+    }
+
+    private Process startReplica(int replica) throws IOException {
+        String java = System.getProperty("java.home") + File.separator + "bin" + File.separator
+                + "java";
+        return new ProcessBuilder(java, "-cp", System.getProperty("java.class.path"),
+                Replica.class.getName(), uri)
+                .redirectErrorStream(true)
+                .redirectOutput(new File("target", "cluster-replica-" + replica + ".log"))
+                .start();
+    }
+
+    /**
+     * A collector replica, which leases its shards until it is killed.
+     */
+    public static final class Replica {
+
+        private Replica() {
+        }
+
+        public static void main(String[] args) throws InterruptedException {
+            MongoClientURI clientUri = new MongoClientURI(args[0]);
+            BambooSettings settings = new BambooSettings();
+            settings.setClusterEnabled(true);
+            settings.setClusterShards(SHARDS);
+            settings.setClusterLeaseTtl(LEASE_TTL);
+            ClusterCoordinator coordinator = new ClusterCoordinator(
+                    new MongoTemplate(new MongoClient(clientUri), clientUri.getDatabase()),
+                    settings);
+            coordinator.rebalance();
+            // the heartbeat renews the leases from now on
+            Thread.currentThread().join();
+        }
+    }
+}
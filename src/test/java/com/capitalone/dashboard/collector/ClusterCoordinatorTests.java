@@ -0,0 +1,263 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.capitalone.dashboard.collector;
+
+import com.capitalone.dashboard.model.BambooCollectorLease;
+import com.capitalone.dashboard.model.BambooCollectorReplica;
+import com.capitalone.dashboard.model.BambooJob;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.data.mongodb.core.FindAndModifyOptions;
+import org.springframework.data.mongodb.core.MongoOperations;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import static org.hamcrest.Matchers.containsString;
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.assertThat;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.atLeast;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class ClusterCoordinatorTests {
+
+    private MongoOperations mongoOperations;
+    private BambooSettings settings;
+    private ClusterCoordinator coordinator;
+    private Set<Integer> freeShards;
+
+    @Before
+    public void init() {
+        mongoOperations = mock(MongoOperations.class);
+        settings = new BambooSettings();
+        settings.setClusterEnabled(true);
+        settings.setClusterShards(4);
+        settings.setClusterLeaseTtl(600000);
+        coordinator = new ClusterCoordinator(mongoOperations, settings);
+        freeShards = new HashSet<>(Arrays.asList(0, 1, 2, 3));
+        // a shard can be acquired while it is free or its lease has expired
+        when(mongoOperations.findAndModify(any(Query.class), any(Update.class),
+                any(FindAndModifyOptions.class), eq(BambooCollectorLease.class)))
+                .thenAnswer(invocation -> {
+                    Query query = (Query) invocation.getArguments()[0];
+                    Integer shard = (Integer) query.getQueryObject().get("_id");
+                    return freeShards.remove(shard) ? lease(shard) : null;
+                });
+        replicas(1);
+        leased();
+    }
+
+    @After
+    public void destroy() {
+        coordinator.destroy();
+    }
+
+    @Test
+    public void notClustered_ownsEveryJobAndLeads() {
+        settings.setClusterEnabled(false);
+
+        coordinator.rebalance();
+
+        assertThat(coordinator.isLeader(), is(true));
+        assertThat(coordinator.owns(job("PROJ-PLAN")), is(true));
+        verify(mongoOperations, never()).count(any(Query.class), eq(BambooCollectorReplica.class));
+    }
+
+    @Test
+    public void rebalance_alone_acquiresEveryShardAndLeads() {
+        coordinator.rebalance();
+
+        assertThat(freeShards.isEmpty(), is(true));
+        assertThat(coordinator.isLeader(), is(true));
+        assertThat(coordinator.owned(jobs()).size(), is(jobs().size()));
+    }
+
+    @Test
+    public void rebalance_shardsLeasedToOthers_noneOwned() {
+        freeShards.clear();
+
+        coordinator.rebalance();
+
+        assertThat(coordinator.isLeader(), is(false));
+        assertThat(coordinator.owned(jobs()).isEmpty(), is(true));
+    }
+
+    @Test
+    public void rebalance_onlyFreeOrExpiredLeasesAcquired() {
+        coordinator.rebalance();
+
+        ArgumentCaptor<Query> acquired = ArgumentCaptor.forClass(Query.class);
+        verify(mongoOperations, times(4)).findAndModify(acquired.capture(), any(Update.class),
+                any(FindAndModifyOptions.class), eq(BambooCollectorLease.class));
+        String query = acquired.getValue().getQueryObject().toString();
+        assertThat(query, containsString("\"owner\" :  null"));
+        assertThat(query, containsString("\"expiresAt\" : { \"$lt\""));
+    }
+
+    @Test
+    public void rebalance_ownLeasesExpired_shardsLost() {
+        coordinator.rebalance();
+        // the heartbeat stalled and every shard was taken over by other replicas
+        freeShards.clear();
+
+        coordinator.rebalance();
+
+        assertThat(coordinator.isLeader(), is(false));
+        assertThat(coordinator.owned(jobs()).isEmpty(), is(true));
+        ArgumentCaptor<Query> owned = ArgumentCaptor.forClass(Query.class);
+        verify(mongoOperations, times(2)).find(owned.capture(), eq(BambooCollectorLease.class));
+        assertThat(owned.getValue().getQueryObject().toString(),
+                containsString("\"expiresAt\" : { \"$gt\""));
+    }
+
+    @Test
+    public void rebalance_replicaJoins_highestShardsReleased() {
+        replicas(2);
+        leased(0, 1, 2, 3);
+        freeShards.clear();
+
+        coordinator.rebalance();
+
+        assertThat(released(), is(Arrays.asList(3, 2)));
+        assertThat(coordinator.isLeader(), is(true));
+        assertThat(coordinator.owns(job(planOfShard(1))), is(true));
+        assertThat(coordinator.owns(job(planOfShard(2))), is(false));
+    }
+
+    @Test
+    public void rebalance_replicaDies_shardsTakenOver() {
+        replicas(2);
+        leased(0, 1);
+        freeShards.removeAll(Arrays.asList(0, 1));
+        coordinator.rebalance();
+        assertThat(coordinator.owns(job(planOfShard(3))), is(false));
+
+        // the other replica stopped renewing, its replica entry and leases expired
+        replicas(1);
+        coordinator.rebalance();
+
+        assertThat(coordinator.owns(job(planOfShard(2))), is(true));
+        assertThat(coordinator.owns(job(planOfShard(3))), is(true));
+        assertThat(released().isEmpty(), is(true));
+    }
+
+    @Test
+    public void rebalance_expiredReplicasRemoved() {
+        coordinator.rebalance();
+
+        ArgumentCaptor<Query> removed = ArgumentCaptor.forClass(Query.class);
+        verify(mongoOperations).remove(removed.capture(), eq(BambooCollectorReplica.class));
+        assertThat(removed.getValue().getQueryObject().toString(),
+                containsString("\"expiresAt\" : { \"$lt\""));
+    }
+
+    @Test
+    public void rebalance_shardZeroOfAnotherReplica_notLeader() {
+        replicas(2);
+        freeShards.remove(0);
+
+        coordinator.rebalance();
+
+        assertThat(coordinator.isLeader(), is(false));
+        assertThat(coordinator.owns(job(planOfShard(1))), is(true));
+        assertThat(coordinator.owns(job(planOfShard(2))), is(true));
+        assertThat(coordinator.owns(job(planOfShard(0))), is(false));
+    }
+
+    @Test
+    public void rebalance_leaderDies_shardZeroTakenOver() {
+        replicas(2);
+        leased(2, 3);
+        freeShards.removeAll(Arrays.asList(2, 3));
+        coordinator.rebalance();
+        assertThat(coordinator.isLeader(), is(false));
+
+        // the leader stopped renewing, its leases of shards 0 and 1 expired
+        replicas(1);
+        coordinator.rebalance();
+
+        assertThat(coordinator.isLeader(), is(true));
+        assertThat(coordinator.owned(jobs()).size(), is(4));
+    }
+
+    private void replicas(long replicas) {
+        when(mongoOperations.count(any(Query.class), eq(BambooCollectorReplica.class)))
+                .thenReturn(replicas);
+    }
+
+    private void leased(Integer... shards) {
+        List<BambooCollectorLease> leases = new ArrayList<>();
+        for (Integer shard : shards) {
+            leases.add(lease(shard));
+        }
+        when(mongoOperations.find(any(Query.class), eq(BambooCollectorLease.class)))
+                .thenReturn(leases);
+    }
+
+    private List<Integer> released() {
+        ArgumentCaptor<Query> releases = ArgumentCaptor.forClass(Query.class);
+        verify(mongoOperations, atLeast(0)).updateFirst(releases.capture(),
+                any(Update.class), eq(BambooCollectorLease.class));
+        List<Integer> shards = new ArrayList<>();
+        for (Query query : releases.getAllValues()) {
+            shards.add((Integer) query.getQueryObject().get("_id"));
+        }
+        return shards;
+    }
+
+    private BambooCollectorLease lease(Integer shard) {
+        BambooCollectorLease lease = new BambooCollectorLease();
+        lease.setShard(shard);
+        lease.setOwner(coordinator.getReplicaId());
+        return lease;
+    }
+
+    private String planOfShard(int shard) {
+        for (int plan = 0; ; plan++) {
+            if (coordinator.shardOf("PROJ-PLAN" + plan) == shard) {
+                return "PROJ-PLAN" + plan;
+            }
+        }
+    }
+
+    private List<BambooJob> jobs() {
+        List<BambooJob> jobs = new ArrayList<>();
+        for (int shard = 0; shard < 4; shard++) {
+            jobs.add(job(planOfShard(shard)));
+        }
+        return jobs;
+    }
+
+    private BambooJob job(String planKey) {
+        BambooJob job = new BambooJob();
+        job.setJobName(planKey);
+        return job;
+    }
+}
@@ -0,0 +1,96 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.capitalone.dashboard.collector;
+
+import com.capitalone.dashboard.model.BambooJob;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Collections;
+
+import static org.hamcrest.Matchers.empty;
+import static org.hamcrest.Matchers.hasSize;
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.assertThat;
+
+public class CollectionFreshnessTests {
+
+    private static final String SERVER1 = "http://server1/";
+
+    private BambooSettings settings;
+    private CollectionFreshness freshness;
+
+    @Before
+    public void init() {
+        settings = new BambooSettings();
+        settings.setServers(Collections.singletonList(SERVER1));
+        freshness = new CollectionFreshness(settings);
+    }
+
+    @Test
+    public void recordJobPolled_upToDate_noLag() {
+        BambooJob job = job("PROJ-PLAN");
+        freshness.recordJobPolled(job, 2);
+        freshness.recordJobPolled(job, 0);
+
+        CollectionFreshness.JobFreshness jobFreshness = freshness.getStalestJobs(10).get(0);
+        assertThat(jobFreshness.getBuildsBehind(), is(0));
+        assertThat(jobFreshness.getLag(), is(0L));
+    }
+
+    @Test
+    public void recordServerPolled_jobNoLongerPolled_forgotten() {
+        freshness.recordJobPolled(job("PROJ-PLAN"), 1);
+        freshness.recordJobPolled(job("PROJ-OTHER"), 0);
+
+        freshness.recordServerPolled(SERVER1, Collections.singletonList(job("PROJ-OTHER")));
+
+        assertThat(freshness.getStalestJobs(10), hasSize(1));
+        assertThat(freshness.getStalestJobs(10).get(0).getJobName(), is("PROJ-OTHER"));
+    }
+
+    @Test
+    public void getViolations_behindLongerThanSlo_degraded() throws InterruptedException {
+        settings.setFreshnessSlo(50);
+        freshness.recordJobPolled(job("PROJ-PLAN"), 3);
+        Thread.sleep(100);
+        freshness.recordJobPolled(job("PROJ-PLAN"), 3);
+        freshness.recordServerPolled(SERVER1, Collections.singletonList(job("PROJ-PLAN")));
+
+        assertThat(freshness.getViolations(), hasSize(1));
+        assertThat(freshness.getViolations().get(0).startsWith("Job PROJ-PLAN on " + SERVER1
+                + " 3 builds behind"), is(true));
+    }
+
+    @Test
+    public void getViolations_noSlo_fresh() throws InterruptedException {
+        settings.setFreshnessSlo(0);
+        freshness.recordJobPolled(job("PROJ-PLAN"), 3);
+        Thread.sleep(10);
+
+        assertThat(freshness.getViolations(), is(empty()));
+        assertThat(freshness.getServers().get(0).getLastPolled(), is(0L));
+    }
+
+    private BambooJob job(String jobName) {
+        BambooJob job = new BambooJob();
+        job.setInstanceUrl(SERVER1);
+        job.setJobName(jobName);
+        return job;
+    }
+}
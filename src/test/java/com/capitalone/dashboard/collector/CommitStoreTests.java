@@ -0,0 +1,148 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.capitalone.dashboard.collector;
+
+import com.capitalone.dashboard.model.BambooCommit;
+import com.capitalone.dashboard.model.SCM;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.data.mongodb.core.MongoOperations;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.not;
+import static org.hamcrest.Matchers.nullValue;
+import static org.hamcrest.Matchers.sameInstance;
+import static org.junit.Assert.assertThat;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+public class CommitStoreTests {
+
+    private MongoOperations mongoOperations;
+    private BambooSettings settings;
+    private CommitStore commitStore;
+
+    @Before
+    public void init() {
+        mongoOperations = mock(MongoOperations.class);
+        settings = new BambooSettings();
+        commitStore = new CommitStore(mongoOperations, settings);
+    }
+
+    @Test
+    public void share_sameCommitTwice_oneInstance() {
+        SCM first = commitStore.share(scm("abc"));
+        SCM second = commitStore.share(scm("abc"));
+        SCM other = commitStore.share(scm("def"));
+
+        assertThat(second, sameInstance(first));
+        assertThat(other.getScmRevisionNumber(), is("def"));
+        assertThat(first.getScmCommitLog(), is("message of abc"));
+        assertThat(commitStore.size(), is(2));
+        verify(mongoOperations, never())
+                .upsert(any(Query.class), any(Update.class), eq(BambooCommit.class));
+    }
+
+    @Test
+    public void share_commitStore_storedOnceAndReferenced() {
+        settings.setCommitStore(true);
+
+        SCM first = commitStore.share(scm("abc"));
+        SCM second = commitStore.share(scm("abc"));
+
+        assertThat(second, sameInstance(first));
+        assertThat(first.getScmRevisionNumber(), is("abc"));
+        assertThat(first.getScmAuthor(), is("author"));
+        assertThat(first.getScmCommitLog(), nullValue());
+        assertThat(first.getScmUrl(), is("http://repo/commits/abc"));
+        assertThat(CommitStore.repository(first), is("http://repo/commits"));
+        verify(mongoOperations, times(1)).upsert(
+                eq(Query.query(Criteria.where("_id").is("http://repo/commits#abc"))),
+                any(Update.class), eq(BambooCommit.class));
+    }
+
+    @Test
+    public void share_sameRevisionInTwoRepositories_twoCommits() {
+        settings.setCommitStore(true);
+        SCM other = scm("abc");
+        other.setScmUrl("http://other/commits/abc");
+
+        SCM first = commitStore.share(scm("abc"));
+        SCM second = commitStore.share(other);
+
+        assertThat(second, not(sameInstance(first)));
+        assertThat(second.getScmUrl(), is("http://other/commits/abc"));
+        assertThat(commitStore.size(), is(2));
+        verify(mongoOperations, times(1)).upsert(
+                eq(Query.query(Criteria.where("_id").is("http://other/commits#abc"))),
+                any(Update.class), eq(BambooCommit.class));
+    }
+
+    @Test
+    public void share_noUrl_notShared() {
+        settings.setCommitStore(true);
+        SCM scm = scm("abc");
+        scm.setScmUrl(null);
+
+        assertThat(commitStore.share(scm), sameInstance(scm));
+        assertThat(commitStore.size(), is(0));
+        verify(mongoOperations, never())
+                .upsert(any(Query.class), any(Update.class), eq(BambooCommit.class));
+    }
+
+    @Test
+    public void repository_urlWithoutRevision() {
+        assertThat(CommitStore.repository(scm("abc")), is("http://repo/commits"));
+        SCM svn = scm("1234");
+        svn.setScmUrl("http://svn/viewvc?view=revision&revision=1234");
+        assertThat(CommitStore.repository(svn), is("http://svn/viewvc?view=revision&revision="));
+        SCM other = scm("abc");
+        other.setScmUrl("http://repo/browse");
+        assertThat(CommitStore.repository(other), is("http://repo/browse"));
+    }
+
+    @Test
+    public void endCycle_commitsForgotten() {
+        settings.setCommitStore(true);
+        commitStore.share(scm("abc"));
+
+        commitStore.endCycle();
+        commitStore.share(scm("abc"));
+
+        assertThat(commitStore.size(), is(1));
+        verify(mongoOperations, times(2))
+                .upsert(any(Query.class), any(Update.class), eq(BambooCommit.class));
+    }
+
+    private SCM scm(String revision) {
+        SCM scm = new SCM();
+        scm.setScmRevisionNumber(revision);
+        scm.setScmAuthor("author");
+        scm.setScmCommitLog("message of " + revision);
+        scm.setScmUrl("http://repo/commits/" + revision);
+        scm.setScmCommitTimestamp(1000L);
+        return scm;
+    }
+}
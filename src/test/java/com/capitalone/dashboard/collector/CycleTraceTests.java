@@ -0,0 +1,79 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.capitalone.dashboard.collector;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.hamcrest.Matchers.containsString;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.nullValue;
+import static org.junit.Assert.assertThat;
+
+public class CycleTraceTests {
+
+    private BambooSettings settings;
+    private CycleTrace cycleTrace;
+
+    @Before
+    public void init() {
+        settings = new BambooSettings();
+        settings.setTraceEnabled(true);
+        cycleTrace = new CycleTrace(settings);
+    }
+
+    @Test
+    public void end_disabled_noReport() {
+        settings.setTraceEnabled(false);
+        cycleTrace.begin();
+        cycleTrace.enter("server", "http://server/", null);
+        cycleTrace.end();
+
+        assertThat(cycleTrace.getLastReport(), is(nullValue()));
+    }
+
+    @Test
+    public void enter_sameKind_closesSiblingAndChildren() {
+        cycleTrace.begin();
+        cycleTrace.enter("server", "http://server/", null);
+        cycleTrace.enter("plan", "PROJ-A", "PROJ-A");
+        cycleTrace.enter("branch", "PROJ-A1", "PROJ-A");
+        cycleTrace.recordRequest("http://server/rest/api/latest/result/PROJ-A1/", 0, 10);
+        cycleTrace.enter("plan", "PROJ-B", "PROJ-B");
+        cycleTrace.recordRequest("http://server/rest/api/latest/result/PROJ-B/", 0, 5);
+        cycleTrace.end();
+
+        String report = cycleTrace.getLastReport().replaceAll("\\d+ms", "Nms");
+        assertThat(report, containsString("cycle Nms 15B\n"
+                + "  server http://server/ Nms 15B\n"
+                + "    plan PROJ-A Nms 10B\n"
+                + "      branch PROJ-A1 Nms 10B 1 requests\n"
+                + "    plan PROJ-B Nms 5B 1 requests\n"));
+        assertThat(report, containsString("requests by endpoint\n  results 2 requests Nms 15B\n"));
+    }
+
+    @Test
+    public void end_requestsOutsideTrace_ignored() {
+        cycleTrace.recordRequest("http://server/rest/api/latest/result/PROJ-A/", 0, 10);
+        cycleTrace.begin();
+        cycleTrace.end();
+
+        assertThat(cycleTrace.getLastReport(), containsString(" 0B\n"));
+        assertThat(cycleTrace.getLastReport().contains("results"), is(false));
+    }
+}
@@ -0,0 +1,139 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.capitalone.dashboard.collector;
+
+import com.capitalone.dashboard.model.BambooJob;
+import com.capitalone.dashboard.model.CollectorItem;
+import com.capitalone.dashboard.model.CollectorType;
+import com.capitalone.dashboard.model.Component;
+import org.bson.types.ObjectId;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.data.mongodb.core.MongoOperations;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.hamcrest.Matchers.containsString;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.not;
+import static org.junit.Assert.assertThat;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.reset;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class DashboardEnablementTests {
+
+    private final ObjectId collectorId = new ObjectId();
+    private final BambooJob job1 = job();
+    private final BambooJob job2 = job();
+    private MongoOperations mongoOperations;
+    private DashboardEnablement enablement;
+
+    @Before
+    public void init() {
+        BambooSettings settings = new BambooSettings();
+        settings.setEnablementRefreshInterval(3600000);
+        mongoOperations = mock(MongoOperations.class);
+        enablement = new DashboardEnablement(mongoOperations, settings);
+    }
+
+    @After
+    public void destroy() {
+        enablement.destroy();
+    }
+
+    @Test
+    public void sync_firstTime_reconcilesEveryJob() {
+        onDashboards(job1);
+
+        enablement.sync(collectorId, Arrays.asList(job1, job2));
+
+        verify(mongoOperations, times(2))
+                .updateMulti(any(Query.class), any(Update.class), eq(BambooJob.class));
+        assertThat(job1.isEnabled(), is(true));
+        assertThat(job2.isEnabled(), is(false));
+    }
+
+    @Test
+    public void refresh_unchanged_nothingUpdated() {
+        onDashboards(job1);
+        enablement.sync(collectorId, Arrays.asList(job1, job2));
+        reset(mongoOperations);
+        onDashboards(job1);
+
+        enablement.refresh();
+
+        verify(mongoOperations, never())
+                .updateMulti(any(Query.class), any(Update.class), eq(BambooJob.class));
+    }
+
+    @Test
+    public void refresh_changed_onlyChangedJobsUpdated() {
+        onDashboards(job1);
+        enablement.sync(collectorId, Arrays.asList(job1, job2));
+        reset(mongoOperations);
+        onDashboards(job2);
+
+        enablement.sync(collectorId, Arrays.asList(job1, job2));
+
+        ArgumentCaptor<Query> queries = ArgumentCaptor.forClass(Query.class);
+        ArgumentCaptor<Update> updates = ArgumentCaptor.forClass(Update.class);
+        verify(mongoOperations, times(2))
+                .updateMulti(queries.capture(), updates.capture(), eq(BambooJob.class));
+        List<Query> captured = queries.getAllValues();
+        assertThat(captured.get(0).toString(), containsString(job2.getId().toString()));
+        assertThat(captured.get(0).toString(), not(containsString(job1.getId().toString())));
+        assertThat(updates.getAllValues().get(0).getUpdateObject().toString(),
+                containsString("true"));
+        assertThat(captured.get(1).toString(), containsString(job1.getId().toString()));
+        assertThat(updates.getAllValues().get(1).getUpdateObject().toString(),
+                containsString("false"));
+        assertThat(job1.isEnabled(), is(false));
+        assertThat(job2.isEnabled(), is(true));
+    }
+
+    private void onDashboards(BambooJob... jobs) {
+        Component component = new Component();
+        for (BambooJob job : jobs) {
+            CollectorItem item = new CollectorItem();
+            item.setId(job.getId());
+            item.setCollectorId(collectorId);
+            component.addCollectorItem(CollectorType.Build, item);
+        }
+        when(mongoOperations.find(any(Query.class), eq(Component.class)))
+                .thenReturn(Collections.singletonList(component));
+    }
+
+    private BambooJob job() {
+        BambooJob job = new BambooJob();
+        job.setId(new ObjectId());
+        job.setCollectorId(collectorId);
+        return job;
+    }
+}
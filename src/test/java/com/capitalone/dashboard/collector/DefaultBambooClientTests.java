@@ -17,6 +17,8 @@
 
 package com.capitalone.dashboard.collector;
 
+import com.google.common.util.concurrent.RateLimiter;
+
 import com.capitalone.dashboard.model.Build;
 import com.capitalone.dashboard.model.BuildStatus;
 import com.capitalone.dashboard.model.BambooJob;
@@ -29,17 +31,22 @@ import org.junit.runner.RunWith;
 import org.mockito.Matchers;
 import org.mockito.Mock;
 import org.mockito.runners.MockitoJUnitRunner;
+import org.springframework.data.mongodb.core.MongoOperations;
 import org.springframework.http.HttpEntity;
 import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpMethod;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
+import org.springframework.web.client.HttpClientErrorException;
+import org.springframework.web.client.ResourceAccessException;
 import org.springframework.web.client.RestOperations;
 
 import java.io.IOException;
 import java.io.InputStream;
 import java.net.URI;
 import java.net.URL;
+import java.util.Collections;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
 
@@ -49,6 +56,8 @@ import static org.hamcrest.Matchers.nullValue;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertThat;
 import static org.mockito.Mockito.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
@@ -60,6 +69,9 @@ public class DefaultBambooClientTests {
     private BambooSettings settings;
     private BambooClient bambooClient;
     private DefaultBambooClient defaultBambooClient;
+    private BambooMetadataCache metadataCache;
+    private PlanQuarantine planQuarantine;
+    private ClusterCoordinator clusterCoordinator;
 
     private static final String URL_TEST = "http://server/job/job2/2/";
 
@@ -67,8 +79,15 @@ public class DefaultBambooClientTests {
     public void init() {
         when(restOperationsSupplier.get()).thenReturn(rest);
         settings = new BambooSettings();
+        metadataCache = new BambooMetadataCache(settings);
+        planQuarantine = new PlanQuarantine(settings);
+        clusterCoordinator = mock(ClusterCoordinator.class);
+        when(clusterCoordinator.owns(Matchers.any(BambooJob.class))).thenReturn(true);
         bambooClient = defaultBambooClient = new DefaultBambooClient(restOperationsSupplier,
-                settings);
+                settings, metadataCache, planQuarantine, new CycleTrace(settings),
+                new RestFixture(settings),
+                new CommitStore(mock(MongoOperations.class), settings),
+                new PayloadCapture(settings), clusterCoordinator);
     }
 
     @Test
@@ -182,6 +201,35 @@ public class DefaultBambooClientTests {
         assertThat(jobs.size(), is(0));
     }
 
+    @Test
+    public void instanceJobs_changeDetection_unchangedPlanNotListed() {
+        stubPlanAndLatestResult(12);
+
+        Map<BambooJob, Set<Build>> jobs = bambooClient.getInstanceJobs("http://server",
+                Collections.singletonList(knownJob(12L)));
+
+        assertThat(jobs.size(), is(1));
+        assertThat(jobs.values().iterator().next().size(), is(0));
+        verify(rest, times(2)).exchange(Matchers.any(URI.class), eq(HttpMethod.GET),
+                Matchers.any(HttpEntity.class), eq(String.class));
+    }
+
+    @Test
+    public void instanceJobs_changeDetection_newerBuildListed() {
+        stubPlanAndLatestResult(13);
+        stubResponse("http://server/rest/api/latest/result/PROJ-PLAN",
+                "{\"results\":{\"result\":[{\"buildNumber\":13},{\"buildNumber\":12}]}}");
+        stubResponse("http://server/rest/api/latest/plan/PROJ-PLAN/branch",
+                "{\"branches\":{\"branch\":[]}}");
+
+        Map<BambooJob, Set<Build>> jobs = bambooClient.getInstanceJobs("http://server",
+                Collections.singletonList(knownJob(12L)));
+
+        BambooJob job = jobs.keySet().iterator().next();
+        assertThat(jobs.get(job).size(), is(2));
+        assertThat(job.getDiscoveredBuildNumbers().get("PROJ-PLAN"), is(13L));
+    }
+
     // @Test
     // public void instanceJobs_twoJobsTwoBuilds() throws Exception {
     //     when(rest.exchange(Matchers.any(URI.class), eq(HttpMethod.GET), Matchers.any(HttpEntity.class), eq(String.class)))
@@ -248,6 +296,331 @@ public class DefaultBambooClientTests {
         assertThat(scm.getNumberOfChanges(), is(4L));
     }
 
+    @Test
+    public void instanceJobs_scope_onlyProjectPlansInScope() {
+        BambooDiscoveryScope scope = new BambooDiscoveryScope();
+        scope.setProjectKeys(Collections.singletonList("PROJ"));
+        scope.setExcludePlans(Collections.singletonList("PROJ-OLD.*"));
+        scope.setIncludeBranches(false);
+        settings.setServers(Collections.singletonList("http://server"));
+        settings.setScopes(Collections.singletonList(scope));
+        stubResponse("http://server/rest/api/latest/project/PROJ?expand=plans&max-result=2000",
+                "{\"plans\":{\"plan\":[{\"key\":\"PROJ-PLAN\",\"link\":"
+                        + "{\"href\":\"http://server/rest/api/latest/plan/PROJ-PLAN\"}},"
+                        + "{\"key\":\"PROJ-OLD\",\"link\":"
+                        + "{\"href\":\"http://server/rest/api/latest/plan/PROJ-OLD\"}}]}}");
+        stubResponse("http://server/rest/api/latest/result/PROJ-PLAN",
+                "{\"results\":{\"result\":[{\"buildNumber\":1}]}}");
+
+        Map<BambooJob, Set<Build>> jobs = bambooClient.getInstanceJobs("http://server");
+
+        assertThat(jobs.size(), is(1));
+        assertJob(jobs.keySet().iterator().next(), "PROJ-PLAN",
+                "http://server/rest/api/latest/plan/PROJ-PLAN");
+        verify(rest, times(2)).exchange(Matchers.any(URI.class), eq(HttpMethod.GET),
+                Matchers.any(HttpEntity.class), eq(String.class));
+    }
+
+    @Test
+    public void instanceJobs_planOfAnotherReplica_notListed() {
+        settings.setChangeDetection(false);
+        stubResponse("http://server/rest/api/latest/plan?expand=plans&max-result=2000",
+                "{\"plans\":{\"plan\":[{\"key\":\"PROJ-PLAN\",\"link\":"
+                        + "{\"href\":\"http://server/rest/api/latest/plan/PROJ-PLAN\"}}]}}");
+        when(clusterCoordinator.owns(Matchers.any(BambooJob.class))).thenReturn(false);
+
+        Map<BambooJob, Set<Build>> jobs = bambooClient.getInstanceJobs("http://server",
+                Collections.singletonList(knownJob(12L)));
+
+        assertThat(jobs.size(), is(1));
+        assertThat(jobs.values().iterator().next().size(), is(0));
+        verify(rest, times(1)).exchange(Matchers.any(URI.class), eq(HttpMethod.GET),
+                Matchers.any(HttpEntity.class), eq(String.class));
+    }
+
+    @Test
+    public void instanceJobs_timeWindow_staleBuildsAndBranchesSkipped() {
+        settings.setPlanMaxResults(5);
+        settings.setBuildWindowDays(7);
+        stubResponse("http://server/rest/api/latest/plan?expand=plans&max-result=2000",
+                "{\"plans\":{\"plan\":[{\"key\":\"PROJ-PLAN\",\"link\":"
+                        + "{\"href\":\"http://server/rest/api/latest/plan/PROJ-PLAN\"}}]}}");
+        stubResponse("http://server/rest/api/latest/result/PROJ-PLAN?max-results=5&expand=results.result",
+                "{\"results\":{\"result\":["
+                        + "{\"buildNumber\":2,\"buildStartedTime\":\"2999-01-01T00:00:00.000Z\"},"
+                        + "{\"buildNumber\":1,\"buildStartedTime\":\"2016-08-25T10:05:10.543Z\"}]}}");
+        stubResponse("http://server/rest/api/latest/plan/PROJ-PLAN/branch?expand=branches.branch.latestResult",
+                "{\"branches\":{\"branch\":[{\"key\":\"PROJ-PLAN0\",\"latestResult\":"
+                        + "{\"buildStartedTime\":\"2016-08-25T10:05:10.543Z\"}}]}}");
+
+        Map<BambooJob, Set<Build>> jobs = bambooClient.getInstanceJobs("http://server");
+
+        BambooJob job = jobs.keySet().iterator().next();
+        assertThat(jobs.get(job).size(), is(1));
+        assertBuild(jobs.get(job).iterator().next(), "2",
+                "http://server/rest/api/latest/result/PROJ-PLAN/2");
+        assertThat(job.getDiscoveredBuildNumbers().get("PROJ-PLAN"), is(2L));
+        assertThat(job.getDiscoveredBuildNumbers().containsKey("PROJ-PLAN0"), is(false));
+    }
+
+    @Test
+    public void instanceJobs_timeWindow_staleBranchKeepsItsMark() {
+        settings.setPlanMaxResults(5);
+        settings.setBuildWindowDays(7);
+        stubPlanAndLatestResult(2);
+        stubResponse("http://server/rest/api/latest/result/PROJ-PLAN?max-results=5&expand=results.result",
+                "{\"results\":{\"result\":["
+                        + "{\"buildNumber\":2,\"buildStartedTime\":\"2999-01-01T00:00:00.000Z\"}]}}");
+        stubResponse("http://server/rest/api/latest/plan/PROJ-PLAN/branch?expand=branches.branch.latestResult",
+                "{\"branches\":{\"branch\":[{\"key\":\"PROJ-PLAN0\",\"latestResult\":"
+                        + "{\"buildStartedTime\":\"2016-08-25T10:05:10.543Z\"}}]}}");
+        BambooJob known = knownJob(1L);
+        known.getCollectedBuildNumbers().put("PROJ-PLAN0", 4L);
+
+        Map<BambooJob, Set<Build>> jobs = bambooClient.getInstanceJobs("http://server",
+                Collections.singletonList(known));
+
+        BambooJob job = jobs.keySet().iterator().next();
+        assertThat(job.getDiscoveredBuildNumbers().get("PROJ-PLAN"), is(2L));
+        assertThat(job.getDiscoveredBuildNumbers().get("PROJ-PLAN0"), is(4L));
+        verifyCalls("http://server/rest/api/latest/result/PROJ-PLAN0", 0);
+    }
+
+    @Test
+    public void buildDetails_standardExpansion_collapsedFilesCounted() throws Exception {
+        stubResponse("http://server/job/job2/2/?expand=changes.change",
+                "{\"buildNumber\":16,\"finished\":true,\"buildState\":\"Successful\","
+                        + "\"buildStartedTime\":\"2016-08-25T10:05:10.543Z\",\"buildDuration\":1000,"
+                        + "\"changes\":{\"size\":1,\"change\":[{\"author\":\"someone\","
+                        + "\"changesetId\":\"abc\",\"files\":{\"size\":42}}]}}");
+
+        Build build = bambooClient.getBuildDetails("http://server/job/job2/2/", "http://server");
+
+        assertThat(build.getSourceChangeSet().size(), is(1));
+        assertThat(build.getSourceChangeSet().get(0).getNumberOfChanges(), is(42L));
+    }
+
+    @Test
+    public void buildDetails_minimalExpansion_noChangeSets() throws Exception {
+        settings.setBuildDetailsExpansion(BuildDetailsExpansion.MINIMAL);
+        stubResponse("http://server/job/job2/2/",
+                "{\"buildNumber\":16,\"finished\":true,\"buildState\":\"Failed\","
+                        + "\"buildStartedTime\":\"2016-08-25T10:05:10.543Z\",\"buildDuration\":1000,"
+                        + "\"changes\":{\"size\":1}}");
+
+        Build build = bambooClient.getBuildDetails("http://server/job/job2/2/", "http://server");
+
+        assertThat(build.getBuildStatus(), is(BuildStatus.Failure));
+        assertThat(build.getSourceChangeSet().size(), is(0));
+    }
+
+    @Test
+    public void buildDetails_inProgress() throws Exception {
+        when(rest.exchange(Matchers.any(URI.class), eq(HttpMethod.GET), Matchers.any(HttpEntity.class), eq(String.class)))
+                .thenReturn(new ResponseEntity<>("{\"buildNumber\":16,\"finished\":false,"
+                        + "\"buildStartedTime\":\"2016-08-25T10:05:10.543Z\"}", HttpStatus.OK));
+
+        Build build = bambooClient.getBuildDetails("http://server/job/job2/2/", "http://server");
+
+        assertThat(build.getNumber(), is("16"));
+        assertThat(build.getBuildStatus(), is(BuildStatus.InProgress));
+        assertThat(build.getStartTime(), is(1472119510543L));
+    }
+
+    @Test
+    public void instanceJobs_metadataCached_plansAndBranchesListedOnce() {
+        stubPlanAndLatestResult(13);
+        stubResponse("http://server/rest/api/latest/result/PROJ-PLAN",
+                "{\"results\":{\"result\":[{\"buildNumber\":13}]}}");
+        stubResponse("http://server/rest/api/latest/plan/PROJ-PLAN/branch",
+                "{\"branches\":{\"branch\":[]}}");
+
+        bambooClient.getInstanceJobs("http://server", Collections.singletonList(knownJob(12L)));
+        bambooClient.getInstanceJobs("http://server", Collections.singletonList(knownJob(12L)));
+
+        verifyCalls("http://server/rest/api/latest/plan?expand=plans&max-result=2000", 1);
+        verifyCalls("http://server/rest/api/latest/plan/PROJ-PLAN/branch", 1);
+        verifyCalls("http://server/rest/api/latest/result/PROJ-PLAN", 2);
+
+        metadataCache.invalidate();
+        bambooClient.getInstanceJobs("http://server", Collections.singletonList(knownJob(12L)));
+
+        verifyCalls("http://server/rest/api/latest/plan?expand=plans&max-result=2000", 2);
+    }
+
+    @Test
+    public void instanceJobs_failingBranch_quarantinedAndPlanCollected() {
+        stubPlanAndLatestResult(13);
+        stubResponse("http://server/rest/api/latest/result/PROJ-PLAN",
+                "{\"results\":{\"result\":[{\"buildNumber\":13}]}}");
+        stubResponse("http://server/rest/api/latest/plan/PROJ-PLAN/branch",
+                "{\"branches\":{\"branch\":[{\"key\":\"PROJ-PLAN0\"}]}}");
+        when(rest.exchange(eq(URI.create("http://server/rest/api/latest/result/PROJ-PLAN0")),
+                eq(HttpMethod.GET), Matchers.any(HttpEntity.class), eq(String.class)))
+                .thenThrow(new HttpClientErrorException(HttpStatus.NOT_FOUND));
+        BambooJob known = knownJob(12L);
+        known.getCollectedBuildNumbers().put("PROJ-PLAN0", 4L);
+
+        Map<BambooJob, Set<Build>> jobs = bambooClient.getInstanceJobs("http://server",
+                Collections.singletonList(known));
+        bambooClient.getInstanceJobs("http://server", Collections.singletonList(known));
+
+        BambooJob job = jobs.keySet().iterator().next();
+        assertThat(jobs.get(job).size(), is(1));
+        assertThat(job.getDiscoveredBuildNumbers().get("PROJ-PLAN"), is(13L));
+        assertThat(job.getDiscoveredBuildNumbers().get("PROJ-PLAN0"), is(4L));
+        assertThat(planQuarantine.size(), is(1));
+        verifyCalls("http://server/rest/api/latest/result/PROJ-PLAN0", 1);
+    }
+
+    @Test
+    public void restCall_transientFailure_retried() throws Exception {
+        settings.setRetryMinDelay(0);
+        when(rest.exchange(eq(URI.create("http://bamboo.com")), eq(HttpMethod.GET),
+                Matchers.any(HttpEntity.class), eq(String.class)))
+                .thenThrow(new ResourceAccessException("Connection reset"))
+                .thenReturn(new ResponseEntity<>("", HttpStatus.OK));
+
+        defaultBambooClient.makeRestCall("http://bamboo.com");
+        verifyCalls("http://bamboo.com", 2);
+    }
+
+    @Test(expected = HttpClientErrorException.class)
+    public void restCall_notFound_notRetried() throws Exception {
+        when(rest.exchange(eq(URI.create("http://bamboo.com")), eq(HttpMethod.GET),
+                Matchers.any(HttpEntity.class), eq(String.class)))
+                .thenThrow(new HttpClientErrorException(HttpStatus.NOT_FOUND));
+
+        try {
+            defaultBambooClient.makeRestCall("http://bamboo.com");
+        } finally {
+            verifyCalls("http://bamboo.com", 1);
+        }
+    }
+
+    @Test(expected = ResourceAccessException.class)
+    public void restCall_retryBudgetSpent_notRetried() throws Exception {
+        settings.setRetryMinDelay(0);
+        settings.setRetryBudget(1);
+        defaultBambooClient.resetRetryBudget();
+        when(rest.exchange(eq(URI.create("http://bamboo.com")), eq(HttpMethod.GET),
+                Matchers.any(HttpEntity.class), eq(String.class)))
+                .thenThrow(new ResourceAccessException("Connection reset"));
+
+        try {
+            defaultBambooClient.makeRestCall("http://bamboo.com");
+        } finally {
+            verifyCalls("http://bamboo.com", 2);
+        }
+    }
+
+    @Test
+    public void oldestBuilds_withRateLimiter_permitPerRequestAndRetry() throws Exception {
+        settings.setRetryMinDelay(0);
+        String url = "http://server/rest/api/latest/result/PROJ-PLAN?max-results=1";
+        when(rest.exchange(eq(URI.create(url)), eq(HttpMethod.GET),
+                Matchers.any(HttpEntity.class), eq(String.class)))
+                .thenThrow(new ResourceAccessException("Connection reset"))
+                .thenReturn(new ResponseEntity<>("{\"results\":{\"size\":0,\"result\":[]}}",
+                        HttpStatus.OK));
+        RateLimiter rateLimiter = mock(RateLimiter.class);
+
+        defaultBambooClient.withRateLimiter(rateLimiter,
+                () -> defaultBambooClient.getOldestBuilds("http://server", "PROJ-PLAN", 0, 2));
+        defaultBambooClient.makeRestCall(url);
+
+        verify(rateLimiter, times(2)).acquire();
+        verifyCalls(url, 3);
+    }
+
+    @Test
+    public void oldestBuilds_pagedFromOldestResult() {
+        stubResponse("http://server/rest/api/latest/result/PROJ-PLAN?max-results=1",
+                "{\"results\":{\"size\":5,\"result\":[{\"buildNumber\":5}]}}");
+        stubResponse("http://server/rest/api/latest/result/PROJ-PLAN?max-results=3&start-index=2",
+                "{\"results\":{\"size\":5,\"result\":[{\"buildNumber\":3},{\"buildNumber\":2},"
+                        + "{\"buildNumber\":1}]}}");
+
+        List<Build> builds = defaultBambooClient.getOldestBuilds("http://server", "PROJ-PLAN", 0, 2);
+
+        assertThat(builds.size(), is(2));
+        assertBuild(builds.get(0), "1", "http://server/rest/api/latest/result/PROJ-PLAN/1");
+        assertBuild(builds.get(1), "2", "http://server/rest/api/latest/result/PROJ-PLAN/2");
+    }
+
+    @Test
+    public void oldestBuilds_oldResultsExpired_resumedAfterBuildNumber() {
+        // builds 1 to 3 expired after the cursor passed build 2
+        stubResponse("http://server/rest/api/latest/result/PROJ-PLAN?max-results=1",
+                "{\"results\":{\"size\":7,\"result\":[{\"buildNumber\":10}]}}");
+        stubResponse("http://server/rest/api/latest/result/PROJ-PLAN?max-results=3&start-index=4",
+                "{\"results\":{\"size\":7,\"result\":[{\"buildNumber\":6},{\"buildNumber\":5},"
+                        + "{\"buildNumber\":4}]}}");
+
+        List<Build> builds = defaultBambooClient.getOldestBuilds("http://server", "PROJ-PLAN", 2, 2);
+
+        assertThat(builds.size(), is(2));
+        assertBuild(builds.get(0), "4", "http://server/rest/api/latest/result/PROJ-PLAN/4");
+        assertBuild(builds.get(1), "5", "http://server/rest/api/latest/result/PROJ-PLAN/5");
+    }
+
+    @Test
+    public void oldestBuilds_resultsDeleted_pageMovedToNewerResults() {
+        // builds 6 and 7 were deleted, so build 5 is nearer to the newest than its number says
+        stubResponse("http://server/rest/api/latest/result/PROJ-PLAN?max-results=1",
+                "{\"results\":{\"size\":8,\"result\":[{\"buildNumber\":10}]}}");
+        stubResponse("http://server/rest/api/latest/result/PROJ-PLAN?max-results=3&start-index=4",
+                "{\"results\":{\"size\":8,\"result\":[{\"buildNumber\":4},{\"buildNumber\":3},"
+                        + "{\"buildNumber\":2}]}}");
+        stubResponse("http://server/rest/api/latest/result/PROJ-PLAN?max-results=3&start-index=2",
+                "{\"results\":{\"size\":8,\"result\":[{\"buildNumber\":8},{\"buildNumber\":5},"
+                        + "{\"buildNumber\":4}]}}");
+
+        List<Build> builds = defaultBambooClient.getOldestBuilds("http://server", "PROJ-PLAN", 4, 2);
+
+        assertThat(builds.size(), is(2));
+        assertBuild(builds.get(0), "5", "http://server/rest/api/latest/result/PROJ-PLAN/5");
+        assertBuild(builds.get(1), "8", "http://server/rest/api/latest/result/PROJ-PLAN/8");
+    }
+
+    @Test
+    public void oldestBuilds_allWalked_empty() {
+        stubResponse("http://server/rest/api/latest/result/PROJ-PLAN?max-results=1",
+                "{\"results\":{\"size\":5,\"result\":[{\"buildNumber\":5}]}}");
+
+        assertThat(defaultBambooClient.getOldestBuilds("http://server", "PROJ-PLAN", 5, 2).size(),
+                is(0));
+    }
+
+    private void stubPlanAndLatestResult(long latestBuild) {
+        stubResponse("http://server/rest/api/latest/plan?expand=plans&max-result=2000",
+                "{\"plans\":{\"plan\":[{\"key\":\"PROJ-PLAN\",\"link\":"
+                        + "{\"href\":\"http://server/rest/api/latest/plan/PROJ-PLAN\"}}]}}");
+        stubResponse("http://server/rest/api/latest/result?max-results=1000&start-index=0",
+                "{\"results\":{\"size\":1,\"result\":[{\"key\":\"PROJ-PLAN-" + latestBuild
+                        + "\",\"buildNumber\":" + latestBuild + "}]}}");
+    }
+
+    private void verifyCalls(String url, int calls) {
+        verify(rest, times(calls)).exchange(eq(URI.create(url)), eq(HttpMethod.GET),
+                Matchers.any(HttpEntity.class), eq(String.class));
+    }
+
+    private void stubResponse(String url, String body) {
+        when(rest.exchange(eq(URI.create(url)), eq(HttpMethod.GET),
+                Matchers.any(HttpEntity.class), eq(String.class)))
+                .thenReturn(new ResponseEntity<>(body, HttpStatus.OK));
+    }
+
+    private BambooJob knownJob(long collectedBuild) {
+        BambooJob job = new BambooJob();
+        job.setInstanceUrl("http://server");
+        job.setJobName("PROJ-PLAN");
+        job.setEnabled(true);
+        job.getCollectedBuildNumbers().put("PROJ-PLAN", collectedBuild);
+        return job;
+    }
+
     private void assertBuild(Build build, String number, String url) {
         assertThat(build.getNumber(), is(number));
         assertThat(build.getBuildUrl(), is(url));
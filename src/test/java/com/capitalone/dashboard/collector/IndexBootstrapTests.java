@@ -0,0 +1,113 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.capitalone.dashboard.collector;
+
+import com.capitalone.dashboard.model.BambooJob;
+import com.capitalone.dashboard.model.Build;
+import com.mongodb.BasicDBObject;
+import com.mongodb.DBCollection;
+import com.mongodb.DBCursor;
+import com.mongodb.DBObject;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.data.mongodb.core.IndexOperations;
+import org.springframework.data.mongodb.core.MongoOperations;
+import org.springframework.data.mongodb.core.index.Index;
+
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.empty;
+import static org.junit.Assert.assertThat;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class IndexBootstrapTests {
+
+    private MongoOperations mongoOperations;
+    private IndexOperations jobIndexes;
+    private IndexOperations buildIndexes;
+    private DBCollection jobs;
+    private DBCollection builds;
+    private BambooSettings settings;
+    private IndexBootstrap bootstrap;
+
+    @Before
+    public void init() {
+        mongoOperations = mock(MongoOperations.class);
+        jobIndexes = mock(IndexOperations.class);
+        buildIndexes = mock(IndexOperations.class);
+        jobs = mock(DBCollection.class);
+        builds = mock(DBCollection.class);
+        when(mongoOperations.indexOps(BambooJob.class)).thenReturn(jobIndexes);
+        when(mongoOperations.indexOps(Build.class)).thenReturn(buildIndexes);
+        when(mongoOperations.getCollectionName(BambooJob.class)).thenReturn("collector_items");
+        when(mongoOperations.getCollectionName(Build.class)).thenReturn("builds");
+        when(mongoOperations.getCollection("collector_items")).thenReturn(jobs);
+        when(mongoOperations.getCollection("builds")).thenReturn(builds);
+        settings = new BambooSettings();
+        bootstrap = new IndexBootstrap(mongoOperations, settings);
+    }
+
+    @Test
+    public void afterPropertiesSet_default_indexesEnsured() {
+        bootstrap.afterPropertiesSet();
+
+        verify(jobIndexes, times(2)).ensureIndex(any(Index.class));
+        verify(buildIndexes).ensureIndex(any(Index.class));
+        verify(mongoOperations, never()).getCollection(anyString());
+    }
+
+    @Test
+    public void findCollectionScans_indexed_none() {
+        plan(jobs, "IXSCAN");
+        plan(builds, "IXSCAN");
+
+        assertThat(bootstrap.findCollectionScans(), empty());
+    }
+
+    @Test
+    public void findCollectionScans_buildsNotIndexed_buildQuery() {
+        plan(jobs, "IXSCAN");
+        plan(builds, "COLLSCAN");
+
+        assertThat(bootstrap.findCollectionScans(), contains("findByCollectorItemIdAndNumber"));
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void afterPropertiesSet_failOnScans_collectionScan_fails() {
+        settings.setEnsureIndexes(false);
+        settings.setQueryPlanCheck(IndexBootstrap.FAIL_ON_SCANS);
+        plan(jobs, "COLLSCAN");
+        plan(builds, "IXSCAN");
+
+        bootstrap.afterPropertiesSet();
+    }
+
+    private void plan(DBCollection collection, String scan) {
+        DBObject winningPlan = new BasicDBObject("stage", "FETCH")
+                .append("inputStage", new BasicDBObject("stage", scan));
+        DBCursor cursor = mock(DBCursor.class);
+        when(cursor.explain()).thenReturn(new BasicDBObject("queryPlanner",
+                new BasicDBObject("winningPlan", winningPlan)));
+        when(collection.find(any(DBObject.class))).thenReturn(cursor);
+    }
+}
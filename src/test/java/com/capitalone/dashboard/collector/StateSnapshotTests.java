@@ -0,0 +1,107 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.capitalone.dashboard.collector;
+
+import org.json.simple.JSONObject;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.springframework.web.client.ResourceAccessException;
+
+import java.io.File;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.zip.GZIPOutputStream;
+
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.nullValue;
+import static org.junit.Assert.assertThat;
+
+public class StateSnapshotTests {
+
+    private static final String SERVER1 = "http://server1/";
+    private static final String SERVER2 = "http://server2/";
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private BambooSettings settings;
+    private File file;
+
+    @Before
+    public void init() {
+        settings = new BambooSettings();
+        settings.setServers(Arrays.asList(SERVER1, SERVER2));
+        file = new File(folder.getRoot(), "state.json.gz");
+        settings.setSnapshotFile(file.getPath());
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void restoreOnce_saved_stateRestored() {
+        BambooMetadataCache metadataCache = new BambooMetadataCache(settings);
+        PlanQuarantine planQuarantine = new PlanQuarantine(settings);
+        JSONObject plan = new JSONObject();
+        plan.put("key", "PROJ-PLAN");
+        metadataCache.putPlans(SERVER1, Collections.singletonList(plan));
+        metadataCache.putPlans(SERVER2, Collections.singletonList(plan));
+        metadataCache.putBranches(SERVER1 + "plan/PROJ-PLAN/branch", Collections.emptyList());
+        planQuarantine.recordFailure(SERVER1 + "result/PROJ-FAIL",
+                new ResourceAccessException("timed out"));
+        new StateSnapshot(settings, metadataCache, planQuarantine).save();
+
+        settings.setServers(Collections.singletonList(SERVER1));
+        BambooMetadataCache restoredCache = new BambooMetadataCache(settings);
+        PlanQuarantine restoredQuarantine = new PlanQuarantine(settings);
+        new StateSnapshot(settings, restoredCache, restoredQuarantine).restoreOnce();
+
+        assertThat(restoredCache.getPlans(SERVER1).get(0).get("key"), is("PROJ-PLAN"));
+        assertThat(restoredCache.getPlans(SERVER2), is(nullValue()));
+        assertThat(restoredCache.getBranches(SERVER1 + "plan/PROJ-PLAN/branch").isEmpty(),
+                is(true));
+        assertThat(restoredQuarantine.isQuarantined(SERVER1 + "result/PROJ-FAIL"), is(true));
+        assertThat(restoredQuarantine.getFailures().get(0).getLastError(), is("timed out"));
+    }
+
+    @Test
+    public void restoreOnce_otherVersion_ignored() throws Exception {
+        try (OutputStream out = new GZIPOutputStream(Files.newOutputStream(file.toPath()))) {
+            out.write(("{\"version\":" + (StateSnapshot.VERSION + 1) + ",\"metadata\":{\"plans\":"
+                    + "{\"" + SERVER1 + "\":{\"loadedAt\":" + System.currentTimeMillis()
+                    + ",\"value\":[]}},\"branches\":{}},\"quarantine\":[]}")
+                    .getBytes(StandardCharsets.UTF_8));
+        }
+        BambooMetadataCache metadataCache = new BambooMetadataCache(settings);
+        new StateSnapshot(settings, metadataCache, new PlanQuarantine(settings)).restoreOnce();
+
+        assertThat(metadataCache.size(), is(0));
+    }
+
+    @Test
+    public void restoreOnce_truncated_ignored() throws Exception {
+        Files.write(file.toPath(), new byte[] {0x1f, (byte) 0x8b, 8, 0});
+        BambooMetadataCache metadataCache = new BambooMetadataCache(settings);
+        new StateSnapshot(settings, metadataCache, new PlanQuarantine(settings)).restoreOnce();
+
+        assertThat(metadataCache.size(), is(0));
+    }
+}